@@ -0,0 +1,73 @@
+package ru.airlabs.ego.survey.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import ru.airlabs.ego.survey.dto.survey.SurveyAnswer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общие объекты для сериализации и разбора JSON
+ * <p>
+ * Объекты потокобезопасны и создаются один раз, поэтому кэши сериализаторов Jackson не теряются между вызовами.
+ * Этот же {@link ObjectMapper} используется конвертером сообщений Spring MVC (см. appServlet.xml),
+ * настройки совпадают с настройками конвертера по умолчанию.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("jsonMapper")
+public class JsonMapper {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    /**
+     * Объект для чтения списка ответов на вопросы
+     */
+    private final ObjectReader surveyAnswersReader =
+            objectMapper.readerFor(new TypeReference<Collection<SurveyAnswer>>() {
+            });
+
+    /**
+     * Объекты для чтения JSON по типам
+     */
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Объекты для записи JSON по типам
+     */
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public ObjectReader getSurveyAnswersReader() {
+        return surveyAnswersReader;
+    }
+
+    /**
+     * Получить объект для чтения JSON
+     *
+     * @param type тип читаемого объекта
+     * @return объект для чтения JSON
+     */
+    public ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    /**
+     * Получить объект для записи JSON
+     *
+     * @param type тип записываемого объекта
+     * @return объект для записи JSON
+     */
+    public ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+}
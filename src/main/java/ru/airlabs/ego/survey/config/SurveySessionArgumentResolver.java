@@ -0,0 +1,60 @@
+package ru.airlabs.ego.survey.config;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.airlabs.ego.survey.dto.survey.SurveySession;
+import ru.airlabs.ego.survey.service.SurveySessionService;
+
+import java.util.Map;
+
+import static org.apache.commons.lang3.math.NumberUtils.isDigits;
+
+/**
+ * Получение сессии прохождения опроса для параметров методов контроллеров
+ * (идентификаторы вакансии и состояния прохождения опроса берутся из переменных пути vacancyId и surveyStateId,
+ * соль - из параметра запроса sc; если сессия не найдена, передается null)
+ *
+ * @author Aleksey Gorbachev
+ */
+public class SurveySessionArgumentResolver implements HandlerMethodArgumentResolver {
+
+    /**
+     * Сервис для получения данных сессии прохождения опроса
+     */
+    private final SurveySessionService surveySessionService;
+
+    public SurveySessionArgumentResolver(SurveySessionService surveySessionService) {
+        this.surveySessionService = surveySessionService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return SurveySession.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object resolveArgument(MethodParameter parameter,
+                                  ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest,
+                                  WebDataBinderFactory binderFactory) {
+        Map<String, String> variables = (Map<String, String>) webRequest.getAttribute(
+                HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (variables == null || !isDigits(variables.get("surveyStateId"))) {
+            return null;
+        }
+        final String vacancyId = variables.get("vacancyId");
+        SurveySession session = surveySessionService.getSession(
+                isDigits(vacancyId) ? Long.valueOf(vacancyId) : null,
+                Long.valueOf(variables.get("surveyStateId")));
+        if (session != null) {
+            session.verifySalt(webRequest.getParameter("sc"));
+        }
+        return session;
+    }
+}
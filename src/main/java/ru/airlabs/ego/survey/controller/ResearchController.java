@@ -97,6 +97,7 @@ public class ResearchController {
      * @param researchId        идентификатор исследования
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @param authentication    текущий авторизованный пользователь
      * @return список данных сравнения участников опроса
      */
@@ -105,12 +106,14 @@ public class ResearchController {
     public Page<VacancyUserDetail> getGroupCompareCategoryDetails(@PathVariable("researchId") Long researchId,
                                                                   @RequestParam(value = "chartColumnNumber") Integer chartColumnNumber,
                                                                   @PageableDefault(sort = {"surveyUpdate"}, direction = Sort.Direction.DESC) Pageable pageable,
+                                                                  @RequestParam(value = "cursor", required = false) String cursor,
                                                                   @AuthenticationPrincipal Authentication authentication) {
         vacancyService.checkUserAccessForVacancy(authentication.getUser(), researchId);
         return researchService.getGroupCompareCategoryDetails(researchId,
                 authentication.getUser().getId(),
                 chartColumnNumber,
-                pageable);
+                pageable,
+                cursor);
     }
 
     /**
@@ -120,6 +123,7 @@ public class ResearchController {
      * @param userId            идентификатор участника
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @param authentication    текущий авторизованный пользователь
      * @return список данных сравнения участников опроса
      */
@@ -129,13 +133,15 @@ public class ResearchController {
                                                               @PathVariable("userId") Long userId,
                                                               @RequestParam(value = "chartColumnNumber") Integer chartColumnNumber,
                                                               @PageableDefault(sort = {"surveyCreate"}, direction = Sort.Direction.DESC) Pageable pageable,
+                                                              @RequestParam(value = "cursor", required = false) String cursor,
                                                               @AuthenticationPrincipal Authentication authentication) {
         vacancyService.checkUserAccessForVacancy(authentication.getUser(), researchId);
         return researchService.getGroupCompareUserDetails(researchId,
                 userId,
                 authentication.getUser().getId(),
                 chartColumnNumber,
-                pageable);
+                pageable,
+                cursor);
     }
 
     /**
@@ -1,7 +1,5 @@
 package ru.airlabs.ego.survey.controller;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,6 +8,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import ru.airlabs.ego.core.entity.*;
 import ru.airlabs.ego.core.repository.*;
+import ru.airlabs.ego.survey.config.JsonMapper;
 import ru.airlabs.ego.survey.dto.RestResponse;
 import ru.airlabs.ego.survey.dto.device.DeviceInfo;
 import ru.airlabs.ego.survey.dto.invitation.Invitation;
@@ -25,6 +24,7 @@ import ru.airlabs.ego.survey.utils.MapUtils;
 import ru.airlabs.ego.survey.utils.PhoneUtils;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
 import java.util.*;
 import java.util.Locale;
 
@@ -83,6 +83,24 @@ public class SurveyController {
     @Autowired
     private SurveyService surveyService;
 
+    /**
+     * Сервис приема ответов на вопросы опроса
+     */
+    @Autowired
+    private SurveyAnswerQueueService surveyAnswerQueueService;
+
+    /**
+     * Сервис выдачи вопросов опроса с упреждающей загрузкой
+     */
+    @Autowired
+    private SurveyQuestionPrefetchService questionPrefetchService;
+
+    /**
+     * Сервис сессий прохождения опроса
+     */
+    @Autowired
+    private SurveySessionService surveySessionService;
+
     /**
      * Сервис данных по устройствам пользователей
      */
@@ -90,10 +108,10 @@ public class SurveyController {
     private UserDeviceInfoService deviceInfoService;
 
     /**
-     * Репозиторий организаций
+     * Сервис приема телеметрии клиентов опросов
      */
     @Autowired
-    private OrganizationRepository organizationRepository;
+    private TelemetryService telemetryService;
 
     /**
      * Репозиторий адресов компаний
@@ -137,12 +155,24 @@ public class SurveyController {
     @Autowired
     private UserService userService;
 
+    /**
+     * Общие объекты для разбора JSON
+     */
+    @Autowired
+    private JsonMapper jsonMapper;
+
     /**
      * Веб-адрес приложения
      */
     @Value("${application.url}")
     private String appUrl;
 
+    /**
+     * Максимальный размер распакованного тела запроса со сжатыми ответами на вопросы (в байтах)
+     */
+    @Value("${surveyAnswer.compressed.maxSize}")
+    private long compressedAnswersMaxSize;
+
     /**
      * Отправить ссылку на прохождение опроса по смс
      *
@@ -223,38 +253,28 @@ public class SurveyController {
     public ResponseEntity<Map> getSurveyDetailsByVacancyAndState(@PathVariable Long vacancyId,
                                                                  @PathVariable Long surveyStateId,
                                                                  @RequestParam String sc,
+                                                                 SurveySession session,
                                                                  Locale locale) {
-        // проверяем наличие вакансии
-        Vacancy vacancy = vacancyService.findById(vacancyId);
-        if (vacancy == null) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        final VacancyMethodology methodology = vacancyService.detectMethodology(vacancy.getSurveyId());
-        // получаем состояние прохождения опроса пользователем
-        Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
-        if (!state.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем пользователя
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        if (!user.get().getSalt().equalsIgnoreCase(sc)) { // проверяем соль
+        // проверяем наличие вакансии, состояния прохождения опроса, пользователя и соль
+        if (session == null || !session.isSaltVerified()) {
             return new ResponseEntity<>(NOT_FOUND);
         }
+        final Vacancy vacancy = session.getVacancy();
+        final VacancyMethodology methodology = session.getMethodology();
+        final UserSurveyState state = session.getState();
+        final User user = session.getUser();
         // получаем данные пользователя
-        UserLink userLink = userLinkRepository.findByUserIdAndParentId(user.get().getId(), vacancy.getManagerId());
+        UserLink userLink = userLinkRepository.findByUserIdAndParentId(user.getId(), vacancy.getManagerId());
         if (userLink == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
         // получаем пользователя вакансии (для определния типа приглашения пользователя)
-        VacancyUser vacancyUser = vacancyUserRepository.findByUserIdAndVacancyId(user.get().getId(), vacancyId);
+        VacancyUser vacancyUser = vacancyUserRepository.findByUserIdAndVacancyId(user.getId(), vacancyId);
         if (vacancyUser == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
         // находим организацию
-        Organization organization = organizationRepository.findByManagerId(vacancy.getManagerId());
+        Organization organization = surveySessionService.getOrganization(vacancy.getManagerId());
         // получаем адрес организации
         String address = null;
         boolean imageExists = false;
@@ -267,15 +287,15 @@ public class SurveyController {
         }
 
         // признак того, что участник проходит опрос впервые
-        final Boolean firstVisit = !deviceInfoService.existsDeviceInfo(user.get().getId(), state.get().getSurveyId());
+        final Boolean firstVisit = !deviceInfoService.existsDeviceInfo(user.getId(), state.getSurveyId());
         // возвращаем результат
         return new ResponseEntity<>(MapUtils.<String, Object>builder()
                 .add("user", MapUtils.<String, Object>builder()
-                        .add("id", user.get().getId())
+                        .add("id", user.getId())
                         .add("name", isNotBlank(userLink.getFirstName()) ?
                                 userLink.getFirstName() : extractFirstNameFromFIO(userLink.getName()))
-                        .add("phone", isNotBlank(user.get().getPhone()))
-                        .add("email", isNotBlank(user.get().getEmail()))
+                        .add("phone", isNotBlank(user.getPhone()))
+                        .add("email", isNotBlank(user.getEmail()))
                         .build())
                 .add("organization", MapUtils.<String, Object>builder()
                         .add("id", organization != null ? organization.getId() : null)
@@ -288,13 +308,13 @@ public class SurveyController {
                         .add("image", imageExists ? format(GET_COMPANY_HR_IMAGE_REST_ADDRESS, appUrl, organization.getId(), Boolean.TRUE.toString()) : null)
                         .build())
                 .add("survey", MapUtils.<String, Object>builder()
-                        .add("id", state.get().getSurveyId())
+                        .add("id", state.getSurveyId())
                         .add("vacancy", vacancy.getVacancy())
                         .add("methodology", methodology)
                         .build())
                 .add("mobileOnly", vacancy.getMobile())
                 .add("firstVisit", firstVisit)
-                .add("leader", user.get().getId().equals(vacancy.getLeaderId()))
+                .add("leader", user.getId().equals(vacancy.getLeaderId()))
                 .add("inviteSource", vacancyUser.getSourceCode())
                 .build(), OK);
     }
@@ -315,29 +335,17 @@ public class SurveyController {
                                                              @PathVariable Long surveyStateId,
                                                              @RequestParam String sc,
                                                              @RequestParam(required = false) Integer max,
+                                                             SurveySession session,
                                                              Locale locale) {
-        // проверяем наличие вакансии
-        Vacancy vacancy = vacancyService.findById(vacancyId);
-        if (vacancy == null) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем состояние прохождения опроса пользователем
-        Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
-        if (!state.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем пользователя
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        if (!user.get().getSalt().equalsIgnoreCase(sc)) { // проверяем соль
+        // проверяем наличие вакансии, состояния прохождения опроса, пользователя и соль
+        if (session == null || !session.isSaltVerified()) {
             return new ResponseEntity<>(NOT_FOUND);
         }
+        final UserSurveyState state = session.getState();
 
-        // получаем список неотвеченных вопросов
+        // получаем список неотвеченных вопросов (из буфера загруженных заранее вопросов)
         List<SurveyQuestion> questions =
-                surveyService.getUnansweredSurveyQuestions(state.get().getUserId(), state.get().getSurveyId(), locale, max);
+                questionPrefetchService.getUnansweredSurveyQuestions(state.getUserId(), state.getSurveyId(), locale, max);
         // возвращаем результат
         return new ResponseEntity<>(MapUtils.<String, Object>builder()
                 .add("questions", questions)
@@ -352,19 +360,15 @@ public class SurveyController {
      */
     @CrossOrigin
     @RequestMapping(method = GET, value = "/v/{surveyStateId}/questions/countWithTime", produces = "application/json")
-    public ResponseEntity<Map> getRemainsQuestionsWithTime(@PathVariable Long surveyStateId) {
-        // получаем состояние прохождения опроса пользователем
-        Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
-        if (!state.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем пользователя
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
+    public ResponseEntity<Map> getRemainsQuestionsWithTime(@PathVariable Long surveyStateId,
+                                                           SurveySession session) {
+        // проверяем наличие состояния прохождения опроса и пользователя
+        if (session == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
+        final UserSurveyState state = session.getState();
         // получаем количество вопросов и время
-        Map<String, Object> countWithTime = surveyService.getRemainsQuestionsWithTime(state.get().getUserId(), state.get().getSurveyId());
+        Map<String, Object> countWithTime = surveyService.getRemainsQuestionsWithTime(state.getUserId(), state.getSurveyId());
         // возвращаем результат
         return new ResponseEntity<>(MapUtils.<String, Object>builder()
                 .add("count", countWithTime.get("PCOUNT"))
@@ -380,19 +384,15 @@ public class SurveyController {
      */
     @CrossOrigin
     @RequestMapping(method = GET, value = "/v/{surveyStateId}/questions/count", produces = "application/json")
-    public ResponseEntity<Map> getRemainsQuestionsByState(@PathVariable Long surveyStateId) {
-        // получаем состояние прохождения опроса пользователем
-        Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
-        if (!state.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем пользователя
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
+    public ResponseEntity<Map> getRemainsQuestionsByState(@PathVariable Long surveyStateId,
+                                                          SurveySession session) {
+        // проверяем наличие состояния прохождения опроса и пользователя
+        if (session == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
+        final UserSurveyState state = session.getState();
         // получаем количество вопросов
-        Integer questionsCount = surveyService.getRemainsQuestionsCount(state.get().getUserId(), state.get().getSurveyId());
+        Integer questionsCount = surveyService.getRemainsQuestionsCount(state.getUserId(), state.getSurveyId());
         // возвращаем результат
         return new ResponseEntity<>(MapUtils.<String, Object>builder()
                 .add("count", questionsCount)
@@ -420,10 +420,11 @@ public class SurveyController {
 
     /**
      * Принять ответы на вопросы по вакансии и статусу прохождения опроса, тело запроса передается в сжатом виде (gzip)
+     * (сжатые данные передаются в бинарном виде или в кодировке Base64, тело запроса разбирается потоково)
      *
      * @param vacancyId     идентификатор вакансии
      * @param surveyStateId идентификатор состояния прохождения опроса
-     * @param body          список ответов
+     * @param request       запрос со списком ответов
      * @return ответ
      */
     @CrossOrigin
@@ -432,14 +433,12 @@ public class SurveyController {
                                                                              @PathVariable Long surveyStateId,
                                                                              @RequestParam(required = false) String phone,
                                                                              @RequestParam(required = false) String email,
-                                                                             @RequestBody byte[] body, HttpServletRequest request) {
+                                                                             HttpServletRequest request) {
         if (!"gzip".equals(request.getHeader("Content-Encoding"))) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        try {
-            String s = GzipUtils.decompress(Base64.getDecoder().decode(body));
-            Collection<SurveyAnswer> answers = new ObjectMapper().readValue(s, new TypeReference<Collection<SurveyAnswer>>() {
-            });
+        try (InputStream body = GzipUtils.decompressingStream(request.getInputStream(), compressedAnswersMaxSize)) {
+            Collection<SurveyAnswer> answers = jsonMapper.getSurveyAnswersReader().readValue(body);
             return processApplyAnswersByVacancyAndState(vacancyId, surveyStateId, phone, email, answers);
         } catch (Exception e) {
             return new ResponseEntity<>(NOT_ACCEPTABLE);
@@ -472,7 +471,7 @@ public class SurveyController {
         } else {
             surveyState = null;
         }
-        deviceInfoService.saveDeviceInfo(vacancyId,
+        telemetryService.saveDeviceInfo(vacancyId,
                 surveyState != null ? surveyState.getUserId() : null,
                 surveyState != null ? surveyState.getSurveyId() : null,
                 deviceInfo, "V");
@@ -522,46 +521,48 @@ public class SurveyController {
                                                                                      String phone,
                                                                                      String email,
                                                                                      Collection<SurveyAnswer> answers) {
-        // проверяем наличие вакансии
-        if (vacancyService.findById(vacancyId) == null) {
+        // проверяем наличие вакансии, состояния прохождения опроса и пользователя
+        SurveySession session = surveySessionService.getSession(vacancyId, surveyStateId);
+        if (session == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        // получаем состояние прохождения опроса пользователем
-        Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
-        if (!state.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
-        // получаем пользователя
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
+        final UserSurveyState state = session.getState();
+        // проверяем телефон
+        if (isNotBlank(phone) && !PhoneUtils.isOnlyDigitsInPhone(phone)) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        User u = user.get();
-        boolean userChanges = false;
-        // проверяем телефон
-        if (isNotBlank(phone)) {
-            if (PhoneUtils.isOnlyDigitsInPhone(phone)) {
-                u.setPhone(phone);
-                userChanges = true;
-            } else {
+        final boolean phoneChanges = isNotBlank(phone);
+        // проверяем email
+        final boolean emailChanges = isNotBlank(email) && isValid(email);
+        if (phoneChanges || emailChanges) {
+            // пользователь сессии разделяется между запросами, поэтому изменяем заново прочитанного
+            User u = userRepository.findById(session.getUser().getId()).orElse(null);
+            if (u == null) {
                 return new ResponseEntity<>(NOT_FOUND);
             }
+            if (phoneChanges) {
+                u.setPhone(phone);
+            }
+            if (emailChanges) {
+                u.setEmail(email);
+            }
+            userRepository.save(u);    // сохраняем изменения для пользователя
+            surveySessionService.invalidateUser(u.getId());
         }
-        // проверяем email
-        if (isNotBlank(email) && isValid(email)) {
-            u.setEmail(email);
-            userChanges = true;
-        }
-        if (userChanges) userRepository.save(u);    // сохраняем изменения для пользователя
 
-        // отвечаем на вопросы
-        SurveyResult surveyResult = surveyService.answerSurveyQuestions(answers, surveyStateId);
+        // отвечаем на вопросы (в асинхронном режиме ответы сохраняются в БД в фоне)
+        SurveyResult surveyResult = surveyAnswerQueueService.submitAnswers(answers, state);
+        // исключаем отвеченные вопросы из буфера загруженных заранее вопросов
+        List<Long> answeredIds = new ArrayList<>(surveyResult.appliedAnswerIds);
+        answeredIds.addAll(surveyResult.repeatedAnswerIds);
+        questionPrefetchService.markAnswered(state.getUserId(), state.getSurveyId(), answeredIds);
         // отдаем ответ
         return new ResponseEntity<>(MapUtils.<String, Object>builder()
                 .add("applied", surveyResult.totalAnswered.get())
                 .add("applied_id", surveyResult.appliedAnswerIds)
                 .add("repeats", surveyResult.totalRepeats.get())
                 .add("repeats_id", surveyResult.repeatedAnswerIds)
+                .add("errors_id", surveyResult.errorAnswerIds)
                 .build(), OK);
     }
 
@@ -576,28 +577,26 @@ public class SurveyController {
     @CrossOrigin
     @RequestMapping(method = GET, value = "/v/{vacancyId}/{surveyStateId}/compareWithLeader", produces = "application/json")
     public ResponseEntity<Map<String, Object>> compareUserWithLeader(@PathVariable Long vacancyId,
-                                                                     @PathVariable Long surveyStateId) {
-        // проверяем наличие вакансии
-        Vacancy vacancy = vacancyService.findById(vacancyId);
-        if (vacancy == null) {
+                                                                     @PathVariable Long surveyStateId,
+                                                                     SurveySession session) {
+        // проверяем наличие вакансии, состояния прохождения опроса и пользователя
+        if (session == null) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        final VacancyMethodology methodology = vacancyService.detectMethodology(vacancy.getSurveyId());
-        // получаем состояние прохождения опроса пользователем
+        final Vacancy vacancy = session.getVacancy();
+        final VacancyMethodology methodology = session.getMethodology();
+        final User user = session.getUser();
+        // результат сравнения меняется в процессе прохождения опроса, поэтому состояние читаем из БД
         Optional<UserSurveyState> state = userSurveyStateRepository.findById(surveyStateId);
         if (!state.isPresent()) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        Optional<User> user = userRepository.findById(state.get().getUserId());
-        if (!user.isPresent()) {
-            return new ResponseEntity<>(NOT_FOUND);
-        }
         Survey survey = surveyService.findById(state.get().getSurveyId());
         final boolean leaderPassedSurvey = vacancyService.leaderPassedSurvey(vacancy.getLeaderId(), survey.getId());
         final boolean needToWait = !(vacancy.getVacancy() && methodology == VacancyMethodology.PORTRAIT && !leaderPassedSurvey);
         final Double compareResult;
         if (survey.getAlgo() == 1) { // получение результатов для опроса "Соционика"
-            compareResult = surveyService.compareUserWithLeaderBySurvey(user.get().getId(),
+            compareResult = surveyService.compareUserWithLeaderBySurvey(user.getId(),
                     vacancy.getLeaderId(),
                     state.get().getSurveyId());
         } else { // получение результатов для всех прочих опросов
@@ -628,7 +627,7 @@ public class SurveyController {
         }
         final VacancyMethodology methodology = vacancyService.detectMethodology(vacancy.getSurveyId());
         // находим организацию
-        Organization organization = organizationRepository.findByManagerId(vacancy.getManagerId());
+        Organization organization = surveySessionService.getOrganization(vacancy.getManagerId());
         if (organization != null) {
             final boolean imageExists = accountSettingsService.isCompanyImageExists(organization.getId());
             // возвращаем результат
@@ -729,7 +728,7 @@ public class SurveyController {
             userId = state.get().getUserId();
             surveyId = state.get().getSurveyId();
         }
-        surveyService.saveSurveyError(userId, surveyId, surveyError);
+        telemetryService.saveSurveyError(userId, surveyId, surveyError);
         return prepareSuccessResponse(format(CLIENT_ERROR_SAVE_SUCCESS_MESSAGE, userId));
     }
 
@@ -748,7 +747,7 @@ public class SurveyController {
         if (!state.isPresent()) {
             return new ResponseEntity<>(NOT_FOUND);
         }
-        surveyService.saveSurveyLocation(state.get().getId(), location);
+        telemetryService.saveSurveyLocation(state.get().getId(), location);
         return prepareSuccessResponse(format(SURVEY_STATE_LOCATION_SUCCESS_MESSAGE, surveyStateId));
     }
 
@@ -23,6 +23,7 @@ import ru.airlabs.ego.survey.dto.invitation.Invitation;
 import ru.airlabs.ego.survey.dto.invitation.InvitationCount;
 import ru.airlabs.ego.survey.dto.invitation.InvitationText;
 import ru.airlabs.ego.survey.dto.invitation.InvitationType;
+import ru.airlabs.ego.survey.dto.resume.ResumeImportResult;
 import ru.airlabs.ego.survey.dto.resume.ResumeInfo;
 import ru.airlabs.ego.survey.dto.resume.ResumeValidationResult;
 import ru.airlabs.ego.survey.dto.user.UserDetail;
@@ -337,6 +338,42 @@ public class UserDetailsController {
         return new ResponseEntity<>(result, OK);
     }
 
+    /**
+     * Импорт списка резюме из файла Excel (XLS, XLSX)
+     *
+     * @param vacancyId      идентификатор вакансии
+     * @param file           файл
+     * @param authentication данные авторизации текущего пользователя (HR)
+     * @return результат импорта
+     */
+    @PostMapping(value = "/v/{vacancyId}/importResumes", produces = "application/json")
+    @ResponseBody
+    public ResponseEntity<?> importResumes(@PathVariable("vacancyId") Long vacancyId,
+                                           @RequestParam("file") MultipartFile file,
+                                           @AuthenticationPrincipal Authentication authentication,
+                                           Locale locale) throws IOException {
+        Vacancy vacancy = vacancyService.findById(vacancyId);
+        if (vacancy == null) {
+            return new ResponseEntity<>(NOT_FOUND);
+        }
+        if (!vacancy.getManagerId().equals(authentication.getUser().getId())) {
+            return new ResponseEntity<>(NOT_FOUND);
+        }
+        if (file.isEmpty()) {
+            return new ResponseEntity<>(MapUtils.builder("message", "Неверный формат файла").build(), NOT_ACCEPTABLE);
+        }
+        try {
+            ResumeImportResult result = resumeService.importResumeList(vacancyId,
+                    authentication.getUser().getId(),
+                    file,
+                    locale.getLanguage().toUpperCase(),
+                    null);
+            return new ResponseEntity<>(result, OK);
+        } catch (InvalidFormatException e) {
+            return new ResponseEntity<>(MapUtils.builder("message", "Ошибка парсинга резюме").build(), UNPROCESSABLE_ENTITY);
+        }
+    }
+
     /**
      * Сохранение изображения из резюме
      *
@@ -13,6 +13,8 @@ import org.springframework.web.bind.annotation.*;
 import ru.airlabs.ego.core.entity.Vacancy;
 import ru.airlabs.ego.survey.dto.RestResponse;
 import ru.airlabs.ego.survey.dto.invitation.Invitation;
+import ru.airlabs.ego.survey.dto.invitation.InvitationDispatch;
+import ru.airlabs.ego.survey.dto.invitation.InvitationResult;
 import ru.airlabs.ego.survey.dto.invitation.InvitationStatus;
 import ru.airlabs.ego.survey.dto.invitation.InvitationText;
 import ru.airlabs.ego.survey.dto.invitation.InvitationType;
@@ -57,6 +59,8 @@ public class VacancyController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private InvitationDispatchService invitationDispatchService;
 
     /**
      * Получение всех вакансий или исследований
@@ -119,6 +123,7 @@ public class VacancyController {
      *
      * @param vacancyId      идентификатор вакансии или исследования
      * @param pageable       настройки пагинации и сортировки
+     * @param cursor         курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @param authentication текущий авторизованный пользователь
      * @return список приглашений
      */
@@ -126,9 +131,10 @@ public class VacancyController {
     @ResponseBody
     public Page<VacancyUserDetail> getInvitationsForVacancy(@PathVariable("id") Long vacancyId,
                                                             @PageableDefault(sort = {"surveyCreate"}, direction = Sort.Direction.DESC, size = 16) Pageable pageable,
+                                                            @RequestParam(value = "cursor", required = false) String cursor,
                                                             @AuthenticationPrincipal Authentication authentication) {
         vacancyService.checkUserAccessForVacancy(authentication.getUser(), vacancyId);
-        return vacancyDetailService.getInvitationsForVacancy(vacancyId, authentication.getUser(), pageable);
+        return vacancyDetailService.getInvitationsForVacancy(vacancyId, authentication.getUser(), pageable, cursor);
     }
 
     /**
@@ -136,6 +142,7 @@ public class VacancyController {
      *
      * @param vacancyId      идентификатор вакансии или исследования
      * @param pageable       настройки пагинации и сортировки
+     * @param cursor         курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @param authentication текущий авторизованный пользователь
      * @return список приглашений из буфера
      */
@@ -143,9 +150,10 @@ public class VacancyController {
     @ResponseBody
     public Page<VacancyUserDetail> getBufferInvitationsForVacancy(@PathVariable("id") Long vacancyId,
                                                                   @PageableDefault(sort = {"surveyCreate"}, direction = Sort.Direction.DESC, size = 16) Pageable pageable,
+                                                                  @RequestParam(value = "cursor", required = false) String cursor,
                                                                   @AuthenticationPrincipal Authentication authentication) {
         vacancyService.checkUserAccessForVacancy(authentication.getUser(), vacancyId);
-        return vacancyDetailService.getBufferInvitationsForVacancy(vacancyId, authentication.getUser(), pageable);
+        return vacancyDetailService.getBufferInvitationsForVacancy(vacancyId, authentication.getUser(), pageable, cursor);
     }
 
     /**
@@ -153,6 +161,7 @@ public class VacancyController {
      *
      * @param vacancyId      идентификатор вакансии или исследование
      * @param pageable       настройки пагинации и сортировки
+     * @param cursor         курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @param authentication текущий авторизованный пользователь
      * @return список откликов
      */
@@ -160,9 +169,10 @@ public class VacancyController {
     @ResponseBody
     public Page<VacancyUserDetail> getFeedbackForVacancy(@PathVariable("id") Long vacancyId,
                                                          @PageableDefault(sort = {"surveyUpdate"}, direction = Sort.Direction.DESC, size = 16) Pageable pageable,
+                                                         @RequestParam(value = "cursor", required = false) String cursor,
                                                          @AuthenticationPrincipal Authentication authentication) {
         vacancyService.checkUserAccessForVacancy(authentication.getUser(), vacancyId);
-        return vacancyDetailService.getFeedbackForVacancy(vacancyId, authentication.getUser(), pageable);
+        return vacancyDetailService.getFeedbackForVacancy(vacancyId, authentication.getUser(), pageable, cursor);
     }
 
 
@@ -272,15 +282,56 @@ public class VacancyController {
                                                     @RequestParam(value = "src", defaultValue = "L") String source,
                                                     @RequestBody Set<UserDetail> userDetails,
                                                     @AuthenticationPrincipal Authentication authentication) {
-        Set<Invitation> inv = new HashSet<>();
-        userDetails.forEach(i -> {
-            Long receiverId = userService.getOrCreateUser(i.getName(), i.getEmail(), i.getPhone(), authentication.getUser().getId());
-            inv.add(new Invitation(receiverId, source));
-        });
-        userInvitationService.sendInvitations(inv, authentication.getUser(), vacancyId);
+        List<InvitationResult> results = invitationDispatchService.send(new ArrayList<>(userDetails), source, authentication.getUser(), vacancyId);
+        long sent = results.stream().filter(InvitationResult::isSent).count();
+        if (sent < results.size()) {
+            return prepareSuccessResponse(format("Отправлено приглашений: %s из %s", sent, results.size()));
+        }
         return prepareSuccessResponse(USER_INVITATION_SUCCESS_MESSAGE);
     }
 
+    /**
+     * Запуск фоновой отправки приглашений на вакансию по большому списку
+     *
+     * @param vacancyId      идентификатор вакансии
+     * @param source         метод отправки приглашений
+     * @param userDetails    список приглашаемых на вакансию
+     * @param authentication данные авторизации текущего пользователя
+     * @return состояние отправки (идентификатор для опроса хода отправки)
+     */
+    @RequestMapping(value = "/invite/{vacancyId}/dispatch",
+            method = RequestMethod.POST,
+            produces = "application/json")
+    @ResponseBody
+    public ResponseEntity<InvitationDispatch> startInvitationDispatch(@PathVariable("vacancyId") Long vacancyId,
+                                                                      @RequestParam(value = "src", defaultValue = "L") String source,
+                                                                      @RequestBody Set<UserDetail> userDetails,
+                                                                      @AuthenticationPrincipal Authentication authentication) {
+        vacancyService.checkUserAccessForVacancy(authentication.getUser(), vacancyId);
+        InvitationDispatch dispatch = invitationDispatchService.start(new ArrayList<>(userDetails), source, authentication.getUser(), vacancyId);
+        return new ResponseEntity<>(dispatch, OK);
+    }
+
+    /**
+     * Получение хода фоновой отправки приглашений
+     *
+     * @param dispatchId     идентификатор отправки
+     * @param authentication данные авторизации текущего пользователя
+     * @return состояние отправки (результаты по каждому приглашению - после завершения отправки)
+     */
+    @RequestMapping(value = "/invite/dispatch/{dispatchId}",
+            method = RequestMethod.GET,
+            produces = "application/json")
+    @ResponseBody
+    public ResponseEntity<InvitationDispatch> getInvitationDispatch(@PathVariable("dispatchId") String dispatchId,
+                                                                    @AuthenticationPrincipal Authentication authentication) {
+        InvitationDispatch dispatch = invitationDispatchService.find(dispatchId, authentication.getUser().getId());
+        if (dispatch == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(dispatch, OK);
+    }
+
     /**
      * Отправка приглашения на вакансию в WhatsApp
      *
@@ -0,0 +1,30 @@
+package ru.airlabs.ego.survey.dto;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * Страница данных с курсором для выборки следующей страницы по ключу
+ *
+ * @author Aleksey Gorbachev
+ */
+public class KeysetPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Курсор для выборки следующей страницы (null - страница последняя)
+     */
+    private final String nextCursor;
+
+    public KeysetPage(List<T> content, Pageable pageable, long total, String nextCursor) {
+        super(content, pageable, total);
+        this.nextCursor = nextCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
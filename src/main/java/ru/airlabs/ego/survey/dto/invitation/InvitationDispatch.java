@@ -0,0 +1,138 @@
+package ru.airlabs.ego.survey.dto.invitation;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Фоновая отправка приглашений по списку
+ * <p>
+ * Ход отправки изменяется одним фоновым потоком и читается при опросе состояния из других потоков.
+ *
+ * @author Aleksey Gorbachev
+ */
+public class InvitationDispatch {
+
+    /**
+     * Идентификатор отправки
+     */
+    private final String id;
+
+    /**
+     * Идентификатор пользователя, запустившего отправку (HR)
+     */
+    private final Long managerId;
+
+    /**
+     * Общее кол-во приглашаемых
+     */
+    private final int total;
+
+    /**
+     * Кол-во обработанных приглашений
+     */
+    private volatile int processed;
+
+    /**
+     * Кол-во отправленных приглашений
+     */
+    private volatile int sent;
+
+    /**
+     * Признак завершения отправки
+     */
+    private volatile boolean finished;
+
+    /**
+     * Ошибка, прервавшая отправку
+     */
+    private volatile String error;
+
+    /**
+     * Результаты отправки по каждому приглашению
+     */
+    private final List<InvitationResult> results;
+
+    public InvitationDispatch(String id, Long managerId, int total) {
+        this.id = id;
+        this.managerId = managerId;
+        this.total = total;
+        this.results = Collections.synchronizedList(new ArrayList<>(total));
+    }
+
+    /**
+     * Добавить результаты отправки порции приглашений
+     *
+     * @param chunk результаты отправки
+     */
+    public void addResults(List<InvitationResult> chunk) {
+        results.addAll(chunk);
+        int chunkSent = 0;
+        for (InvitationResult result : chunk) {
+            if (result.isSent()) {
+                chunkSent++;
+            }
+        }
+        sent += chunkSent;
+        processed += chunk.size();
+    }
+
+    /**
+     * Завершить отправку
+     *
+     * @param error ошибка, прервавшая отправку (null - отправка выполнена полностью)
+     */
+    public void finish(String error) {
+        this.error = error;
+        this.finished = true;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    public Long getManagerId() {
+        return managerId;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getFailed() {
+        return processed - sent;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Результаты отправки по каждому приглашению (заполнены после завершения отправки)
+     *
+     * @return результаты отправки
+     */
+    public List<InvitationResult> getResults() {
+        if (!finished) {
+            return null;
+        }
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.airlabs.ego.survey.dto.invitation;
+
+/**
+ * Результат отправки приглашения
+ *
+ * @author Aleksey Gorbachev
+ */
+public class InvitationResult {
+
+    /**
+     * Идентификатор приглашенного пользователя (null - пользователя не удалось создать)
+     */
+    private final Long receiverId;
+
+    /**
+     * Ошибка отправки (null - приглашение отправлено)
+     */
+    private final String error;
+
+    /**
+     * Конструктор
+     *
+     * @param receiverId идентификатор приглашенного пользователя
+     * @param error      ошибка отправки
+     */
+    public InvitationResult(Long receiverId, String error) {
+        this.receiverId = receiverId;
+        this.error = error;
+    }
+
+    public Long getReceiverId() {
+        return receiverId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSent() {
+        return error == null;
+    }
+}
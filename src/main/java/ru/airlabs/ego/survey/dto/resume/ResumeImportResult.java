@@ -0,0 +1,29 @@
+package ru.airlabs.ego.survey.dto.resume;
+
+/**
+ * Модель для передачи хода и результатов импорта списка резюме из файла Excel
+ *
+ * @author Aleksey Gorbachev
+ */
+public class ResumeImportResult {
+
+    /**
+     * Кол-во прочитанных из файла резюме
+     */
+    public int parsed;
+
+    /**
+     * Кол-во сохраненных резюме
+     */
+    public int saved;
+
+    /**
+     * Кол-во пропущенных резюме (без контактов или без созданного пользователя)
+     */
+    public int skipped;
+
+    /**
+     * Кол-во резюме, которые не удалось сохранить
+     */
+    public int failed;
+}
@@ -10,8 +10,11 @@ import ru.airlabs.ego.survey.dto.survey.metrics.Network;
 import ru.airlabs.ego.survey.dto.survey.metrics.Swipe;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import static ru.airlabs.ego.survey.utils.DateUtils.parseClientDate;
+
 /**
  * Ответ на вопрос опроса
  *
@@ -84,6 +87,25 @@ public class SurveyAnswer {
      */
     private List<String> hidden = new ArrayList<>();
 
+    /**
+     * Разбор даты открытия вопроса
+     *
+     * @return дата открытия вопроса или null, если дата не передана
+     * @throws IllegalArgumentException если дата не соответствует формату
+     */
+    public Date parseViewDate() {
+        return parseClientDate(viewDate);
+    }
+
+    /**
+     * Разбор даты ответа на вопрос
+     *
+     * @return дата ответа на вопрос или null, если дата не передана
+     * @throws IllegalArgumentException если дата не соответствует формату
+     */
+    public Date parseAnswerDate() {
+        return parseClientDate(answerDate);
+    }
 
     @Override
     public boolean equals(Object o) {
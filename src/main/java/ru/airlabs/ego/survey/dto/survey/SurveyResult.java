@@ -31,4 +31,15 @@ public class SurveyResult {
      */
     public List<Long> repeatedAnswerIds = new CopyOnWriteArrayList<>();
 
+    /**
+     * Список идентификаторов ответов, которые не удалось сохранить
+     */
+    public List<Long> errorAnswerIds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Список идентификаторов ответов, которые не удалось сохранить из-за недоступности БД
+     * (часть списка {@link #errorAnswerIds}, повторное сохранение таких ответов может быть успешным)
+     */
+    public List<Long> retryableAnswerIds = new CopyOnWriteArrayList<>();
+
 }
@@ -0,0 +1,79 @@
+package ru.airlabs.ego.survey.dto.survey;
+
+import ru.airlabs.ego.core.entity.User;
+import ru.airlabs.ego.core.entity.UserSurveyState;
+import ru.airlabs.ego.core.entity.Vacancy;
+import ru.airlabs.ego.survey.dto.vacancy.VacancyMethodology;
+
+/**
+ * Модель для инкапсуляции данных по прохождению опроса пользователем (сессия опроса)
+ * <p>
+ * Данные берутся из кэша, поэтому изменяемые в процессе прохождения опроса поля состояния
+ * (прогресс, результат сравнения и т.п.) могут быть неактуальны - для них состояние нужно читать из БД.
+ * Сущности сессии разделяются между запросами, поэтому изменять их нельзя.
+ *
+ * @author Aleksey Gorbachev
+ */
+public class SurveySession {
+
+    /**
+     * Вакансия (null, если вакансия не передавалась в запросе)
+     */
+    private final Vacancy vacancy;
+
+    /**
+     * Методология опроса вакансии
+     */
+    private final VacancyMethodology methodology;
+
+    /**
+     * Состояние прохождения опроса пользователем
+     */
+    private final UserSurveyState state;
+
+    /**
+     * Пользователь, проходящий опрос
+     */
+    private final User user;
+
+    /**
+     * Признак того, что переданная в запросе соль совпадает с солью пользователя
+     */
+    private boolean saltVerified;
+
+    public SurveySession(Vacancy vacancy, VacancyMethodology methodology, UserSurveyState state, User user) {
+        this.vacancy = vacancy;
+        this.methodology = methodology;
+        this.state = state;
+        this.user = user;
+    }
+
+    public Vacancy getVacancy() {
+        return vacancy;
+    }
+
+    public VacancyMethodology getMethodology() {
+        return methodology;
+    }
+
+    public UserSurveyState getState() {
+        return state;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public boolean isSaltVerified() {
+        return saltVerified;
+    }
+
+    /**
+     * Проверить соль пользователя
+     *
+     * @param salt соль, переданная в запросе
+     */
+    public void verifySalt(String salt) {
+        this.saltVerified = salt != null && user.getSalt() != null && user.getSalt().equalsIgnoreCase(salt);
+    }
+}
@@ -0,0 +1,355 @@
+package ru.airlabs.ego.survey.dto.survey.metrics;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Модель для представления серии показаний датчика (гироскопа, акселерометра) в виде массива десятичных чисел
+ * <p>
+ * Показания хранятся построчно: одна строка - один замер, кол-во значений в замере задается размерностью серии.
+ * Каждое значение хранится как целое число цифр и кол-во знаков после запятой, поэтому строки замеров
+ * восстанавливаются из серии в точности (вместе с разделителем значений и незначащими нулями).
+ * Замеры, которые нельзя восстановить в точности (NaN, экспоненциальная запись, знак "+", "-0",
+ * пробелы по краям, разные разделители значений), в серию не разбираются - такие показания хранятся как есть.
+ * <p>
+ * Для хранения серия кодируется в компактный бинарный формат без потери точности:
+ * цифры каждой координаты записываются как разность с предыдущим значением этой координаты
+ * (соседние замеры близки, поэтому разности малы) в виде varint и сжимаются алгоритмом deflate.
+ *
+ * @author Aleksey Gorbachev
+ */
+public class SensorSeries {
+
+    /**
+     * Кол-во значений в одном замере
+     */
+    private final int dimension;
+
+    /**
+     * Кол-во значений ускорения в замере акселерометра (остальные - скорость вращения), 0 - для гироскопа
+     */
+    private final int accelDimension;
+
+    /**
+     * Разделитель значений в строковом представлении замера
+     */
+    private final String separator;
+
+    /**
+     * Цифры значений замеров (построчно)
+     */
+    private final long[] unscaledValues;
+
+    /**
+     * Кол-во знаков после запятой значений замеров (построчно)
+     */
+    private final int[] scales;
+
+    private SensorSeries(int dimension, int accelDimension, String separator, long[] unscaledValues, int[] scales) {
+        this.dimension = dimension;
+        this.accelDimension = accelDimension;
+        this.separator = separator;
+        this.unscaledValues = unscaledValues;
+        this.scales = scales;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getSize() {
+        return dimension == 0 ? 0 : unscaledValues.length / dimension;
+    }
+
+    /**
+     * Получить значение замера
+     *
+     * @param row    номер замера
+     * @param column номер значения в замере
+     * @return значение
+     */
+    public BigDecimal getValue(int row, int column) {
+        final int i = row * dimension + column;
+        return BigDecimal.valueOf(unscaledValues[i], scales[i]);
+    }
+
+    /**
+     * Разбор показаний гироскопа
+     *
+     * @param samples замеры в строковом виде (значения через запятую)
+     * @return серия показаний или null, если замеры пустые или их нельзя восстановить из серии в точности
+     */
+    public static SensorSeries parse(List<String> samples) {
+        if (isNull(samples) || samples.isEmpty()) {
+            return null;
+        }
+        SeriesBuilder builder = new SeriesBuilder();
+        for (String sample : samples) {
+            if (!builder.addRow(sample, null)) {
+                return null;
+            }
+        }
+        return builder.build(0);
+    }
+
+    /**
+     * Разбор показаний акселерометра
+     * (в одном замере объединяются значения ускорения и скорости вращения;
+     * замеры без скорости вращения в серию не разбираются - серия не хранит признак ее отсутствия)
+     *
+     * @param samples замеры акселерометра
+     * @return серия показаний или null, если замеры пустые или их нельзя восстановить из серии в точности
+     */
+    public static SensorSeries parseAccel(List<AccelItem> samples) {
+        if (isNull(samples) || samples.isEmpty()) {
+            return null;
+        }
+        SeriesBuilder builder = new SeriesBuilder();
+        int accelDimension = -1;
+        for (AccelItem sample : samples) {
+            if (sample == null || sample.getRotrate() == null || !builder.addRow(sample.getAccel(), sample.getRotrate())) {
+                return null;
+            }
+            if (accelDimension == -1) {
+                accelDimension = builder.lastSplit;
+            } else if (accelDimension != builder.lastSplit) {
+                return null;
+            }
+        }
+        return builder.build(accelDimension);
+    }
+
+    /**
+     * Закодировать серию в компактный бинарный формат
+     *
+     * @return закодированная серия
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            writeVarLong(out, dimension);
+            writeVarLong(out, accelDimension);
+            writeVarLong(out, getSize());
+            out.writeUTF(separator);
+            for (int column = 0; column < dimension; column++) {
+                long previous = 0;
+                for (int i = column; i < unscaledValues.length; i += dimension) {
+                    writeVarLong(out, scales[i]);
+                    writeVarLong(out, zigZag(unscaledValues[i] - previous));
+                    previous = unscaledValues[i];
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while sensor series encoding!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Раскодировать серию из компактного бинарного формата
+     *
+     * @param encoded закодированная серия
+     * @return серия показаний
+     */
+    public static SensorSeries decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+            int dimension = (int) readVarLong(in);
+            int accelDimension = (int) readVarLong(in);
+            int size = (int) readVarLong(in);
+            String separator = in.readUTF();
+            long[] unscaledValues = new long[dimension * size];
+            int[] scales = new int[dimension * size];
+            for (int column = 0; column < dimension; column++) {
+                long previous = 0;
+                for (int i = column; i < unscaledValues.length; i += dimension) {
+                    scales[i] = (int) readVarLong(in);
+                    unscaledValues[i] = previous + unZigZag(readVarLong(in));
+                    previous = unscaledValues[i];
+                }
+            }
+            return new SensorSeries(dimension, accelDimension, separator, unscaledValues, scales);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while sensor series decoding!", e);
+        }
+    }
+
+    /**
+     * Получить замеры гироскопа в исходном строковом виде
+     *
+     * @return список замеров
+     */
+    public List<String> toStrings() {
+        List<String> samples = new ArrayList<>(getSize());
+        for (int row = 0; row < unscaledValues.length; row += dimension) {
+            samples.add(formatValues(row, row + dimension));
+        }
+        return samples;
+    }
+
+    /**
+     * Получить замеры акселерометра в исходном строковом виде
+     *
+     * @return список замеров
+     */
+    public List<AccelItem> toAccelItems() {
+        List<AccelItem> samples = new ArrayList<>(getSize());
+        for (int row = 0; row < unscaledValues.length; row += dimension) {
+            samples.add(new AccelItem(formatValues(row, row + accelDimension),
+                    formatValues(row + accelDimension, row + dimension)));
+        }
+        return samples;
+    }
+
+    private String formatValues(int from, int to) {
+        StringBuilder sample = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                sample.append(separator);
+            }
+            sample.append(BigDecimal.valueOf(unscaledValues[i], scales[i]).toPlainString());
+        }
+        return sample.toString();
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Построитель серии из строк замеров
+     */
+    private static class SeriesBuilder {
+
+        private final List<Long> unscaledValues = new ArrayList<>();
+
+        private final List<Integer> scales = new ArrayList<>();
+
+        private String separator;
+
+        private int dimension = -1;
+
+        /**
+         * Кол-во значений первой части последнего добавленного замера
+         */
+        private int lastSplit;
+
+        /**
+         * Добавить замер
+         *
+         * @param first  значения замера (первая часть)
+         * @param second значения замера (вторая часть, может отсутствовать)
+         * @return false - если замер нельзя восстановить из серии в точности или размерность не совпадает
+         */
+        boolean addRow(String first, String second) {
+            final int firstCount = addValues(first);
+            final int secondCount = second != null ? addValues(second) : 0;
+            if (firstCount < 0 || secondCount < 0) {
+                return false;
+            }
+            lastSplit = second != null ? firstCount : 0;
+            final int rowDimension = firstCount + secondCount;
+            if (dimension == -1) {
+                dimension = rowDimension;
+            }
+            return dimension == rowDimension;
+        }
+
+        /**
+         * Добавить значения замера
+         *
+         * @param sample значения замера в строковом виде
+         * @return кол-во добавленных значений или -1, если значения нельзя восстановить в точности
+         */
+        private int addValues(String sample) {
+            if (isNull(sample) || sample.isEmpty()) {
+                return -1;
+            }
+            int count = 0;
+            int valueStart = 0;
+            for (int i = 0; i <= sample.length(); i++) {
+                if (i < sample.length() && !isSeparatorChar(sample.charAt(i))) {
+                    continue;
+                }
+                if (!addValue(sample.substring(valueStart, i))) {
+                    return -1;
+                }
+                count++;
+                if (i == sample.length()) {
+                    break;
+                }
+                int separatorEnd = i;
+                while (separatorEnd < sample.length() && isSeparatorChar(sample.charAt(separatorEnd))) {
+                    separatorEnd++;
+                }
+                String valueSeparator = sample.substring(i, separatorEnd);
+                if (separator == null) {
+                    separator = valueSeparator;
+                } else if (!separator.equals(valueSeparator)) {
+                    return -1;
+                }
+                valueStart = separatorEnd;
+                i = separatorEnd - 1;
+            }
+            return count;
+        }
+
+        private boolean addValue(String value) {
+            final BigDecimal decimal;
+            try {
+                decimal = new BigDecimal(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (decimal.scale() < 0 || decimal.unscaledValue().bitLength() > 63 || !decimal.toPlainString().equals(value)) {
+                return false;
+            }
+            unscaledValues.add(decimal.unscaledValue().longValue());
+            scales.add(decimal.scale());
+            return true;
+        }
+
+        private static boolean isSeparatorChar(char c) {
+            return c == ',' || c == ';' || Character.isWhitespace(c);
+        }
+
+        SensorSeries build(int accelDimension) {
+            long[] values = new long[unscaledValues.size()];
+            int[] valueScales = new int[scales.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unscaledValues.get(i);
+                valueScales[i] = scales.get(i);
+            }
+            return new SensorSeries(dimension, accelDimension, separator != null ? separator : ",", values, valueScales);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package ru.airlabs.ego.survey.dto.survey.metrics;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.airlabs.ego.survey.utils.ClientDateJson;
 
 import java.util.Date;
 
@@ -22,14 +24,16 @@ public class Swipe {
      * Дата начала
      */
     @JsonProperty("d_start")
-    @JsonFormat(pattern = "dd.MM.yyyy'T'HH:mm:ss:SSS")
+    @JsonSerialize(using = ClientDateJson.Serializer.class)
+    @JsonDeserialize(using = ClientDateJson.Deserializer.class)
     private Date startDate;
 
     /**
      * Дата завершения
      */
     @JsonProperty("d_end")
-    @JsonFormat(pattern = "dd.MM.yyyy'T'HH:mm:ss:SSS")
+    @JsonSerialize(using = ClientDateJson.Serializer.class)
+    @JsonDeserialize(using = ClientDateJson.Deserializer.class)
     private Date endDate;
 
     /**
@@ -0,0 +1,134 @@
+package ru.airlabs.ego.survey.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.jdbc.core.SqlOutParameter;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.simple.SimpleJdbcCall;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+
+/**
+ * Реестр вызовов хранимых процедур и функций
+ * <p>
+ * Объекты вызовов создаются один раз при старте приложения и используются повторно
+ * (после компиляции {@link SimpleJdbcCall} потокобезопасен).
+ * После старта приложения все зарегистрированные вызовы компилируются, результат пишется в лог.
+ * <p>
+ * Если чтение метаданных процедур отключено (jdbcCall.metaDataAccess=false),
+ * порядок объявленных параметров должен совпадать с порядком параметров процедуры в БД.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("jdbcCallRegistry")
+public class JdbcCallRegistry implements ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcCallRegistry.class);
+
+    /**
+     * Название возвращаемого значения хранимой функции
+     */
+    public static final String RETURN_VALUE_NAME = "RETURN_VALUE";
+
+    /**
+     * Источник данных
+     */
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Признак чтения метаданных параметров процедур из БД
+     */
+    @Value("${jdbcCall.metaDataAccess}")
+    private boolean metaDataAccess;
+
+    /**
+     * Зарегистрированные вызовы (ключ - полное название процедуры)
+     */
+    private final Map<String, SimpleJdbcCall> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Признак выполненной проверки вызовов
+     */
+    private final AtomicBoolean validated = new AtomicBoolean(false);
+
+    /**
+     * Получить вызов хранимой процедуры
+     *
+     * @param catalogName   название пакета
+     * @param procedureName название процедуры
+     * @param parameters    параметры процедуры
+     * @return вызов хранимой процедуры
+     */
+    public SimpleJdbcCall procedure(String catalogName, String procedureName, SqlParameter... parameters) {
+        return calls.computeIfAbsent(callName(catalogName, procedureName), name -> createCall(catalogName)
+                .withProcedureName(procedureName)
+                .declareParameters(parameters));
+    }
+
+    /**
+     * Получить вызов хранимой функции
+     *
+     * @param catalogName  название пакета
+     * @param functionName название функции
+     * @param returnType   SQL тип возвращаемого значения
+     * @param parameters   параметры функции
+     * @return вызов хранимой функции
+     */
+    public SimpleJdbcCall function(String catalogName, String functionName, int returnType, SqlParameter... parameters) {
+        return calls.computeIfAbsent(callName(catalogName, functionName), name -> createCall(catalogName)
+                .withFunctionName(functionName)
+                .declareParameters(new SqlOutParameter(RETURN_VALUE_NAME, returnType))
+                .declareParameters(parameters));
+    }
+
+    /**
+     * Проверка зарегистрированных вызовов после старта приложения
+     *
+     * @param event событие старта контекста
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (validated.compareAndSet(false, true)) {
+            validate();
+        }
+    }
+
+    /**
+     * Компиляция всех зарегистрированных вызовов с выводом результата в лог
+     * (вызовы, которые не удалось скомпилировать, будут скомпилированы при первом выполнении)
+     */
+    private void validate() {
+        Map<String, String> errors = new TreeMap<>();
+        for (Map.Entry<String, SimpleJdbcCall> entry : calls.entrySet()) {
+            try {
+                entry.getValue().compile();
+            } catch (Exception e) {
+                errors.put(entry.getKey(), e.getMessage());
+            }
+        }
+        LOGGER.info("Jdbc calls compiled: {} of {}, metadata access: {}",
+                calls.size() - errors.size(), calls.size(), metaDataAccess);
+        errors.forEach((name, error) -> LOGGER.error(format("Jdbc call %s compile error: %s", name, error)));
+    }
+
+    private SimpleJdbcCall createCall(String catalogName) {
+        SimpleJdbcCall call = new SimpleJdbcCall(dataSource).withCatalogName(catalogName);
+        return metaDataAccess ? call : call.withoutProcedureColumnMetaDataAccess();
+    }
+
+    private static String callName(String catalogName, String name) {
+        return catalogName + "." + name;
+    }
+}
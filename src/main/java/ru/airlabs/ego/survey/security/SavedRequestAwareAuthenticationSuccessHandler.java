@@ -1,6 +1,7 @@
 package ru.airlabs.ego.survey.security;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
 import org.springframework.security.web.savedrequest.HttpSessionRequestCache;
@@ -19,6 +20,8 @@ import java.io.IOException;
  */
 public class SavedRequestAwareAuthenticationSuccessHandler extends SimpleUrlAuthenticationSuccessHandler {
 
+    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writer();
+
     private RequestCache requestCache = new HttpSessionRequestCache();
 
     @Override
@@ -26,7 +29,7 @@ public class SavedRequestAwareAuthenticationSuccessHandler extends SimpleUrlAuth
         if (authentication.getPrincipal() instanceof SocialAuthentication) {
             // если авторизация из внешнего сервиса - возвращаем результат и роль пользователя
             SocialAuthentication socialAuthentication = (SocialAuthentication)authentication.getPrincipal();
-            response.getWriter().write(new ObjectMapper().writeValueAsString(
+            response.getWriter().write(JSON_WRITER.writeValueAsString(
                     MapUtils.<String, Object>builder()
                             .add("role", socialAuthentication.getUser().getRole())
                             .add("success", true)
@@ -0,0 +1,29 @@
+package ru.airlabs.ego.survey.service;
+
+/**
+ * Интерфейс хранилища ответов на капчу, выданную по токену (без сессии)
+ * <p>
+ * Реализация по умолчанию хранит ответы в памяти приложения.
+ * При работе нескольких серверов за балансировщиком бин "captchaTokenStore"
+ * заменяется реализацией с общим для серверов хранилищем.
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface CaptchaTokenStore {
+
+    /**
+     * Сохранить ответ на капчу
+     *
+     * @param token  токен капчи
+     * @param answer ответ
+     */
+    void put(String token, String answer);
+
+    /**
+     * Извлечь ответ на капчу (ответ удаляется - проверить капчу по токену можно один раз)
+     *
+     * @param token токен капчи
+     * @return ответ или null, если токен неизвестен или истек
+     */
+    String remove(String token);
+}
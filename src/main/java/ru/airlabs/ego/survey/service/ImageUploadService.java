@@ -3,7 +3,9 @@ package ru.airlabs.ego.survey.service;
 import org.springframework.web.multipart.MultipartFile;
 import ru.airlabs.ego.core.entity.QuestionAnswer;
 import ru.airlabs.ego.survey.dto.FileContent;
+import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -31,6 +33,14 @@ public interface ImageUploadService {
      */
     List<String> getImagesForUserAndVacancy(Long userId, Long vacancyId);
 
+    /**
+     * Заполнение списка ссылок на загруженные фотографии для откликов и приглашений
+     * (фотографии всех пользователей выбираются одним запросом)
+     *
+     * @param details отклики и приглашения
+     */
+    void fillImagesForUserDetails(Collection<VacancyUserDetail> details);
+
     /**
      * Получение содержимого фото пользователя в рамках вакансии и ответа на вопрос
      *
@@ -0,0 +1,49 @@
+package ru.airlabs.ego.survey.service;
+
+import ru.airlabs.ego.core.entity.User;
+import ru.airlabs.ego.survey.dto.invitation.InvitationDispatch;
+import ru.airlabs.ego.survey.dto.invitation.InvitationResult;
+import ru.airlabs.ego.survey.dto.user.UserDetail;
+
+import java.util.List;
+
+/**
+ * Интерфейс фоновой отправки приглашений по большим спискам
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface InvitationDispatchService {
+
+    /**
+     * Запустить фоновую отправку приглашений
+     * (приглашаемые пользователи получаются или создаются до начала отправки)
+     *
+     * @param receivers список приглашаемых
+     * @param source    метод отправки приглашений
+     * @param user      пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId идентификатор вакансии
+     * @return состояние отправки
+     */
+    InvitationDispatch start(List<UserDetail> receivers, String source, User user, Long vacancyId);
+
+    /**
+     * Отправить приглашения в текущем потоке
+     * (приглашаемые пользователи получаются или создаются до начала отправки)
+     *
+     * @param receivers список приглашаемых
+     * @param source    метод отправки приглашений
+     * @param user      пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId идентификатор вакансии
+     * @return результаты по каждому приглашаемому (в т.ч. ошибки создания пользователей и повторы в списке)
+     */
+    List<InvitationResult> send(List<UserDetail> receivers, String source, User user, Long vacancyId);
+
+    /**
+     * Получить состояние фоновой отправки приглашений
+     *
+     * @param dispatchId идентификатор отправки
+     * @param managerId  идентификатор пользователя, запустившего отправку (HR)
+     * @return состояние отправки или null, если отправка не найдена или запущена другим пользователем
+     */
+    InvitationDispatch find(String dispatchId, Long managerId);
+}
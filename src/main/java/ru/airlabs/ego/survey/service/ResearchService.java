@@ -49,13 +49,15 @@ public interface ResearchService {
      * @param currentUserId     идентификатор пользователя проводящего исследование
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных сравнения участников опроса с возможностью пагинации
      */
     Page<VacancyUserDetail> getGroupCompareUserDetails(Long researchId,
                                                        Long userId,
                                                        Long currentUserId,
                                                        Integer chartColumnNumber,
-                                                       Pageable pageable);
+                                                       Pageable pageable,
+                                                       String cursor);
 
     /**
      * Получение подробностей столбца сравнения групп пользователей для категорийного исследования ("Поиск лидера")
@@ -64,10 +66,12 @@ public interface ResearchService {
      * @param currentUserId     идентификатор пользователя проводящего исследование*
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных с возможностью пагинации
      */
     Page<VacancyUserDetail> getGroupCompareCategoryDetails(Long researchId,
                                                            Long currentUserId,
                                                            Integer chartColumnNumber,
-                                                           Pageable pageable);
+                                                           Pageable pageable,
+                                                       String cursor);
 }
@@ -0,0 +1,34 @@
+package ru.airlabs.ego.survey.service;
+
+import ru.airlabs.ego.core.entity.UserSurveyState;
+import ru.airlabs.ego.survey.dto.survey.SurveyAnswer;
+import ru.airlabs.ego.survey.dto.survey.SurveyResult;
+
+import java.util.Collection;
+
+/**
+ * Интерфейс сервиса приема ответов на вопросы опроса
+ * (в асинхронном режиме ответы записываются в локальный журнал и сохраняются в БД в фоне)
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface SurveyAnswerQueueService {
+
+    /**
+     * Принять ответы на вопросы
+     * (в асинхронном режиме принятыми считаются все ответы, записанные в журнал,
+     * иначе ответы сохраняются в БД сразу)
+     *
+     * @param answers ответы на вопросы
+     * @param state   состояние прохождения опроса пользователем
+     * @return результат приема ответов
+     */
+    SurveyResult submitAnswers(Collection<SurveyAnswer> answers, UserSurveyState state);
+
+    /**
+     * Признак асинхронного режима приема ответов
+     *
+     * @return true - если ответы сохраняются в БД в фоне, иначе false
+     */
+    boolean isAsyncEnabled();
+}
@@ -0,0 +1,37 @@
+package ru.airlabs.ego.survey.service;
+
+import ru.airlabs.ego.survey.dto.survey.SurveyQuestion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Интерфейс сервиса выдачи вопросов опроса с упреждающей загрузкой
+ * (следующие страницы неотвеченных вопросов загружаются в фоне, пока пользователь отвечает на текущую)
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface SurveyQuestionPrefetchService {
+
+    /**
+     * Получить список неотвеченных вопросов
+     *
+     * @param userId   идентификатор пользователя
+     * @param surveyId идентификатор опроса
+     * @param locale   локаль
+     * @param max      макс. кол-во вопросов
+     * @return список
+     */
+    List<SurveyQuestion> getUnansweredSurveyQuestions(Long userId, Long surveyId, Locale locale, Integer max);
+
+    /**
+     * Отметить вопросы как отвеченные
+     * (отвеченные вопросы исключаются из загруженных заранее страниц)
+     *
+     * @param userId      идентификатор пользователя
+     * @param surveyId    идентификатор опроса
+     * @param questionIds идентификаторы отвеченных вопросов
+     */
+    void markAnswered(Long userId, Long surveyId, Collection<Long> questionIds);
+}
@@ -2,6 +2,7 @@ package ru.airlabs.ego.survey.service;
 
 import ru.airlabs.ego.core.entity.Survey;
 import ru.airlabs.ego.core.entity.User;
+import ru.airlabs.ego.core.entity.util.ClientError;
 import ru.airlabs.ego.survey.dto.survey.*;
 
 import java.util.Collection;
@@ -162,6 +163,16 @@ public interface SurveyService {
      */
     void saveSurveyError(Long userId, Long surveyId, SurveyError surveyError);
 
+    /**
+     * Подготовка ошибки клиента при прохождении опроса к сохранению
+     *
+     * @param userId      идентификатор пользователя, проходящего опрос
+     * @param surveyId    идентификатор опроса
+     * @param surveyError модель с текстом ошибки и юзерагентом
+     * @return несохраненная запись ошибки клиента
+     */
+    ClientError buildSurveyError(Long userId, Long surveyId, SurveyError surveyError);
+
     /**
      * Сохранение данных по геолокации опроса
      *
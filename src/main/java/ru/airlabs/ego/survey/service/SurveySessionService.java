@@ -0,0 +1,65 @@
+package ru.airlabs.ego.survey.service;
+
+import ru.airlabs.ego.core.entity.Organization;
+import ru.airlabs.ego.survey.dto.survey.SurveySession;
+
+/**
+ * Интерфейс сервиса для получения данных сессии прохождения опроса
+ * <p>
+ * Возвращаемые сервисом сущности берутся из кэша и разделяются между запросами,
+ * поэтому изменять их нельзя - для изменения сущность нужно заново прочитать из БД,
+ * а после сохранения удалить из кэша соответствующим методом invalidate*.
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface SurveySessionService {
+
+    /**
+     * Получить сессию прохождения опроса
+     *
+     * @param vacancyId     идентификатор вакансии (может быть не задан)
+     * @param surveyStateId идентификатор состояния прохождения опроса
+     * @return сессия прохождения опроса или null, если вакансия, состояние или пользователь не найдены
+     */
+    SurveySession getSession(Long vacancyId, Long surveyStateId);
+
+    /**
+     * Получить организацию менеджера
+     *
+     * @param managerId идентификатор менеджера
+     * @return организация или null, если у менеджера нет организации
+     */
+    Organization getOrganization(Long managerId);
+
+    /**
+     * Удалить из кэша вакансию
+     * (при вызове внутри транзакции - после ее фиксации)
+     *
+     * @param vacancyId идентификатор вакансии
+     */
+    void invalidateVacancy(Long vacancyId);
+
+    /**
+     * Удалить из кэша состояние прохождения опроса
+     * (при вызове внутри транзакции - после ее фиксации)
+     *
+     * @param surveyStateId идентификатор состояния прохождения опроса
+     */
+    void invalidateState(Long surveyStateId);
+
+    /**
+     * Удалить из кэша пользователя
+     * (при вызове внутри транзакции - после ее фиксации)
+     *
+     * @param userId идентификатор пользователя
+     */
+    void invalidateUser(Long userId);
+
+    /**
+     * Удалить из кэша организацию менеджера
+     * (при вызове внутри транзакции - после ее фиксации)
+     *
+     * @param managerId идентификатор менеджера
+     */
+    void invalidateOrganization(Long managerId);
+}
@@ -0,0 +1,50 @@
+package ru.airlabs.ego.survey.service;
+
+import ru.airlabs.ego.survey.dto.device.DeviceInfo;
+import ru.airlabs.ego.survey.dto.survey.SurveyError;
+import ru.airlabs.ego.survey.dto.survey.SurveyStateLocation;
+
+/**
+ * Интерфейс сервиса приема телеметрии клиентов опросов
+ * (данные по устройствам, ошибки клиентов, геолокация)
+ * <p>
+ * В асинхронном режиме данные накапливаются в памяти и сохраняются в БД пакетами в фоне,
+ * иначе сохраняются в БД сразу.
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface TelemetryService {
+
+    /**
+     * Сохранение данных по устройству пользователя
+     *
+     * @param vacancyId  идентификатор вакансии
+     * @param userId     идентификатор пользователя
+     * @param surveyId   идентификатор опроса
+     * @param deviceInfo данные по устройству пользователя
+     * @param logType    тип записи
+     */
+    void saveDeviceInfo(Long vacancyId,
+                        Long userId,
+                        Long surveyId,
+                        DeviceInfo deviceInfo,
+                        String logType);
+
+    /**
+     * Сохранение ошибки клиента при прохождении опроса
+     *
+     * @param userId      идентификатор пользователя, проходящего опрос
+     * @param surveyId    идентификатор опроса
+     * @param surveyError модель с текстом ошибки и юзерагентом
+     */
+    void saveSurveyError(Long userId, Long surveyId, SurveyError surveyError);
+
+    /**
+     * Сохранение данных по геолокации опроса
+     * (при нескольких обновлениях одного состояния до сохранения в БД сохраняется последнее)
+     *
+     * @param surveyStateId идентификатор состояния прохождения опроса
+     * @param location      данные по геолокации (широта + долгота)
+     */
+    void saveSurveyLocation(Long surveyStateId, SurveyStateLocation location);
+}
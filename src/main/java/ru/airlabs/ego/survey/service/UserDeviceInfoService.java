@@ -1,5 +1,6 @@
 package ru.airlabs.ego.survey.service;
 
+import ru.airlabs.ego.core.entity.device.UserDeviceInfo;
 import ru.airlabs.ego.survey.dto.device.DeviceInfo;
 import ru.airlabs.ego.survey.dto.survey.SurveyAnswer;
 
@@ -25,6 +26,31 @@ public interface UserDeviceInfoService {
                         DeviceInfo deviceInfo,
                         String logType);
 
+    /**
+     * Подготовка данных по устройству пользователя к сохранению (с разбором юзерагента)
+     *
+     * @param vacancyId  идентификатор вакансии
+     * @param userId     идентификатор пользователя
+     * @param surveyId   идентификатор опроса
+     * @param deviceInfo данные по устройству пользователя
+     * @param logType    тип записи
+     * @return несохраненная запись с данными по устройству
+     */
+    UserDeviceInfo buildDeviceInfo(Long vacancyId,
+                                   Long userId,
+                                   Long surveyId,
+                                   DeviceInfo deviceInfo,
+                                   String logType);
+
+    /**
+     * Запомнить, что данные по устройству пользователя, проходящего опрос, сохранены
+     * (вызывается после успешного сохранения записи, подготовленной {@link #buildDeviceInfo})
+     *
+     * @param userId   идентификатор пользователя
+     * @param surveyId идентификатор опроса
+     */
+    void markDeviceInfoSaved(Long userId, Long surveyId);
+
     /**
      * Метод проверяющий сохранялась ли информация по устройству пользователя, проходящего опрос
      *
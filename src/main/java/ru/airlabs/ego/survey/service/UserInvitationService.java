@@ -4,7 +4,9 @@ import ru.airlabs.ego.core.entity.User;
 import ru.airlabs.ego.survey.dto.invitation.*;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс отправки приглашения на вакансию или исследование
@@ -25,6 +27,22 @@ public interface UserInvitationService {
                          User user,
                          Long vacancyId);
 
+    /**
+     * Отправка большого списка приглашений на вакансию или исследование порциями
+     * (каждая порция отправляется за одно обращение к БД в отдельной транзакции,
+     * ошибка отправки одного приглашения не отменяет отправку остальных)
+     *
+     * @param invitations список приглашаемых
+     * @param user        пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId   идентификатор вакансии
+     * @param listener    получатель результатов отправки каждой порции (может быть null)
+     * @return результаты отправки по каждому приглашению
+     */
+    List<InvitationResult> sendInvitationsInBatches(Set<Invitation> invitations,
+                                                    User user,
+                                                    Long vacancyId,
+                                                    Consumer<List<InvitationResult>> listener);
+
     /**
      * Получение текста приглашения
      *
@@ -1,8 +1,10 @@
 package ru.airlabs.ego.survey.service;
 
 import ru.airlabs.ego.survey.dto.user.Sex;
+import ru.airlabs.ego.survey.dto.user.UserDetail;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * Интерфейс сервиса работы с пользователями
@@ -54,4 +56,13 @@ public interface UserService {
                          Sex sex, Date birthDate, String city, String description,
                          Integer salary, Long parentUserId);
 
+    /**
+     * Получить или создать список пользователей (до 100 пользователей за одно обращение к БД)
+     *
+     * @param users        данные пользователей (имя, email, телефон)
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @return идентификаторы пользователей в порядке списка (null - пользователя не удалось получить или создать)
+     */
+    List<Long> getOrCreateUsers(List<UserDetail> users, Long parentUserId);
+
 }
@@ -18,9 +18,10 @@ public interface VacancyDetailService {
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return постраничный сортированный список данных по откликам
      */
-    Page<VacancyUserDetail> getFeedbackForVacancy(Long vacancyId, User currentUser, Pageable pageable);
+    Page<VacancyUserDetail> getFeedbackForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor);
 
     /**
      * Получение приглашений по вакансии
@@ -28,9 +29,10 @@ public interface VacancyDetailService {
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return постраничный сортированный список данных по приглашениям
      */
-    Page<VacancyUserDetail> getInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable);
+    Page<VacancyUserDetail> getInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor);
 
     /**
      * Получение буфера приглашений по вакансии (приглашения с пустым способом отправки)
@@ -38,8 +40,9 @@ public interface VacancyDetailService {
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return постраничный сортированный список данных по приглашениям из буфера
      */
-    Page<VacancyUserDetail> getBufferInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable);
+    Page<VacancyUserDetail> getBufferInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor);
 
 }
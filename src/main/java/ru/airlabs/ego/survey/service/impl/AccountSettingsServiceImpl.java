@@ -17,6 +17,7 @@ import ru.airlabs.ego.survey.config.FileUploadConfig;
 import ru.airlabs.ego.survey.dto.FileContent;
 import ru.airlabs.ego.survey.dto.settings.AccountSettings;
 import ru.airlabs.ego.survey.service.AccountSettingsService;
+import ru.airlabs.ego.survey.service.SurveySessionService;
 
 import javax.annotation.Resource;
 import javax.imageio.ImageIO;
@@ -80,6 +81,12 @@ public class AccountSettingsServiceImpl implements AccountSettingsService {
     @Autowired
     private OrganizationLocationRepository locationRepository;
 
+    /**
+     * Сервис сессии прохождения опроса (кэширует пользователей и организации)
+     */
+    @Autowired
+    private SurveySessionService surveySessionService;
+
     @Override
     public AccountSettings getAccountSettings(User currentUser) {
         final User user = userRepository.findById(currentUser.getId()).get();
@@ -108,6 +115,8 @@ public class AccountSettingsServiceImpl implements AccountSettingsService {
         } else {
             createOrganization(settings, currentUserId);
         }
+        surveySessionService.invalidateUser(currentUserId);
+        surveySessionService.invalidateOrganization(currentUserId);
     }
 
     @Override
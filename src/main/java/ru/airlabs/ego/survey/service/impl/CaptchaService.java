@@ -6,8 +6,9 @@ import nl.captcha.gimpy.FishEyeGimpyRenderer;
 import nl.captcha.text.producer.NumbersAnswerProducer;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import ru.airlabs.ego.survey.utils.MaxSizeHashMap;
+import ru.airlabs.ego.survey.service.CaptchaTokenStore;
 
 import javax.imageio.ImageIO;
 import javax.servlet.http.HttpSession;
@@ -15,8 +16,6 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -27,7 +26,8 @@ public class CaptchaService {
 
     public static final String CAPTCHA = "captcha";
 
-    private static Map<String, String> answerMap = Collections.synchronizedMap(new MaxSizeHashMap<>(20000));
+    @Autowired
+    private CaptchaTokenStore tokenStore;
 
     public enum CaptchaType {
         DEFAULT, MOBILE
@@ -42,7 +42,7 @@ public class CaptchaService {
     public TokenByteArrayView generate(int width, int height, CaptchaType type) throws IOException {
         Captcha captcha = build(width, height, type);
         String token = UUID.randomUUID().toString();
-        answerMap.put(token, captcha.getAnswer());
+        tokenStore.put(token, captcha.getAnswer());
         return new TokenByteArrayView(toByteArray(captcha.getImage()), token);
     }
 
@@ -56,7 +56,7 @@ public class CaptchaService {
     public TokenStringCaptchaView generateAsBase64(int width, int height, CaptchaType type) throws IOException {
         Captcha captcha = build(width, height, type);
         String token = UUID.randomUUID().toString();
-        answerMap.put(token, captcha.getAnswer());
+        tokenStore.put(token, captcha.getAnswer());
         byte[] image = toByteArray(captcha.getImage());
         return new TokenStringCaptchaView("data:image/jpg;base64," + StringUtils.newStringUtf8(Base64.encodeBase64(image, false)), token);
     }
@@ -68,7 +68,7 @@ public class CaptchaService {
     }
 
     public boolean validate(String code, String token) {
-        Object answer = answerMap.remove(token);
+        Object answer = tokenStore.remove(token);
         return answer != null && answer.equals(code);
     }
 
@@ -16,6 +16,7 @@ import ru.airlabs.ego.core.repository.UserSurveyStateRepository;
 import ru.airlabs.ego.core.repository.VacancyRepository;
 import ru.airlabs.ego.survey.config.FileUploadConfig;
 import ru.airlabs.ego.survey.dto.FileContent;
+import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
 import ru.airlabs.ego.survey.exception.ImageUploadException;
 import ru.airlabs.ego.survey.service.ImageUploadService;
 
@@ -28,8 +29,8 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -37,6 +38,7 @@ import static java.lang.String.format;
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static ru.airlabs.ego.survey.utils.ControllerUtils.GET_USER_IMAGE_REST_ADDRESS;
+import static ru.airlabs.ego.survey.utils.DbUtils.partitionForInClause;
 import static ru.airlabs.ego.survey.utils.ImageUtils.compressAndWriteImageInJPG;
 import static ru.airlabs.ego.survey.utils.ImageUtils.scaleImage;
 
@@ -159,6 +161,40 @@ public class ImageUploadServiceImpl implements ImageUploadService {
         return imagePaths;
     }
 
+    /**
+     * Заполнение списка ссылок на загруженные фотографии для откликов и приглашений
+     * (фотографии всех пользователей выбираются одним запросом)
+     *
+     * @param details отклики и приглашения
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public void fillImagesForUserDetails(Collection<VacancyUserDetail> details) {
+        if (details.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> photoQuestionIds = new HashMap<>();
+        List<Long> userIds = details.stream().map(VacancyUserDetail::getUserId).collect(Collectors.toList());
+        for (List<Long> ids : partitionForInClause(userIds)) {
+            List<Object[]> rows = entityManager
+                    .createQuery("select a.userId, a.questionId from QuestionAnswer a " +
+                            "where a.userId in :userIds and a.photo = :photo")
+                    .setParameter("userIds", ids)
+                    .setParameter("photo", Boolean.TRUE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                photoQuestionIds.computeIfAbsent(((Number) row[0]).longValue(), k -> new ArrayList<>())
+                        .add(((Number) row[1]).longValue());
+            }
+        }
+        for (VacancyUserDetail detail : details) {
+            for (Long questionId : photoQuestionIds.getOrDefault(detail.getUserId(), Collections.emptyList())) {
+                detail.getImages().add(format(GET_USER_IMAGE_REST_ADDRESS, appUrl, detail.getUserId(),
+                        detail.getVacancyId(), questionId));
+            }
+        }
+    }
+
     /**
      * Получение содержимого фото пользователя в рамках вакансии и ответа на вопрос
      *
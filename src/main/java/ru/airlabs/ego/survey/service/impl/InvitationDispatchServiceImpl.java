@@ -0,0 +1,169 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.airlabs.ego.core.entity.User;
+import ru.airlabs.ego.survey.dto.invitation.Invitation;
+import ru.airlabs.ego.survey.dto.invitation.InvitationDispatch;
+import ru.airlabs.ego.survey.dto.invitation.InvitationResult;
+import ru.airlabs.ego.survey.dto.user.UserDetail;
+import ru.airlabs.ego.survey.service.InvitationDispatchService;
+import ru.airlabs.ego.survey.service.UserInvitationService;
+import ru.airlabs.ego.survey.service.UserService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Сервис фоновой отправки приглашений по большим спискам
+ * <p>
+ * Отправка выполняется в фоновом потоке: приглашаемые пользователи получаются или создаются порциями
+ * за одно обращение к БД, затем приглашения отправляются порциями в отдельных транзакциях.
+ * Состояние отправки хранится в памяти и доступно для опроса в течение заданного времени после последнего обращения.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Service("invitationDispatchService")
+public class InvitationDispatchServiceImpl implements InvitationDispatchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvitationDispatchServiceImpl.class);
+
+    /**
+     * Сервис приглашений
+     */
+    @Autowired
+    private UserInvitationService userInvitationService;
+
+    /**
+     * Сервис пользователей
+     */
+    @Autowired
+    private UserService userService;
+
+    /**
+     * Кол-во потоков фоновой отправки приглашений
+     */
+    @Value("${invitation.dispatch.threads}")
+    private int threads;
+
+    /**
+     * Время хранения состояния отправки после последнего обращения (в секундах)
+     */
+    @Value("${invitation.dispatch.ttl}")
+    private long ttl;
+
+    /**
+     * Кол-во приглашаемых, получаемых или создаваемых за одно обращение к БД
+     */
+    @Value("${invitation.batchSize}")
+    private int batchSize;
+
+    /**
+     * Состояния отправок (ключ - идентификатор отправки)
+     */
+    private Cache<String, InvitationDispatch> dispatches;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        dispatches = CacheBuilder.newBuilder()
+                .expireAfterAccess(ttl, TimeUnit.SECONDS)
+                .build();
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("invitation-dispatch-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public InvitationDispatch start(List<UserDetail> receivers, String source, User user, Long vacancyId) {
+        InvitationDispatch dispatch = new InvitationDispatch(UUID.randomUUID().toString(), user.getId(), receivers.size());
+        dispatches.put(dispatch.getId(), dispatch);
+        executor.execute(() -> run(dispatch, new ArrayList<>(receivers), source, user, vacancyId));
+        return dispatch;
+    }
+
+    @Override
+    public List<InvitationResult> send(List<UserDetail> receivers, String source, User user, Long vacancyId) {
+        List<InvitationResult> results = new ArrayList<>(receivers.size());
+        sendInvitations(receivers, source, user, vacancyId, results::addAll);
+        return results;
+    }
+
+    @Override
+    public InvitationDispatch find(String dispatchId, Long managerId) {
+        InvitationDispatch dispatch = dispatches.getIfPresent(dispatchId);
+        return dispatch != null && dispatch.getManagerId().equals(managerId) ? dispatch : null;
+    }
+
+    /**
+     * Выполнение отправки
+     *
+     * @param dispatch  состояние отправки
+     * @param receivers список приглашаемых
+     * @param source    метод отправки приглашений
+     * @param user      пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId идентификатор вакансии
+     */
+    private void run(InvitationDispatch dispatch, List<UserDetail> receivers, String source, User user, Long vacancyId) {
+        final long start = System.currentTimeMillis();
+        try {
+            sendInvitations(receivers, source, user, vacancyId, dispatch::addResults);
+            dispatch.finish(null);
+        } catch (Exception e) {
+            LOGGER.error("Invitation dispatch " + dispatch.getId() + " error", e);
+            dispatch.finish(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        LOGGER.info("Invitation dispatch {} for vacancy {}: total {}, sent {}, failed {}, {} ms",
+                dispatch.getId(), vacancyId, dispatch.getTotal(), dispatch.getSent(), dispatch.getFailed(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Получить или создать приглашаемых пользователей и отправить им приглашения
+     * (на каждого приглашаемого передается ровно один результат)
+     *
+     * @param receivers список приглашаемых
+     * @param source    метод отправки приглашений
+     * @param user      пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId идентификатор вакансии
+     * @param listener  получатель результатов
+     */
+    private void sendInvitations(List<UserDetail> receivers,
+                                 String source,
+                                 User user,
+                                 Long vacancyId,
+                                 Consumer<List<InvitationResult>> listener) {
+        Set<Invitation> invitations = new LinkedHashSet<>(receivers.size());
+        for (int from = 0; from < receivers.size(); from += batchSize) {
+            List<UserDetail> chunk = receivers.subList(from, Math.min(from + batchSize, receivers.size()));
+            List<Long> receiverIds = userService.getOrCreateUsers(chunk, user.getId());
+            for (int i = 0; i < chunk.size(); i++) {
+                Long receiverId = receiverIds.get(i);
+                if (receiverId == null) {
+                    listener.accept(singletonList(new InvitationResult(null, "Ошибка при создании пользователя")));
+                } else if (!invitations.add(new Invitation(receiverId, source))) {
+                    listener.accept(singletonList(new InvitationResult(receiverId, "Пользователь уже есть в списке")));
+                }
+            }
+        }
+        userInvitationService.sendInvitationsInBatches(invitations, user, vacancyId, listener);
+    }
+}
@@ -0,0 +1,132 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.airlabs.ego.survey.service.CaptchaTokenStore;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище ответов на капчу в памяти приложения
+ * <p>
+ * Ответы хранятся в кэше с блокировками по сегментам (без общей блокировки на все операции),
+ * каждый ответ хранится не дольше заданного времени, при превышении максимального кол-ва
+ * вытесняются давно не использовавшиеся. Истекшие ответы периодически удаляются фоновым потоком,
+ * там же в лог выводятся счетчики выданных, проверенных, истекших и вытесненных ответов.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("captchaTokenStore")
+public class LocalCaptchaTokenStore implements CaptchaTokenStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalCaptchaTokenStore.class);
+
+    /**
+     * Время хранения ответа (в секундах)
+     */
+    @Value("${captcha.token.ttl}")
+    private long ttl;
+
+    /**
+     * Максимальное кол-во хранимых ответов
+     */
+    @Value("${captcha.token.maxSize}")
+    private long maxSize;
+
+    /**
+     * Интервал удаления истекших ответов (в секундах)
+     */
+    @Value("${captcha.token.sweepInterval}")
+    private long sweepInterval;
+
+    /**
+     * Ответы на капчу (ключ - токен)
+     */
+    private Cache<String, String> answers;
+
+    private final AtomicLong issued = new AtomicLong();
+
+    private final AtomicLong validated = new AtomicLong();
+
+    private final AtomicLong missed = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        answers = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .maximumSize(maxSize)
+                .removalListener(this::onRemoval)
+                .build();
+        sweeper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("captcha-token-sweeper").setDaemon(true).build());
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+        logStats();
+    }
+
+    @Override
+    public void put(String token, String answer) {
+        answers.put(token, answer);
+        issued.incrementAndGet();
+    }
+
+    @Override
+    public String remove(String token) {
+        String answer = token != null ? answers.asMap().remove(token) : null;
+        (answer != null ? validated : missed).incrementAndGet();
+        return answer;
+    }
+
+    private void onRemoval(RemovalNotification<String, String> notification) {
+        switch (notification.getCause()) {
+            case EXPIRED:
+                expired.incrementAndGet();
+                break;
+            case SIZE:
+                evicted.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Удалить истекшие ответы
+     */
+    private void sweep() {
+        try {
+            answers.cleanUp();
+            if (LOGGER.isDebugEnabled()) {
+                logStats();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Captcha token sweep error", e);
+        }
+    }
+
+    private void logStats() {
+        LOGGER.info("Captcha tokens: stored {}, issued {}, validated {}, unknown {}, expired {}, evicted {}",
+                answers.size(), issued.get(), validated.get(), missed.get(), expired.get(), evicted.get());
+    }
+}
@@ -0,0 +1,105 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш общего кол-ва строк постраничных выборок (откликов, приглашений, результатов исследований)
+ * <p>
+ * Общее кол-во строк выбирается вместе со страницей (через count(*) over ()) и запоминается.
+ * Для больших выборок (начиная с заданного порога) в течение времени жизни записи
+ * используется запомненное (приблизительное) значение - подсчет всех строк при каждом запросе страницы не выполняется.
+ * Отдельный запрос кол-ва строк выполняется только если кол-во не удалось определить вместе со страницей
+ * (выборка по курсору или пустая страница) и его нет в кэше.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("pageTotalCountCache")
+public class PageTotalCountCache {
+
+    /**
+     * Максимальное время устаревания запомненного кол-ва строк (в секундах)
+     */
+    @Value("${pageTotalCount.cache.ttl}")
+    private long cacheTtl;
+
+    /**
+     * Максимальное кол-во записей в кэше
+     */
+    @Value("${pageTotalCount.cache.maxSize}")
+    private long cacheMaxSize;
+
+    /**
+     * Кол-во строк, начиная с которого используется приблизительное (запомненное) значение
+     */
+    @Value("${pageTotalCount.approximateThreshold}")
+    private long approximateThreshold;
+
+    /**
+     * Кол-во строк выборок (ключ - название выборки и значения ее параметров)
+     */
+    private Cache<String, Long> counts;
+
+    @PostConstruct
+    public void init() {
+        counts = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
+
+    /**
+     * Сформировать ключ выборки
+     *
+     * @param name       название выборки
+     * @param parameters значения параметров выборки
+     * @return ключ
+     */
+    public static String buildKey(String name, Object... parameters) {
+        return name + Arrays.stream(parameters).map(String::valueOf).collect(Collectors.joining(":", ":", ""));
+    }
+
+    /**
+     * Получить приблизительное кол-во строк для большой выборки
+     *
+     * @param key ключ выборки
+     * @return запомненное кол-во строк или null, если оно не запомнено или меньше порога
+     */
+    public Long getApproximate(String key) {
+        Long count = counts.getIfPresent(key);
+        return count != null && count >= approximateThreshold ? count : null;
+    }
+
+    /**
+     * Определить общее кол-во строк выборки
+     *
+     * @param key         ключ выборки
+     * @param approximate приблизительное кол-во строк (если определено - используется оно)
+     * @param pageTotal   кол-во строк, выбранное вместе со страницей (если определено - запоминается)
+     * @param counter     запрос кол-ва строк
+     * @return общее кол-во строк
+     */
+    public long resolve(String key, Long approximate, Long pageTotal, LongSupplier counter) {
+        if (approximate != null) {
+            return approximate;
+        }
+        if (pageTotal != null) {
+            counts.put(key, pageTotal);
+            return pageTotal;
+        }
+        Long count = counts.getIfPresent(key);
+        if (count == null) {
+            count = counter.getAsLong();
+            counts.put(key, count);
+        }
+        return count;
+    }
+}
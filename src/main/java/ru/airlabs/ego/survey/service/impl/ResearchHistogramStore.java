@@ -0,0 +1,291 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.airlabs.ego.survey.dto.user.UserGroupCompare;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Хранилище гистограмм сравнения групп участников исследований (8 диапазонов совпадения)
+ * <p>
+ * Гистограмма рассчитывается запросом с агрегацией в БД при первом просмотре графика и хранится в памяти.
+ * При приеме ответов на вопросы опроса результаты сравнения участников пересчитываются,
+ * поэтому гистограммы исследований по этому опросу удаляются из хранилища и рассчитываются заново при следующем просмотре.
+ * Время хранения гистограммы ограничено, а фоновая проверка периодически сверяет с результатом запроса в БД
+ * несколько гистограмм, которые просматривали после предыдущей проверки
+ * (на случай пересчета результатов сравнения в обход приложения).
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("researchHistogramStore")
+public class ResearchHistogramStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResearchHistogramStore.class);
+
+    /**
+     * Максимальное время хранения гистограммы (в секундах)
+     */
+    @Value("${researchHistogram.cache.ttl}")
+    private long cacheTtl;
+
+    /**
+     * Максимальное кол-во хранимых гистограмм
+     */
+    @Value("${researchHistogram.cache.maxSize}")
+    private long cacheMaxSize;
+
+    /**
+     * Интервал сверки хранимых гистограмм с БД (в секундах, 0 - сверка отключена)
+     */
+    @Value("${researchHistogram.checkInterval}")
+    private long checkInterval;
+
+    /**
+     * Макс. кол-во гистограмм, сверяемых с БД за одну проверку
+     */
+    @Value("${researchHistogram.checkBatchSize}")
+    private int checkBatchSize;
+
+    /**
+     * Гистограммы (ключ - вид графика, опрос исследования и значения параметров графика)
+     */
+    private Cache<Key, Histogram> histograms;
+
+    /**
+     * Ключи хранимых гистограмм по опросам (ключ - идентификатор опроса исследования)
+     */
+    private final ConcurrentMap<Long, Set<Key>> surveyKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Время начала предыдущей проверки (в мс)
+     */
+    private volatile long lastCheckTime;
+
+    private ScheduledExecutorService checker;
+
+    @PostConstruct
+    public void init() {
+        histograms = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .maximumSize(cacheMaxSize)
+                .<Key, Histogram>removalListener(notification -> {
+                    if (notification.getCause() != RemovalCause.REPLACED) {
+                        removeSurveyKey(notification.getKey());
+                    }
+                })
+                .build();
+        lastCheckTime = System.currentTimeMillis();
+        if (checkInterval > 0) {
+            checker = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("research-histogram-checker").setDaemon(true).build());
+            checker.scheduleWithFixedDelay(this::check, checkInterval, checkInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    /**
+     * Сформировать ключ гистограммы
+     *
+     * @param chart      вид графика
+     * @param surveyId   идентификатор опроса исследования
+     * @param parameters значения параметров графика
+     * @return ключ
+     */
+    public static Key key(String chart, Long surveyId, Object... parameters) {
+        return new Key(chart, surveyId, parameters);
+    }
+
+    /**
+     * Получить гистограмму
+     *
+     * @param key    ключ гистограммы
+     * @param loader расчет гистограммы в БД
+     * @return гистограмма
+     */
+    public List<UserGroupCompare> get(Key key, Supplier<List<UserGroupCompare>> loader) {
+        try {
+            Histogram histogram = histograms.get(key, () -> {
+                surveyKeys.computeIfAbsent(key.surveyId, surveyId -> ConcurrentHashMap.newKeySet()).add(key);
+                return new Histogram(loader, loader.get());
+            });
+            histogram.lastReadTime = System.currentTimeMillis();
+            return histogram.groups;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Удалить гистограммы исследований по опросу
+     * (вызывается при изменении результатов сравнения участников опроса)
+     *
+     * @param surveyId идентификатор опроса
+     */
+    public void invalidateSurvey(Long surveyId) {
+        Set<Key> keys = surveyKeys.get(surveyId);
+        if (keys != null) {
+            histograms.invalidateAll(keys);
+        }
+    }
+
+    private void removeSurveyKey(Key key) {
+        surveyKeys.computeIfPresent(key.surveyId, (surveyId, keys) -> {
+            // гистограмма могла быть заново рассчитана после удаления
+            if (!histograms.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Сверить с БД гистограммы, которые просматривали после предыдущей проверки
+     * (не более заданного кол-ва, в первую очередь - давно сверенные)
+     */
+    private void check() {
+        final long readAfter = lastCheckTime;
+        lastCheckTime = System.currentTimeMillis();
+        histograms.asMap().entrySet().stream()
+                .filter(entry -> entry.getValue().lastReadTime >= readAfter)
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastCheckTime))
+                .limit(checkBatchSize)
+                .forEach(this::check);
+    }
+
+    private void check(Map.Entry<Key, Histogram> entry) {
+        try {
+            Histogram histogram = entry.getValue();
+            histogram.lastCheckTime = System.currentTimeMillis();
+            List<UserGroupCompare> actual = histogram.loader.get();
+            if (!isSame(histogram.groups, actual)) {
+                LOGGER.warn("Research histogram {} is out of date, reloaded", entry.getKey());
+                Histogram reloaded = new Histogram(histogram.loader, actual);
+                reloaded.lastReadTime = histogram.lastReadTime;
+                reloaded.lastCheckTime = histogram.lastCheckTime;
+                histograms.asMap().replace(entry.getKey(), histogram, reloaded);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Research histogram " + entry.getKey() + " check error", e);
+        }
+    }
+
+    private static boolean isSame(List<UserGroupCompare> stored, List<UserGroupCompare> actual) {
+        if (stored.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < stored.size(); i++) {
+            UserGroupCompare a = stored.get(i);
+            UserGroupCompare b = actual.get(i);
+            if (!Objects.equals(a.getChartColumnNumber(), b.getChartColumnNumber())
+                    || !Objects.equals(a.getUsersCount(), b.getUsersCount())
+                    || !Objects.equals(a.getCompareResult(), b.getCompareResult())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ключ гистограммы
+     */
+    public static final class Key {
+
+        /**
+         * Вид графика
+         */
+        private final String chart;
+
+        /**
+         * Идентификатор опроса исследования
+         */
+        private final Long surveyId;
+
+        /**
+         * Значения параметров графика
+         */
+        private final List<Object> parameters;
+
+        private Key(String chart, Long surveyId, Object... parameters) {
+            this.chart = chart;
+            this.surveyId = surveyId;
+            this.parameters = Arrays.asList(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return chart.equals(key.chart) && Objects.equals(surveyId, key.surveyId) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(chart, surveyId, parameters);
+        }
+
+        @Override
+        public String toString() {
+            return chart + ":" + surveyId + parameters;
+        }
+    }
+
+    /**
+     * Хранимая гистограмма
+     */
+    private static class Histogram {
+
+        /**
+         * Расчет гистограммы в БД
+         */
+        private final Supplier<List<UserGroupCompare>> loader;
+
+        /**
+         * Группы сравнения (столбцы гистограммы)
+         */
+        private final List<UserGroupCompare> groups;
+
+        /**
+         * Время последнего просмотра (в мс)
+         */
+        private volatile long lastReadTime;
+
+        /**
+         * Время последней сверки с БД (в мс)
+         */
+        private volatile long lastCheckTime;
+
+        Histogram(Supplier<List<UserGroupCompare>> loader, List<UserGroupCompare> groups) {
+            this.loader = loader;
+            this.groups = Collections.unmodifiableList(groups);
+        }
+    }
+}
@@ -1,52 +1,103 @@
 package ru.airlabs.ego.survey.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.airlabs.ego.core.entity.Survey;
-import ru.airlabs.ego.core.entity.UserLink;
 import ru.airlabs.ego.core.entity.Vacancy;
-import ru.airlabs.ego.core.repository.UserLinkRepository;
+import ru.airlabs.ego.survey.dto.KeysetPage;
 import ru.airlabs.ego.survey.dto.user.UserCompareResult;
 import ru.airlabs.ego.survey.dto.user.UserGroupCompare;
 import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
-import ru.airlabs.ego.survey.service.ImageUploadService;
 import ru.airlabs.ego.survey.service.ResearchService;
+import ru.airlabs.ego.survey.utils.KeysetPagination;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
-import java.math.BigDecimal;
-import java.util.Date;
+import javax.sql.DataSource;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static ru.airlabs.ego.survey.utils.SortingUtils.createOrderQueryForCustomSurveyResults;
-import static ru.airlabs.ego.survey.utils.SortingUtils.createOrderQueryForVacancyUserDetails;
+import static ru.airlabs.ego.survey.service.impl.PageTotalCountCache.buildKey;
+import static ru.airlabs.ego.survey.utils.DbUtils.getNullableDouble;
+import static ru.airlabs.ego.survey.utils.DbUtils.getNullableInt;
+import static ru.airlabs.ego.survey.utils.DbUtils.query;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForCustomSurveyResults;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForVacancyUserDetails;
 
 @Service("researchService")
 @Transactional(readOnly = true)
 public class ResearchServiceImpl implements ResearchService {
 
     /**
-     * Сервис для работы с загруженными фотографиями пользователей
+     * Преобразование строки запроса подробностей сравнения участников
+     * (номера колонок соответствуют запросам {@link #getGroupCompareUserDetails} и {@link #getCategoryDetailsForSocionics},
+     * 1 - номер строки)
+     */
+    private static final RowMapper<VacancyUserDetail> USER_DETAIL_MAPPER = (rs, rowNum) -> {
+        VacancyUserDetail detail = new VacancyUserDetail();
+        detail.setVacancyId(rs.getLong(2));
+        detail.setUserId(rs.getLong(3));
+        detail.setEmail(rs.getString(4));
+        detail.setName(rs.getString(5));
+        detail.setPhone(rs.getString(6));
+        detail.setSurveyCreate(rs.getTimestamp(7));
+        detail.setProgress(rs.getInt(8));
+        detail.setFinishedParts(rs.getInt(9));
+        detail.setSurveyUpdate(rs.getTimestamp(10));
+        detail.setCompareResult(getNullableDouble(rs, 11));
+        return detail;
+    };
+
+    /**
+     * Преобразование строки запроса сравнения групп участников (номер блока, кол-во участников, % совпадения)
+     */
+    private static final RowMapper<UserGroupCompare> GROUP_COMPARE_MAPPER = (rs, rowNum) ->
+            new UserGroupCompare(getNullableInt(rs, 1), rs.getInt(2), getNullableDouble(rs, 3));
+
+    /**
+     * Компонент для заполнения откликов и приглашений данными пользователей
      */
     @Autowired
-    private ImageUploadService imageUploadService;
+    private VacancyUserDetailEnricher vacancyUserDetailEnricher;
 
     /**
-     * Репозиторий связей пользователей
+     * Кэш общего кол-ва строк постраничных выборок
      */
     @Autowired
-    private UserLinkRepository userLinkRepository;
+    private PageTotalCountCache pageTotalCountCache;
+
+    /**
+     * Хранилище гистограмм сравнения групп участников исследований
+     */
+    @Autowired
+    private ResearchHistogramStore researchHistogramStore;
+
+    /**
+     * Кол-во строк, получаемых из БД за одно обращение, для выборок без пагинации
+     */
+    @Value("${db.list.fetchSize}")
+    private int listFetchSize;
 
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Jdbc template
+     */
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
     /**
      * Получение списка участников исследования с процентом их совпадения
      *
@@ -69,15 +120,11 @@ public class ResearchServiceImpl implements ResearchService {
                 ") t, users z " +
                 "where t.id_user = z.id " +
                 "order by 2 desc";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("researchId", researchId);
-        List<Object[]> records = query.getResultList();
-        return records.stream()
-                .map(record -> new UserCompareResult(((BigDecimal) record[0]).longValue(),  // userId
-                        (String) record[2], // name
-                        (String) record[3], // email
-                        ((BigDecimal) record[1]).doubleValue()))    //compareResult
-                .collect(Collectors.toList());
+        return query(jdbcTemplate, queryExp, new MapSqlParameterSource("researchId", researchId), listFetchSize,
+                (rs, rowNum) -> new UserCompareResult(rs.getLong(1),  // userId
+                        rs.getString(3), // name
+                        rs.getString(4), // email
+                        rs.getDouble(2)));    //compareResult
     }
 
     /**
@@ -90,6 +137,19 @@ public class ResearchServiceImpl implements ResearchService {
     @Override
     public List<UserGroupCompare> getGroupCompareWithUser(Long researchId, Long userId) {
         checkIfResearch(researchId);
+        final Long surveyId = em.find(Vacancy.class, researchId).getSurveyId();
+        return researchHistogramStore.get(ResearchHistogramStore.key("groupCompareWithUser", surveyId, researchId, userId),
+                () -> loadGroupCompareWithUser(researchId, userId));
+    }
+
+    /**
+     * Расчет в БД данных о сравнении групп пользователей с конкретным выбранным пользователем
+     *
+     * @param researchId идентификатор исследования
+     * @param userId     идентификатор пользователя
+     * @return данные о сравнении групп пользователей
+     */
+    private List<UserGroupCompare> loadGroupCompareWithUser(Long researchId, Long userId) {
         final String queryExp = "select trunc((c.compared - 0.001)/(100/8)) as column_num, count(1) cnt_users, round(avg(c.compared), 2) as avg_compared " +
                 "from v_data v, v_data_user u, users_q_compare c " +
                 "where v.id = :researchId " +
@@ -101,15 +161,9 @@ public class ResearchServiceImpl implements ResearchService {
                 // выражение (c.compared - 0.001)/(100/8) обеспечивает попадание в 8 диапазонов результатов с граничными значениями сравнения (100% и 0)
                 "group by trunc((c.compared - 0.001)/(100/8)) " +
                 "order by 3 desc";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("researchId", researchId);
-        query.setParameter("userId", userId);
-        List<Object[]> records = query.getResultList();
-        return records.stream()
-                .map(record -> new UserGroupCompare(((BigDecimal) record[0]).intValue(),
-                        ((BigDecimal) record[1]).intValue(),
-                        ((BigDecimal) record[2]).doubleValue()))
-                .collect(Collectors.toList());
+        return jdbcTemplate.query(queryExp, new MapSqlParameterSource()
+                .addValue("researchId", researchId)
+                .addValue("userId", userId), GROUP_COMPARE_MAPPER);
     }
 
     /**
@@ -123,13 +177,14 @@ public class ResearchServiceImpl implements ResearchService {
     public List<UserGroupCompare> getGroupCompareForCategoryResearch(Long researchId, Long currentUserId) {
         Vacancy research = em.find(Vacancy.class, researchId);            // получаем исследование
         Survey survey = em.find(Survey.class, research.getSurveyId());   // получаем опрос
-        List<UserGroupCompare> result;
+        final Long surveyId = research.getSurveyId();
         if (survey.getAlgo() == 1) { // получение результатов для опроса "Соционика"
-            result = getCategoryGroupForSocionics(researchId, currentUserId);
+            return researchHistogramStore.get(ResearchHistogramStore.key("categoryGroupForSocionics", surveyId, researchId, currentUserId),
+                    () -> getCategoryGroupForSocionics(researchId, currentUserId));
         } else {
-            result = getCategoryGroupForCustomSurvey(researchId, research.getSurveyId());
+            return researchHistogramStore.get(ResearchHistogramStore.key("categoryGroupForCustomSurvey", surveyId, researchId),
+                    () -> getCategoryGroupForCustomSurvey(researchId, surveyId));
         }
-        return result;
     }
 
     /**
@@ -139,13 +194,15 @@ public class ResearchServiceImpl implements ResearchService {
      * @param currentUserId     идентификатор пользователя проводящего исследование
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных с возможностью пагинации
      */
     @Override
     public Page<VacancyUserDetail> getGroupCompareCategoryDetails(Long researchId,
                                                                   Long currentUserId,
                                                                   Integer chartColumnNumber,
-                                                                  Pageable pageable) {
+                                                                  Pageable pageable,
+                                                                  String cursor) {
         Vacancy research = em.find(Vacancy.class, researchId);            // получаем исследование
         Survey survey = em.find(Survey.class, research.getSurveyId());   // получаем опрос
         Page<VacancyUserDetail> details;
@@ -154,13 +211,15 @@ public class ResearchServiceImpl implements ResearchService {
                     currentUserId,
                     chartColumnNumber,
                     survey.getId(),
-                    pageable);
+                    pageable,
+                    cursor);
         } else {
             details = getCategoryDetailsForCustomSurvey(researchId,
                     currentUserId,
                     chartColumnNumber,
                     survey.getId(),
-                    pageable);
+                    pageable,
+                    cursor);
         }
         return details;
     }
@@ -174,6 +233,7 @@ public class ResearchServiceImpl implements ResearchService {
      * @param currentUserId     идентификатор пользователя проводящего исследование
      * @param chartColumnNumber номер блока для графика сравнения участников
      * @param pageable          настройки пагинации
+     * @param cursor            курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных сравнения участников опроса с возможностью пагинации
      */
     @Override
@@ -181,11 +241,17 @@ public class ResearchServiceImpl implements ResearchService {
                                                               Long userId,
                                                               Long currentUserId,
                                                               Integer chartColumnNumber,
-                                                              Pageable pageable) {
+                                                              Pageable pageable,
+                                                              String cursor) {
         checkIfResearch(researchId);
+        final KeysetPagination keyset = createKeysetForVacancyUserDetails(pageable.getSort(), cursor);
+        final String countKey = buildKey("researchUserDetails", researchId, userId, currentUserId, chartColumnNumber);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForVacancyUserDetails(pageable.getSort()) + ") rn, " +
-                "v.id, u.id as userId, ul.email, ul.name, ul.phone, vu.dt_create, q.progress, q.calculated_parts, q.dt_update, c.compared " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
+                "v.id, u.id as userId, ul.email, ul.name, ul.phone, vu.dt_create, q.progress, q.calculated_parts, q.dt_update, c.compared" +
+                keyset.getKeyColumns() + " " +
                 "from v_data v, v_data_user vu, users_q_compare c, users_q_list q, users u, users_link ul " +
                 "where v.id = :researchId " +
                 "and v.id = vu.id_v_data " +
@@ -199,36 +265,24 @@ public class ResearchServiceImpl implements ResearchService {
                 "and c.id_user1 = :userId " +
                 // выражение (c.compared - 0.001)/(100/8) обеспечивает попадание в 8 диапазонов результатов с граничными значениями сравнения (100% и 0)
                 "and trunc((c.compared - 0.001)/(100/8)) = :chartColumnNumber " +
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", userId);
-        query.setParameter("currentUserId", currentUserId);
-        query.setParameter("researchId", researchId);
-        query.setParameter("chartColumnNumber", chartColumnNumber);
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalUserDetailsCount(researchId, userId, currentUserId, chartColumnNumber);
-
-        List<Object[]> results = query.getResultList();
-        List<VacancyUserDetail> details = results.stream()
-                .map(record -> {
-                    VacancyUserDetail detail = new VacancyUserDetail();
-                    detail.setVacancyId(((BigDecimal) record[1]).longValue());
-                    detail.setUserId(((BigDecimal) record[2]).longValue());
-                    detail.setEmail((String) record[3]);
-                    detail.setName((String) record[4]);
-                    detail.setPhone((String) record[5]);
-                    detail.setSurveyCreate((Date) record[6]);
-                    detail.setProgress(((BigDecimal) record[7]).intValue());
-                    detail.setFinishedParts(((BigDecimal) record[8]).intValue());
-                    detail.setSurveyUpdate((Date) record[9]);
-                    detail.setCompareResult(((BigDecimal) record[10]).doubleValue());
-                    return detail;
-                })
-                .collect(Collectors.toList());
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("currentUserId", currentUserId)
+                .addValue("researchId", researchId)
+                .addValue("chartColumnNumber", chartColumnNumber)
+                .addValue("fromRow", keyset.getFromRow(pageable))
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper(USER_DETAIL_MAPPER, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalUserDetailsCount(researchId, userId, currentUserId, chartColumnNumber));
         fillWithPhotos(details);
-        Page<VacancyUserDetail> page = new PageImpl<>(details, pageable, totalCount);
+        Page<VacancyUserDetail> page = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return page;
     }
 
@@ -236,10 +290,16 @@ public class ResearchServiceImpl implements ResearchService {
                                                                    Long currentUserId,
                                                                    Integer chartColumnNumber,
                                                                    Long surveyId,
-                                                                   Pageable pageable) {
+                                                                   Pageable pageable,
+                                                                   String cursor) {
+        final KeysetPagination keyset = createKeysetForVacancyUserDetails(pageable.getSort(), cursor);
+        final String countKey = buildKey("researchSocionicsDetails", researchId, currentUserId, chartColumnNumber, surveyId);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForVacancyUserDetails(pageable.getSort()) + ") rn, " +
-                "v.id, u.id as userId, ul.email, ul.name, ul.phone, vu.dt_create, q.progress, q.calculated_parts, q.dt_update, c.compared " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
+                "v.id, u.id as userId, ul.email, ul.name, ul.phone, vu.dt_create, q.progress, q.calculated_parts, q.dt_update, c.compared" +
+                keyset.getKeyColumns() + " " +
                 "from v_data v " +
                 "join v_data_user vu on v.id = vu.id_v_data and vu.is_active = 1 " +
                 "join users u on vu.id_user = u.id and v.id_leader <> u.id " +
@@ -253,35 +313,23 @@ public class ResearchServiceImpl implements ResearchService {
                 "and (q.calculated_parts > 0) " +
                 // выражение (c.compared - 0.001)/(100/8) обеспечивает попадание в 8 диапазонов результатов с граничными значениями сравнения (100% и 0)
                 "and trunc((c.compared - 0.001)/(100/8)) = :chartColumnNumber " +
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("researchId", researchId);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("chartColumnNumber", chartColumnNumber);
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalCategoryDetailsCount(researchId, currentUserId, chartColumnNumber, surveyId);
-
-        List<Object[]> results = query.getResultList();
-        List<VacancyUserDetail> details = results.stream()
-                .map(record -> {
-                    VacancyUserDetail detail = new VacancyUserDetail();
-                    detail.setVacancyId(((BigDecimal) record[1]).longValue());
-                    detail.setUserId(((BigDecimal) record[2]).longValue());
-                    detail.setEmail((String) record[3]);
-                    detail.setName((String) record[4]);
-                    detail.setPhone((String) record[5]);
-                    detail.setSurveyCreate((Date) record[6]);
-                    detail.setProgress(((BigDecimal) record[7]).intValue());
-                    detail.setFinishedParts(((BigDecimal) record[8]).intValue());
-                    detail.setSurveyUpdate((Date) record[9]);
-                    detail.setCompareResult(((BigDecimal) record[10]).doubleValue());
-                    return detail;
-                })
-                .collect(Collectors.toList());
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("researchId", researchId)
+                .addValue("userId", currentUserId)
+                .addValue("chartColumnNumber", chartColumnNumber)
+                .addValue("fromRow", keyset.getFromRow(pageable))
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper(USER_DETAIL_MAPPER, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalCategoryDetailsCountForSocionics(researchId, currentUserId, chartColumnNumber));
         fillWithPhotos(details);
-        Page<VacancyUserDetail> page = new PageImpl<>(details, pageable, totalCount);
+        Page<VacancyUserDetail> page = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return page;
     }
 
@@ -289,40 +337,46 @@ public class ResearchServiceImpl implements ResearchService {
                                                                       Long currentUserId,
                                                                       Integer chartColumnNumber,
                                                                       Long surveyId,
-                                                                      Pageable pageable) {
+                                                                      Pageable pageable,
+                                                                      String cursor) {
+        final KeysetPagination keyset = createKeysetForCustomSurveyResults(pageable.getSort(), cursor);
+        final String countKey = buildKey("researchCustomSurveyDetails", researchId, currentUserId, chartColumnNumber, surveyId);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForCustomSurveyResults(pageable.getSort()) + ") rn, " +
-                "q.id_user, q.progress, q.calculated_parts, q.dt_create, q.dt_update, q.list_result_perc " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
+                "q.id_user, q.progress, q.calculated_parts, q.dt_create, q.dt_update, q.list_result_perc" + keyset.getKeyColumns() + " " +
                 "from users_q_list q " +
                 "join v_data_user vu on vu.id_user = q.id_user and vu.id_v_data = :researchId and vu.is_active = 1 " +
                 "where q.id_list = :surveyId and (q.calculated_parts > 0) and q.list_result_perc is not null " +
                 "and trunc((q.list_result_perc - 0.001)/(100/8)) = :chartColumnNumber " +
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("researchId", researchId);
-        query.setParameter("surveyId", surveyId);
-        query.setParameter("chartColumnNumber", chartColumnNumber);
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalCategoryDetailsCount(researchId, currentUserId, chartColumnNumber, surveyId);
-
-        List<Object[]> results = query.getResultList();
-        List<VacancyUserDetail> details = results.stream()
-                .map(record -> {
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("researchId", researchId)
+                .addValue("surveyId", surveyId)
+                .addValue("chartColumnNumber", chartColumnNumber)
+                .addValue("fromRow", keyset.getFromRow(pageable))
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper((rs, rowNum) -> {
                     VacancyUserDetail detail = new VacancyUserDetail();
                     detail.setVacancyId(researchId);
-                    detail.setUserId(((BigDecimal) record[1]).longValue());
-                    detail.setProgress(((BigDecimal) record[2]).intValue());
-                    detail.setFinishedParts(((BigDecimal) record[3]).intValue());
-                    detail.setSurveyCreate((Date) record[4]);
-                    detail.setSurveyUpdate((Date) record[5]);
-                    detail.setCompareResult(((BigDecimal) record[6]).doubleValue());
+                    detail.setUserId(rs.getLong(2));
+                    detail.setProgress(rs.getInt(3));
+                    detail.setFinishedParts(rs.getInt(4));
+                    detail.setSurveyCreate(rs.getTimestamp(5));
+                    detail.setSurveyUpdate(rs.getTimestamp(6));
+                    detail.setCompareResult(rs.getDouble(7));
                     return detail;
-                })
-                .collect(Collectors.toList());
+                }, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalCategoryDetailsCountForCustomSurvey(researchId, chartColumnNumber, surveyId));
         fillUserInfoAndPhotos(details, currentUserId);
-        Page<VacancyUserDetail> page = new PageImpl<>(details, pageable, totalCount);
+        Page<VacancyUserDetail> page = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return page;
     }
 
@@ -347,15 +401,9 @@ public class ResearchServiceImpl implements ResearchService {
                 // выражение (c.compared - 0.001)/(100/8) обеспечивает попадание в 8 диапазонов результатов с граничными значениями сравнения (100% и 0)
                 "group by trunc((c.compared - 0.001)/(100/8)) " +
                 "order by 3 desc";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("vacancyId", researchId);
-        List<Object[]> results = query.getResultList();
-        return results.stream()
-                .map(record -> new UserGroupCompare(((BigDecimal) record[0]).intValue(),
-                        ((BigDecimal) record[1]).intValue(),
-                        ((BigDecimal) record[2]).doubleValue()))
-                .collect(Collectors.toList());
+        return jdbcTemplate.query(queryExp, new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("vacancyId", researchId), GROUP_COMPARE_MAPPER);
     }
 
     /**
@@ -372,15 +420,9 @@ public class ResearchServiceImpl implements ResearchService {
                 "where q.id_list = :surveyId and (q.calculated_parts > 0) and q.list_result_perc is not null " +
                 "group by trunc((q.list_result_perc - 0.001)/(100/8)) " +
                 "order by 3 desc";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("surveyId", surveyId);
-        query.setParameter("researchId", researchId);
-        List<Object[]> results = query.getResultList();
-        return results.stream()
-                .map(record -> new UserGroupCompare(((BigDecimal) record[0]).intValue(),
-                        ((BigDecimal) record[1]).intValue(),
-                        ((BigDecimal) record[2]).doubleValue()))
-                .collect(Collectors.toList());
+        return jdbcTemplate.query(queryExp, new MapSqlParameterSource()
+                .addValue("surveyId", surveyId)
+                .addValue("researchId", researchId), GROUP_COMPARE_MAPPER);
     }
 
     /**
@@ -409,58 +451,65 @@ public class ResearchServiceImpl implements ResearchService {
                 "and v.id_list = q.id_list and vu.id_user = q.id_user " +
                 "and c.id_user1 = :userId " +
                 "and trunc((c.compared - 0.001)/(100/8)) = :chartColumnNumber ";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", userId);
-        query.setParameter("currentUserId", currentUserId);
-        query.setParameter("researchId", researchId);
-        query.setParameter("chartColumnNumber", chartColumnNumber);
-        return ((BigDecimal) query.getSingleResult()).longValue();
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("currentUserId", currentUserId)
+                .addValue("researchId", researchId)
+                .addValue("chartColumnNumber", chartColumnNumber), Long.class);
     }
 
     /**
      * Получение общего кол-ва записей для подробностей сравнения участников для категорийного исследования
+     * для опроса Соционика (условия совпадают с запросом {@link #getCategoryDetailsForSocionics})
      *
      * @param researchId        идентификатор исследования
      * @param currentUserId     идентификатор пользователя, проводящего исследование
      * @param chartColumnNumber номер блока для графика сравнения участников
+     * @return кол-во записей входящих в требуемый диапазон
+     */
+    private long getTotalCategoryDetailsCountForSocionics(Long researchId,
+                                                          Long currentUserId,
+                                                          Integer chartColumnNumber) {
+        final String queryExp = "select count(*) " +
+                "from v_data v " +
+                "join v_data_user vu on v.id = vu.id_v_data and vu.is_active = 1 " +
+                "join users u on vu.id_user = u.id and v.id_leader <> u.id " +
+                "join users_link ul on u.id = ul.id_user " +
+                "join users_q_list q on v.id_list = q.id_list and vu.id_user = q.id_user " +
+                "left join users_q_compare c on q.id_user = c.id_user2 and v.id_leader = c.id_user1 and q.id_list = c.id_list " +
+                "where v.id = :researchId " +
+                "and v.id_user = :userId " +
+                "and ul.id_parent = :userId " +
+                "and vu.is_employee = 1 " +
+                "and (q.calculated_parts > 0) " +
+                "and trunc((c.compared - 0.001)/(100/8)) = :chartColumnNumber ";
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("researchId", researchId)
+                .addValue("chartColumnNumber", chartColumnNumber), Long.class);
+    }
+
+    /**
+     * Получение общего кол-ва записей для подробностей сравнения участников для категорийного исследования
+     * для пользовательского опроса (условия совпадают с запросом {@link #getCategoryDetailsForCustomSurvey})
+     *
+     * @param researchId        идентификатор исследования
+     * @param chartColumnNumber номер блока для графика сравнения участников
      * @param surveyId          идентификатор опроса
      * @return кол-во записей входящих в требуемый диапазон
      */
-    private long getTotalCategoryDetailsCount(Long researchId,
-                                              Long currentUserId,
-                                              Integer chartColumnNumber,
-                                              Long surveyId) {
-        final String queryExp;
-        if (surveyId == 1L) { // для опроса "Соционика"
-            queryExp = "select count(*) " +
-                    "from v_data v " +
-                    "join v_data_user vu on v.id = vu.id_v_data and vu.is_active = 1 " +
-                    "join users u on vu.id_user = u.id and v.id_leader <> u.id " +
-                    "join users_q_list q on v.id_list = q.id_list and vu.id_user = q.id_user " +
-                    "left join users_q_compare c on q.id_user = c.id_user2 and v.id_leader = c.id_user1 and q.id_list = c.id_list " +
-                    "where v.id = :researchId " +
-                    "and v.id_user = :userId " +
-                    "and vu.is_employee = 1 " +
-                    "and (q.calculated_parts > 0) " +
-                    "and trunc((c.compared - 0.001)/(100/8)) = :chartColumnNumber ";
-        } else {
-            queryExp = "select count(*) " +
-                    "from users_q_list q " +
-                    "join v_data_user vu on vu.id_user = q.id_user and vu.id_v_data = :researchId and vu.is_active = 1 " +
-                    "where q.id_list = :surveyId and (q.calculated_parts > 0) and q.list_result_perc is not null " +
-                    "and trunc((q.list_result_perc - 0.001)/(100/8)) = :chartColumnNumber ";
-        }
-        Query query = em.createNativeQuery(queryExp);
-        if (surveyId == 1L) {
-            query.setParameter("userId", currentUserId);
-            query.setParameter("researchId", researchId);
-            query.setParameter("chartColumnNumber", chartColumnNumber);
-        } else {
-            query.setParameter("researchId", researchId);
-            query.setParameter("surveyId", surveyId);
-            query.setParameter("chartColumnNumber", chartColumnNumber);
-        }
-        return ((BigDecimal) query.getSingleResult()).longValue();
+    private long getTotalCategoryDetailsCountForCustomSurvey(Long researchId,
+                                                             Integer chartColumnNumber,
+                                                             Long surveyId) {
+        final String queryExp = "select count(*) " +
+                "from users_q_list q " +
+                "join v_data_user vu on vu.id_user = q.id_user and vu.id_v_data = :researchId and vu.is_active = 1 " +
+                "where q.id_list = :surveyId and (q.calculated_parts > 0) and q.list_result_perc is not null " +
+                "and trunc((q.list_result_perc - 0.001)/(100/8)) = :chartColumnNumber ";
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("researchId", researchId)
+                .addValue("surveyId", surveyId)
+                .addValue("chartColumnNumber", chartColumnNumber), Long.class);
     }
 
     /**
@@ -479,22 +528,11 @@ public class ResearchServiceImpl implements ResearchService {
      * @param details отклики и приглашения
      */
     private void fillWithPhotos(List<VacancyUserDetail> details) {
-        for (VacancyUserDetail detail : details) {
-            List<String> imagePaths = imageUploadService.getImagesForUserAndVacancy(detail.getUserId(), detail.getVacancyId());
-            detail.getImages().addAll(imagePaths);
-        }
+        vacancyUserDetailEnricher.fillWithPhotos(details);
     }
 
     private void fillUserInfoAndPhotos(List<VacancyUserDetail> details, Long currentUserId) {
-        for (VacancyUserDetail detail : details) {
-            UserLink user = userLinkRepository.findByUserIdAndParentId(detail.getUserId(), currentUserId);
-
-            List<String> imagePaths = imageUploadService.getImagesForUserAndVacancy(detail.getUserId(), detail.getVacancyId());
-            detail.getImages().addAll(imagePaths);
-            detail.setEmail(user.getEmail());
-            detail.setName(user.getName());
-            detail.setPhone(user.getPhone());
-        }
+        vacancyUserDetailEnricher.fillUserInfoAndPhotos(details, currentUserId, false);
     }
 
 }
@@ -0,0 +1,443 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.airlabs.ego.core.entity.UserSurveyState;
+import ru.airlabs.ego.survey.config.JsonMapper;
+import ru.airlabs.ego.survey.dto.survey.SurveyAnswer;
+import ru.airlabs.ego.survey.dto.survey.SurveyResult;
+import ru.airlabs.ego.survey.service.SurveyAnswerQueueService;
+import ru.airlabs.ego.survey.service.SurveyService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Сервис приема ответов на вопросы опроса
+ * <p>
+ * В асинхронном режиме ответы дописываются в локальный журнал (с принудительной записью на диск),
+ * а фоновый поток переносит их из журнала в БД.
+ * Позиция последней перенесенной записи хранится в отдельном файле,
+ * поэтому после перезапуска приложения перенос продолжается с нее
+ * (повторное сохранение ответа в БД безопасно - ответ будет принят как повтор).
+ * Ответы, отвергнутые БД (ошибка в данных ответа или отказ процедуры сохранения), сразу переносятся
+ * в отдельный файл для ручного разбора, и перенос продолжается.
+ * Если часть ответов записи не сохранилась из-за недоступности БД, перенос прерывается без сдвига позиции,
+ * при следующем запуске повторно сохраняются только эти ответы. Ответы, не сохранившиеся
+ * за заданное кол-во попыток, также переносятся в отдельный файл.
+ * <p>
+ * Состояние частично сохраненной записи хранится только в памяти: после перезапуска приложения
+ * запись сохраняется повторно целиком. Такой повтор безопасен - уже сохраненные ответы принимаются как повторы,
+ * а отвергнутые ответы могут повторно попасть в файл для ручного разбора.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Service("surveyAnswerQueueService")
+public class SurveyAnswerQueueServiceImpl implements SurveyAnswerQueueService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SurveyAnswerQueueServiceImpl.class);
+
+    /**
+     * Название файла журнала ответов
+     */
+    private static final String JOURNAL_FILE_NAME = "survey-answers.journal";
+
+    /**
+     * Название файла с позицией последней перенесенной в БД записи журнала
+     */
+    private static final String OFFSET_FILE_NAME = "survey-answers.offset";
+
+    /**
+     * Название файла с ответами, которые не удалось перенести в БД
+     */
+    private static final String FAILED_FILE_NAME = "survey-answers.failed";
+
+    /**
+     * Начальный размер буфера чтения журнала (буфер увеличивается, если запись в него не помещается)
+     */
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Разделитель записей журнала
+     */
+    private static final byte RECORD_SEPARATOR = '\n';
+
+    /**
+     * Сервис опросов
+     */
+    @Autowired
+    private SurveyService surveyService;
+
+    /**
+     * Признак асинхронного режима приема ответов
+     */
+    @Value("${surveyAnswer.async.enabled}")
+    private boolean asyncEnabled;
+
+    /**
+     * Полный путь к директории, в которой хранится журнал ответов
+     */
+    @Value("${surveyAnswer.async.journalLocation}")
+    private String journalLocation;
+
+    /**
+     * Интервал переноса ответов из журнала в БД (в миллисекундах)
+     */
+    @Value("${surveyAnswer.async.drainInterval}")
+    private long drainInterval;
+
+    /**
+     * Макс. кол-во попыток переноса ответов записи журнала в БД
+     */
+    @Value("${surveyAnswer.async.maxAttempts}")
+    private int maxAttempts;
+
+    /**
+     * Общие объекты для сериализации JSON
+     */
+    @Autowired
+    private JsonMapper jsonMapper;
+
+    /**
+     * Блокировка для записи в журнал
+     */
+    private final Object journalLock = new Object();
+
+    private FileChannel journal;
+
+    private FileChannel offsetFile;
+
+    /**
+     * Позиция последней перенесенной в БД записи журнала
+     */
+    private volatile long offset;
+
+    /**
+     * Позиция записи журнала, ответы которой сохранены в БД не полностью (-1 - такой записи нет)
+     */
+    private long retryOffset = -1;
+
+    /**
+     * Идентификаторы ответов записи, которые осталось сохранить в БД
+     */
+    private Set<Long> retryAnswerIds = Collections.emptySet();
+
+    /**
+     * Кол-во выполненных попыток сохранения записи
+     */
+    private int retryAttempts;
+
+    private ScheduledExecutorService drainer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!asyncEnabled) {
+            return;
+        }
+        Path directory = Paths.get(journalLocation);
+        Files.createDirectories(directory);
+        journal = FileChannel.open(directory.resolve(JOURNAL_FILE_NAME), CREATE, READ, WRITE);
+        offsetFile = FileChannel.open(directory.resolve(OFFSET_FILE_NAME), CREATE, READ, WRITE);
+        offset = readOffset();
+        if (offset > journal.size()) {
+            offset = 0;
+        }
+        LOGGER.info("Survey answers journal opened at {}, pending bytes: {}", directory, journal.size() - offset);
+        drainer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("survey-answer-drainer").setDaemon(true).build());
+        drainer.scheduleWithFixedDelay(this::drain, drainInterval, drainInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        if (drainer != null) {
+            drainer.shutdown();
+            try {
+                drainer.awaitTermination(drainInterval * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (offsetFile != null) {
+            offsetFile.close();
+        }
+    }
+
+    /**
+     * Принять ответы на вопросы
+     *
+     * @param answers ответы на вопросы
+     * @param state   состояние прохождения опроса пользователем
+     * @return результат приема ответов
+     */
+    @Override
+    public SurveyResult submitAnswers(Collection<SurveyAnswer> answers, UserSurveyState state) {
+        if (!asyncEnabled) {
+            return surveyService.answerSurveyQuestions(answers, state.getId());
+        }
+        List<SurveyAnswer> userAnswers = new LinkedHashSet<>(answers).stream()
+                .filter(a -> state.getUserId().equals(a.getUserId()))
+                .collect(Collectors.toList());
+        SurveyResult surveyResult = new SurveyResult();
+        if (userAnswers.isEmpty()) {
+            return surveyResult;
+        }
+        try {
+            appendRecord(new JournalRecord(state.getId(), userAnswers));
+        } catch (IOException e) {
+            LOGGER.error("Survey answers journal write error, saving answers synchronously", e);
+            return surveyService.answerSurveyQuestions(userAnswers, state.getId());
+        }
+        for (SurveyAnswer answer : userAnswers) {
+            surveyResult.totalAnswered.getAndIncrement();
+            surveyResult.appliedAnswerIds.add(answer.getId());
+        }
+        return surveyResult;
+    }
+
+    @Override
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    /**
+     * Дописать запись в журнал
+     *
+     * @param record запись журнала
+     * @throws IOException
+     */
+    private void appendRecord(JournalRecord record) throws IOException {
+        byte[] json = jsonMapper.writerFor(JournalRecord.class).writeValueAsBytes(record);
+        ByteBuffer buffer = ByteBuffer.allocate(json.length + 1);
+        buffer.put(json).put(RECORD_SEPARATOR).flip();
+        synchronized (journalLock) {
+            long position = journal.size();
+            while (buffer.hasRemaining()) {
+                position += journal.write(buffer, position);
+            }
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Перенести накопленные в журнале ответы в БД
+     * (журнал читается частями, при недоступности БД перенос прерывается и повторяется при следующем запуске)
+     */
+    private void drain() {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            final long end = journal.size();
+            while (offset < end) {
+                final long chunkStart = offset;
+                final int length = (int) Math.min(buffer.capacity(), end - chunkStart);
+                buffer.clear();
+                buffer.limit(length);
+                while (buffer.hasRemaining()) {
+                    if (journal.read(buffer, chunkStart + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                byte[] bytes = buffer.array();
+                int recordStart = 0;
+                for (int i = 0; i < buffer.position(); i++) {
+                    if (bytes[i] != RECORD_SEPARATOR) {
+                        continue;
+                    }
+                    if (i > recordStart && !drainRecord(new String(bytes, recordStart, i - recordStart, StandardCharsets.UTF_8),
+                            chunkStart + recordStart)) {
+                        return;
+                    }
+                    recordStart = i + 1;
+                    writeOffset(chunkStart + recordStart);
+                }
+                if (recordStart == 0) {
+                    if (length == end - chunkStart) {
+                        break;  // последняя запись еще дописывается
+                    }
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);   // запись не поместилась в буфер
+                }
+            }
+            truncateIfDrained();
+        } catch (Exception e) {
+            LOGGER.error("Survey answers journal drain error", e);
+        }
+    }
+
+    /**
+     * Сохранить в БД ответы из записи журнала
+     * (для записи, сохраненной ранее не полностью, сохраняются только оставшиеся ответы;
+     * ответы, отвергнутые БД, сразу переносятся в файл непереносимых ответов,
+     * перенос прерывается только при недоступности БД)
+     *
+     * @param json         запись журнала
+     * @param recordOffset позиция записи в журнале
+     * @return true - если запись перенесена, false - если часть ответов не сохранилась из-за недоступности БД
+     * и перенос нужно прервать
+     * @throws IOException ошибка записи в файл непереносимых ответов
+     */
+    private boolean drainRecord(String json, long recordOffset) throws IOException {
+        JournalRecord record;
+        try {
+            record = jsonMapper.readerFor(JournalRecord.class).readValue(json);
+        } catch (IOException e) {
+            LOGGER.error("Survey answers journal record is corrupted, skipped: " + json, e);
+            return true;
+        }
+        List<SurveyAnswer> answers = record.getAnswers();
+        if (recordOffset == retryOffset) {
+            answers = answers.stream()
+                    .filter(a -> retryAnswerIds.contains(a.getId()))
+                    .collect(Collectors.toList());
+        } else {
+            retryAttempts = 0;
+        }
+        SurveyResult result = surveyService.answerSurveyQuestions(answers, record.getUserSurveyStateId());
+        Set<Long> rejectedIds = new HashSet<>(result.errorAnswerIds);
+        rejectedIds.removeAll(result.retryableAnswerIds);
+        if (!rejectedIds.isEmpty()) {   // повторное сохранение отвергнутых ответов не поможет
+            moveToFailed(record, answers, rejectedIds);
+            LOGGER.error("Survey answers {} of state {} were rejected by DB, moved to {}",
+                    rejectedIds, record.getUserSurveyStateId(), FAILED_FILE_NAME);
+        }
+        if (result.retryableAnswerIds.isEmpty()) {
+            retryOffset = -1;
+            retryAnswerIds = Collections.emptySet();
+            return true;
+        }
+        retryAttempts++;
+        if (retryAttempts < maxAttempts) {
+            LOGGER.warn("Survey answers {} of state {} were not saved from journal (attempt {}), drain is suspended",
+                    result.retryableAnswerIds, record.getUserSurveyStateId(), retryAttempts);
+            retryOffset = recordOffset;
+            retryAnswerIds = new HashSet<>(result.retryableAnswerIds);
+            return false;
+        }
+        moveToFailed(record, answers, new HashSet<>(result.retryableAnswerIds));
+        LOGGER.error("Survey answers {} of state {} were not saved from journal after {} attempts, moved to {}",
+                result.retryableAnswerIds, record.getUserSurveyStateId(), retryAttempts, FAILED_FILE_NAME);
+        retryOffset = -1;
+        retryAnswerIds = Collections.emptySet();
+        return true;
+    }
+
+    /**
+     * Перенести ответы записи журнала в файл ответов, которые не удалось перенести в БД
+     *
+     * @param record    запись журнала
+     * @param answers   сохранявшиеся ответы записи
+     * @param answerIds идентификаторы переносимых ответов
+     * @throws IOException
+     */
+    private void moveToFailed(JournalRecord record, List<SurveyAnswer> answers, Set<Long> answerIds) throws IOException {
+        List<SurveyAnswer> failedAnswers = answers.stream()
+                .filter(a -> answerIds.contains(a.getId()))
+                .collect(Collectors.toList());
+        appendFailedRecord(new JournalRecord(record.getUserSurveyStateId(), failedAnswers));
+    }
+
+    /**
+     * Дописать запись в файл ответов, которые не удалось перенести в БД
+     *
+     * @param record запись журнала
+     * @throws IOException
+     */
+    private void appendFailedRecord(JournalRecord record) throws IOException {
+        byte[] json = jsonMapper.writerFor(JournalRecord.class).writeValueAsBytes(record);
+        try (FileChannel failed = FileChannel.open(Paths.get(journalLocation).resolve(FAILED_FILE_NAME), CREATE, WRITE, APPEND)) {
+            ByteBuffer buffer = ByteBuffer.allocate(json.length + 1);
+            buffer.put(json).put(RECORD_SEPARATOR).flip();
+            while (buffer.hasRemaining()) {
+                failed.write(buffer);
+            }
+            failed.force(false);
+        }
+    }
+
+    /**
+     * Очистить журнал, если все записи перенесены в БД
+     *
+     * @throws IOException
+     */
+    private void truncateIfDrained() throws IOException {
+        synchronized (journalLock) {
+            if (offset == journal.size()) {
+                journal.truncate(0);
+                journal.force(false);
+                writeOffset(0);
+            }
+        }
+    }
+
+    private long readOffset() throws IOException {
+        if (offsetFile.size() < Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (offsetFile.read(buffer, buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeOffset(long value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(value).flip();
+        while (buffer.hasRemaining()) {
+            offsetFile.write(buffer, buffer.position());
+        }
+        offsetFile.force(false);
+        offset = value;
+    }
+
+    /**
+     * Запись журнала ответов
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class JournalRecord {
+
+        /**
+         * Идентификатор состояния прохождения опроса
+         */
+        private Long userSurveyStateId;
+
+        /**
+         * Ответы на вопросы
+         */
+        private List<SurveyAnswer> answers = new ArrayList<>();
+    }
+}
@@ -0,0 +1,249 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import ru.airlabs.ego.survey.dto.survey.SurveyQuestion;
+import ru.airlabs.ego.survey.service.SurveyQuestionPrefetchService;
+import ru.airlabs.ego.survey.service.SurveyService;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Сервис выдачи вопросов опроса с упреждающей загрузкой
+ * <p>
+ * Для каждого активного прохождения опроса в памяти хранится буфер из нескольких страниц неотвеченных вопросов.
+ * Запрос страницы обслуживается из буфера, а когда в буфере остается меньше двух страниц,
+ * следующие страницы загружаются из БД в фоне.
+ * Отвеченные вопросы исключаются из буфера по мере приема ответов,
+ * поэтому повторный запрос страницы (как и при чтении из БД) возвращает только неотвеченные вопросы.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Service("surveyQuestionPrefetchService")
+public class SurveyQuestionPrefetchServiceImpl implements SurveyQuestionPrefetchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SurveyQuestionPrefetchServiceImpl.class);
+
+    /**
+     * Сервис опросов
+     */
+    @Autowired
+    private SurveyService surveyService;
+
+    /**
+     * Пул потоков для фоновой загрузки вопросов
+     */
+    @Autowired
+    @Qualifier("surveyQuestionPrefetchExecutor")
+    private Executor prefetchExecutor;
+
+    /**
+     * Признак упреждающей загрузки вопросов
+     */
+    @Value("${surveyQuestion.prefetch.enabled}")
+    private boolean prefetchEnabled;
+
+    /**
+     * Кол-во страниц вопросов, загружаемых в буфер за один запрос к БД
+     */
+    @Value("${surveyQuestion.prefetch.pages}")
+    private int prefetchPages;
+
+    /**
+     * Время хранения буфера с момента последнего обращения (в секундах)
+     */
+    @Value("${surveyQuestion.prefetch.ttl}")
+    private long bufferTtl;
+
+    /**
+     * Максимальное кол-во буферов в памяти
+     */
+    @Value("${surveyQuestion.prefetch.maxSize}")
+    private long bufferMaxSize;
+
+    /**
+     * Буферы вопросов (ключ - идентификаторы пользователя и опроса)
+     */
+    private Cache<String, QuestionBuffer> buffers;
+
+    @PostConstruct
+    public void init() {
+        buffers = CacheBuilder.newBuilder()
+                .expireAfterAccess(bufferTtl, TimeUnit.SECONDS)
+                .maximumSize(bufferMaxSize)
+                .build();
+    }
+
+    /**
+     * Получить список неотвеченных вопросов
+     *
+     * @param userId   идентификатор пользователя
+     * @param surveyId идентификатор опроса
+     * @param locale   локаль
+     * @param max      макс. кол-во вопросов
+     * @return список
+     */
+    @Override
+    public List<SurveyQuestion> getUnansweredSurveyQuestions(Long userId, Long surveyId, Locale locale, Integer max) {
+        if (!prefetchEnabled || max == null || max <= 0) {
+            return surveyService.getUnansweredSurveyQuestions(userId, surveyId, locale, max);
+        }
+        final String key = buildKey(userId, surveyId);
+        QuestionBuffer buffer = buffers.getIfPresent(key);
+        boolean keepAnswered = buffer != null;
+        if (buffer != null && buffer.locale.equals(locale)) {
+            List<SurveyQuestion> available = buffer.getAvailable();
+            if (!available.isEmpty() && (available.size() >= max || buffer.complete)) {
+                buffer.pageSize = max;
+                prefetchIfNeeded(buffer, userId, surveyId);
+                return new ArrayList<>(available.subList(0, Math.min(max, available.size())));
+            }
+            // все вопросы загруженного целиком буфера отмечены отвеченными - перед завершением опроса
+            // проверяем по БД без учета отметок (отмеченные ответы из очереди могли не сохраниться)
+            keepAnswered = !available.isEmpty() || !buffer.complete;
+        }
+        // в буфере недостаточно вопросов - загружаем синхронно
+        QuestionBuffer loaded = new QuestionBuffer(locale, max);
+        if (keepAnswered) {
+            loaded.answeredIds.addAll(buffer.answeredIds);
+        }
+        loaded.fill(surveyService.getUnansweredSurveyQuestions(userId, surveyId, locale, max * prefetchPages),
+                max * prefetchPages);
+        buffers.put(key, loaded);
+        List<SurveyQuestion> available = loaded.getAvailable();
+        return new ArrayList<>(available.subList(0, Math.min(max, available.size())));
+    }
+
+    /**
+     * Отметить вопросы как отвеченные
+     * (отвеченные вопросы исключаются из загруженных заранее страниц)
+     *
+     * @param userId      идентификатор пользователя
+     * @param surveyId    идентификатор опроса
+     * @param questionIds идентификаторы отвеченных вопросов
+     */
+    @Override
+    public void markAnswered(Long userId, Long surveyId, Collection<Long> questionIds) {
+        if (!prefetchEnabled || questionIds.isEmpty()) {
+            return;
+        }
+        QuestionBuffer buffer = buffers.getIfPresent(buildKey(userId, surveyId));
+        if (buffer != null) {
+            buffer.answeredIds.addAll(questionIds);
+            prefetchIfNeeded(buffer, userId, surveyId);
+        }
+    }
+
+    /**
+     * Запустить фоновую загрузку вопросов, если в буфере осталось меньше двух страниц
+     * (текущей и следующей)
+     *
+     * @param buffer   буфер вопросов
+     * @param userId   идентификатор пользователя
+     * @param surveyId идентификатор опроса
+     */
+    private void prefetchIfNeeded(QuestionBuffer buffer, Long userId, Long surveyId) {
+        final int pageSize = buffer.pageSize;
+        if (buffer.complete || buffer.getAvailable().size() >= pageSize * 2
+                || !buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    buffer.fill(surveyService.getUnansweredSurveyQuestions(userId, surveyId, buffer.locale,
+                            pageSize * prefetchPages), pageSize * prefetchPages);
+                } catch (Exception e) {
+                    LOGGER.error("Survey questions prefetch error for user " + userId + ", survey " + surveyId, e);
+                } finally {
+                    buffer.loading.set(false);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // пул загрузки остановлен - следующая страница будет загружена синхронно при запросе
+            buffer.loading.set(false);
+        }
+    }
+
+    private static String buildKey(Long userId, Long surveyId) {
+        return userId + ":" + surveyId;
+    }
+
+    /**
+     * Буфер неотвеченных вопросов для прохождения опроса
+     */
+    private static class QuestionBuffer {
+
+        /**
+         * Локаль, на которой загружены вопросы
+         */
+        private final Locale locale;
+
+        /**
+         * Размер страницы вопросов, запрошенный клиентом
+         */
+        private volatile int pageSize;
+
+        /**
+         * Загруженные вопросы (в порядке выдачи)
+         */
+        private volatile List<SurveyQuestion> questions = Collections.emptyList();
+
+        /**
+         * Признак того, что в буфер загружены все неотвеченные вопросы
+         */
+        private volatile boolean complete;
+
+        /**
+         * Идентификаторы отвеченных вопросов
+         * (ответы в асинхронном режиме попадают в БД с задержкой, поэтому учитываются и при повторной загрузке)
+         */
+        private final Set<Long> answeredIds = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Признак выполняющейся фоновой загрузки
+         */
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        QuestionBuffer(Locale locale, int pageSize) {
+            this.locale = locale;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * Заменить содержимое буфера загруженными из БД вопросами
+         *
+         * @param loaded    загруженные вопросы
+         * @param requested запрошенное кол-во вопросов
+         */
+        void fill(List<SurveyQuestion> loaded, int requested) {
+            List<SurveyQuestion> list = loaded != null ? loaded : Collections.emptyList();
+            questions = Collections.unmodifiableList(new ArrayList<>(list));
+            complete = list.size() < requested;
+        }
+
+        /**
+         * Получить неотвеченные вопросы из буфера
+         *
+         * @return список
+         */
+        List<SurveyQuestion> getAvailable() {
+            return questions.stream()
+                    .filter(q -> !answeredIds.contains(q.getId()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -1,16 +1,27 @@
 package ru.airlabs.ego.survey.service.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
 import oracle.jdbc.OracleTypes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.SqlOutParameter;
 import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcCall;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,28 +32,37 @@ import ru.airlabs.ego.core.entity.util.ClientError;
 import ru.airlabs.ego.core.repository.*;
 import ru.airlabs.ego.core.repository.user.UserCompareRepository;
 import ru.airlabs.ego.core.repository.util.ClientErrorRepository;
+import ru.airlabs.ego.survey.config.JsonMapper;
 import ru.airlabs.ego.survey.dto.UIError;
 import ru.airlabs.ego.survey.dto.survey.*;
+import ru.airlabs.ego.survey.dto.survey.metrics.SensorSeries;
+import ru.airlabs.ego.survey.jdbc.JdbcCallRegistry;
 import ru.airlabs.ego.survey.service.ImageUploadService;
 import ru.airlabs.ego.survey.service.QuestionChainService;
 import ru.airlabs.ego.survey.service.SurveyService;
+import ru.airlabs.ego.survey.service.SurveySessionService;
 import ru.airlabs.ego.survey.utils.MapUtils;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.sql.CallableStatement;
+import java.sql.Timestamp;
 import java.sql.Types;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static ru.airlabs.ego.survey.utils.DbUtils.query;
 
 /**
  * Сервис для работы с опросами
@@ -66,12 +86,53 @@ public class SurveyServiceImpl implements SurveyService {
      */
     private static final Long SURVEY_SOCIONICS_ID = 1L;
 
-    @Autowired
-    private DataSource dataSource;
+    /**
+     * Название пакета с хранимыми процедурами опросов
+     */
+    private static final String SURVEY_PACKAGE_NAME = "Q_SURVEY_PKG";
+
+    /**
+     * Вызов хранимой функции сохранения ответа на вопрос внутри анонимного блока
+     * (ошибка сохранения одного ответа откатывается до точки сохранения и возвращается последним параметром)
+     */
+    private static final String SET_ANSWER_BLOCK_CALL = "begin savepoint set_answer; " +
+            "? := " + SURVEY_PACKAGE_NAME + ".SET_ANSWER(?, ?, ?, ?, ?, ?); " +
+            "exception when others then rollback to savepoint set_answer; ? := substr(sqlerrm, 1, 1000); end;";
+
+    /**
+     * Кол-во параметров вызова хранимой функции сохранения ответа в анонимном блоке
+     */
+    private static final int SET_ANSWER_BLOCK_CALL_PARAMETER_COUNT = 8;
+
+    /**
+     * Макс. кол-во ответов, сохраняемых одним анонимным блоком
+     */
+    private static final int SET_ANSWER_BLOCK_SIZE = 50;
+
+    /**
+     * Результат сохранения ответа "БД недоступна" (повторное сохранение может быть успешным)
+     */
+    private static final long ANSWER_RETRYABLE_ERROR = -2L;
+
+    /**
+     * Jdbc template
+     */
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Jdbc template с именованными параметрами
+     */
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
 
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Общие объекты для сериализации JSON
+     */
+    @Autowired
+    private JsonMapper jsonMapper;
+
     /**
      * Сервис для работы с фотографиями пользователей
      */
@@ -150,8 +211,46 @@ public class SurveyServiceImpl implements SurveyService {
     @Autowired
     private ClientErrorRepository clientErrorRepository;
 
+    /**
+     * Хранилище гистограмм сравнения групп участников исследований
+     */
+    @Autowired
+    private ResearchHistogramStore researchHistogramStore;
+
+    /**
+     * Пул потоков для обработки ответов на вопросы
+     */
+    @Autowired
+    @Qualifier("surveyAnswerExecutor")
+    private Executor surveyAnswerExecutor;
+
+    /**
+     * Сервис сессии прохождения опроса (кэширует состояния прохождения опроса)
+     */
+    @Autowired
+    private SurveySessionService surveySessionService;
+
+    /**
+     * Максимальное кол-во ответов одного запроса, обрабатываемых параллельно
+     */
+    @Value("${surveyAnswer.maxParallelAnswers}")
+    private int maxParallelAnswers;
+
+    /**
+     * Признак компактного (бинарного) хранения показаний датчиков в JSON ответа
+     */
+    @Value("${surveyAnswer.telemetry.compact}")
+    private boolean compactTelemetry;
+
+    /**
+     * Кол-во строк, получаемых из БД за одно обращение, для выборок без пагинации
+     */
+    @Value("${db.list.fetchSize}")
+    private int listFetchSize;
+
     /**
      * Движок управления транзакциями
+     * (настраивается один раз при создании и далее используется потоками только на чтение)
      */
     private TransactionTemplate transactionTemplate;
 
@@ -163,6 +262,66 @@ public class SurveyServiceImpl implements SurveyService {
     @Autowired
     public void setPlatformTransactionManager(PlatformTransactionManager platformTransactionManager) {
         this.transactionTemplate = new TransactionTemplate(platformTransactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Autowired
+    private void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Вызов хранимой процедуры получения неотвеченных вопросов
+     */
+    private SimpleJdbcCall getQuestionsCall;
+
+    /**
+     * Вызов хранимой процедуры получения кол-ва оставшихся вопросов и времени на их прохождение
+     */
+    private SimpleJdbcCall getQuestionsRemainsWithTimeCall;
+
+    /**
+     * Вызов хранимой функции получения кол-ва оставшихся вопросов
+     */
+    private SimpleJdbcCall getQuestionsRemainsCall;
+
+    /**
+     * Вызов хранимой функции сохранения ответа на вопрос
+     */
+    private SimpleJdbcCall setAnswerCall;
+
+    /**
+     * Получить из реестра вызовы хранимых процедур опросов
+     *
+     * @param jdbcCallRegistry реестр вызовов хранимых процедур
+     */
+    @Autowired
+    private void setJdbcCallRegistry(JdbcCallRegistry jdbcCallRegistry) {
+        this.getQuestionsCall = jdbcCallRegistry.procedure(SURVEY_PACKAGE_NAME, "GET_QUESTIONS",
+                new SqlOutParameter("CUR", OracleTypes.CURSOR, (rs, i) ->
+                        new SurveyQuestion(rs.getLong("ID"),
+                                rs.getString("NAME"),
+                                rs.getInt("ANSWER_SEC"))),
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_LIST", Types.BIGINT),
+                new SqlParameter("PLOCALE", Types.VARCHAR),
+                new SqlParameter("PCOUNT", Types.INTEGER));
+        this.getQuestionsRemainsWithTimeCall = jdbcCallRegistry.procedure(SURVEY_PACKAGE_NAME, "GET_QUESTIONS_REMAINS_SEC",
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_LIST", Types.BIGINT),
+                new SqlOutParameter("PCOUNT", Types.BIGINT),
+                new SqlOutParameter("PANSWER_SEC", Types.BIGINT));
+        this.getQuestionsRemainsCall = jdbcCallRegistry.function(SURVEY_PACKAGE_NAME, "GET_QUESTIONS_REMAINS", Types.NUMERIC,
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_LIST", Types.BIGINT));
+        this.setAnswerCall = jdbcCallRegistry.function(SURVEY_PACKAGE_NAME, "SET_ANSWER", Types.NUMERIC,
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_ITEM", Types.BIGINT),
+                new SqlParameter("PANSWER", Types.INTEGER),
+                new SqlParameter("PDT_VIEW", Types.TIMESTAMP),
+                new SqlParameter("PDT_ANSWER", Types.TIMESTAMP),
+                new SqlParameter("PJSON", Types.CLOB));
     }
 
     @Override
@@ -254,15 +413,12 @@ public class SurveyServiceImpl implements SurveyService {
                 "and l.locale = :locale " +
                 // Не показываем стандартные 4 категории: Логику, Рационализм, Экстраверсию, Сенсорику.
                 // Они не доступны для создания кастомных опросов.
-                "and t.id not in :ignoreList " +
+                "and t.id not in (:ignoreList) " +
                 "order by 1";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("locale", localeLanguage);
-        query.setParameter("ignoreList", SURVEY_CATEGORY_ID_IGNORE_LIST);
-        List<Object[]> results = query.getResultList();
-        return results.stream()
-                .map(record -> new SurveyCategory(((BigDecimal) record[0]).longValue(), (String) record[1]))
-                .collect(Collectors.toList());
+        return namedJdbcTemplate.query(queryExp, new MapSqlParameterSource()
+                        .addValue("locale", localeLanguage)
+                        .addValue("ignoreList", SURVEY_CATEGORY_ID_IGNORE_LIST),
+                (rs, rowNum) -> new SurveyCategory(rs.getLong(1), rs.getString(2)));
     }
 
     /**
@@ -299,10 +455,9 @@ public class SurveyServiceImpl implements SurveyService {
     @Override
     public boolean isSurveyEditable(Long surveyId) {
         // если опрос есть хотя бы в одной вакансии или исследовании, то редактировать его категории нельзя
-        Query query = em.createNativeQuery("select count(1) from v_data v where v.id_list = :surveyId");
-        query.setParameter("surveyId", surveyId);
-        BigDecimal count = (BigDecimal) query.getSingleResult();
-        return (count.intValue() == 0);
+        final int count = namedJdbcTemplate.queryForObject("select count(1) from v_data v where v.id_list = :surveyId",
+                new MapSqlParameterSource("surveyId", surveyId), Integer.class);
+        return (count == 0);
     }
 
     @Override
@@ -315,14 +470,11 @@ public class SurveyServiceImpl implements SurveyService {
                 "where (uql.id_user = :userId or uql.id_user = 0) " +
                 "and q.is_active = :active " +
                 "order by l.name";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", userId);
-        query.setParameter("active", active);
-        query.setParameter("locale", localeLanguage);
-        List<Object[]> results = query.getResultList();
-        return results.stream()
-                .map(arr -> new SurveyInfo(((BigDecimal) arr[0]).longValue(), (String) arr[1]))
-                .collect(Collectors.toList());
+        return query(namedJdbcTemplate, queryExp, new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("active", active)
+                        .addValue("locale", localeLanguage), listFetchSize,
+                (rs, rowNum) -> new SurveyInfo(rs.getLong(1), rs.getString(2)));
     }
 
     /**
@@ -338,19 +490,7 @@ public class SurveyServiceImpl implements SurveyService {
     @Override
     public List<SurveyQuestion> getUnansweredSurveyQuestions(Long userId, Long surveyId, Locale locale, Integer max) {
         final String language = locale.getLanguage().toUpperCase();
-        Map<String, Object> result = new SimpleJdbcCall(dataSource)
-                .withCatalogName("Q_SURVEY_PKG")
-                .withProcedureName("GET_QUESTIONS")
-                .declareParameters(
-                        new SqlOutParameter("CUR", OracleTypes.CURSOR, (rs, i) ->
-                                new SurveyQuestion(rs.getLong("ID"),
-                                        rs.getString("NAME"),
-                                        rs.getInt("ANSWER_SEC"))),
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_LIST", Types.BIGINT),
-                        new SqlParameter("PLOCALE", Types.VARCHAR),
-                        new SqlParameter("PCOUNT", Types.INTEGER))
-                .execute(new MapSqlParameterSource()
+        Map<String, Object> result = getQuestionsCall.execute(new MapSqlParameterSource()
                         .addValue("PID_USER", userId)
                         .addValue("PID_LIST", surveyId)
                         .addValue("PLOCALE", language)
@@ -368,15 +508,7 @@ public class SurveyServiceImpl implements SurveyService {
      */
     @Override
     public Map<String, Object> getRemainsQuestionsWithTime(Long userId, Long surveyId) {
-        return new SimpleJdbcCall(dataSource)
-                .withCatalogName("Q_SURVEY_PKG")
-                .withProcedureName("GET_QUESTIONS_REMAINS_SEC")
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_LIST", Types.BIGINT),
-                        new SqlOutParameter("PCOUNT", Types.BIGINT),
-                        new SqlOutParameter("PANSWER_SEC", Types.BIGINT))
-                .execute(new MapSqlParameterSource()
+        return getQuestionsRemainsWithTimeCall.execute(new MapSqlParameterSource()
                         .addValue("PID_USER", userId)
                         .addValue("PID_LIST", surveyId));
     }
@@ -390,13 +522,7 @@ public class SurveyServiceImpl implements SurveyService {
      */
     @Override
     public Integer getRemainsQuestionsCount(Long userId, Long surveyId) {
-        BigDecimal result = new SimpleJdbcCall(dataSource)
-                .withCatalogName("Q_SURVEY_PKG")
-                .withFunctionName("GET_QUESTIONS_REMAINS")
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_LIST", Types.BIGINT))
-                .executeFunction(BigDecimal.class, new MapSqlParameterSource()
+        BigDecimal result = getQuestionsRemainsCall.executeFunction(BigDecimal.class, new MapSqlParameterSource()
                         .addValue("PID_USER", userId)
                         .addValue("PID_LIST", surveyId));
 
@@ -405,6 +531,8 @@ public class SurveyServiceImpl implements SurveyService {
 
     /**
      * Ответить на вопросы
+     * (все ответы сохраняются одним пакетом в одной транзакции,
+     * ответы, которые не удалось сохранить пакетом, сохраняются по одному)
      *
      * @param answers           ответы на вопросы
      * @param userSurveyStateId идентификатор состояния прохождения вопроса
@@ -417,64 +545,230 @@ public class SurveyServiceImpl implements SurveyService {
         if (state == null) {
             return surveyResult;
         }
-        answers = new HashSet<>(answers);
-        answers.stream()
+        final List<SurveyAnswer> userAnswers = new HashSet<>(answers).stream()
                 .filter(a -> state.getUserId().equals(a.getUserId()))
-                .parallel()
-                .forEach(answer -> {
-                    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-                    transactionTemplate.execute(status -> {
-                        try {
-                            long result = answerSurveyQuestion(answer);
-                            if (result > 0) {
-                                QuestionAnswer a = questionAnswerRepository.getOne(result);
-                                checkQuestionAnswerForUploadImage(a);
-                                questionAnswerRepository.save(a);
-                                surveyResult.totalAnswered.getAndIncrement();
-                                surveyResult.appliedAnswerIds.add(answer.getId());
-                            } else if (result == 0) {
-                                surveyResult.totalRepeats.getAndIncrement();
-                                surveyResult.repeatedAnswerIds.add(answer.getId());
-                            } else {
-                                LOGGER.error("Survey answer DB error at: {}", answer);
-                            }
-                        } catch (Exception e) {
-                            LOGGER.error(e.getMessage(), e);
-                            throw new RuntimeException(e);
-                        }
-                        return status;
-                    });
-                });
-//        for (SurveyAnswer answer : answers) {
-//            if (!state.getUserId().equals(answer.getUserId())) {
-//                continue;
-//            }
-//            transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-//            transactionTemplate.execute(status -> {
-//                try {
-//                    long result = answerSurveyQuestion(answer);
-//                    if (result > 0) {
-//                        QuestionAnswer a = questionAnswerRepository.getOne(result);
-//                        checkQuestionAnswerForUploadImage(a);
-//                        questionAnswerRepository.save(a);
-//                        surveyResult.totalAnswered++;
-//                        surveyResult.appliedAnswerIds.add(answer.getId());
-//                    } else if (result == 0) {
-//                        surveyResult.totalRepeats++;
-//                        surveyResult.repeatedAnswerIds.add(answer.getId());
-//                    } else {
-//                        LOGGER.error("Survey answer DB error at: {}", answer);
-//                    }
-//                } catch (Exception e) {
-//                    LOGGER.error(e.getMessage(), e);
-//                    throw new RuntimeException(e);
-//                }
-//                return status;
-//            });
-//        }
+                .collect(Collectors.toList());
+        if (userAnswers.isEmpty()) {
+            return surveyResult;
+        }
+        Map<SurveyAnswer, Long> results;
+        try {
+            results = transactionTemplate.execute(status -> answerSurveyQuestionsInBatch(userAnswers));
+        } catch (RuntimeException e) {
+            LOGGER.error("Survey answers batch error, fallback to single answers", e);
+            results = Collections.emptyMap();
+        }
+        // ответы, которые не удалось сохранить пакетом, сохраняем отдельно
+        final Map<SurveyAnswer, Long> batchResults = results;
+        List<SurveyAnswer> failedAnswers = userAnswers.stream()
+                .filter(a -> !batchResults.containsKey(a))
+                .collect(Collectors.toList());
+        Map<SurveyAnswer, Long> separateResults = answerSurveyQuestionsSeparately(failedAnswers);
+        for (SurveyAnswer answer : userAnswers) {
+            Long result = batchResults.containsKey(answer) ? batchResults.get(answer) : separateResults.get(answer);
+            if (result > 0) {
+                surveyResult.totalAnswered.getAndIncrement();
+                surveyResult.appliedAnswerIds.add(answer.getId());
+            } else if (result == 0) {
+                surveyResult.totalRepeats.getAndIncrement();
+                surveyResult.repeatedAnswerIds.add(answer.getId());
+            } else {
+                LOGGER.error("Survey answer DB error at: {}", answer);
+                surveyResult.errorAnswerIds.add(answer.getId());
+                if (result == ANSWER_RETRYABLE_ERROR) {
+                    surveyResult.retryableAnswerIds.add(answer.getId());
+                }
+            }
+        }
+        if (surveyResult.totalAnswered.get() > 0) {
+            // принятые ответы меняют результаты сравнения участников опроса
+            researchHistogramStore.invalidateSurvey(state.getSurveyId());
+        }
         return surveyResult;
     }
 
+    /**
+     * Сохранить ответы на вопросы пакетом
+     * (ответы сохраняются анонимными блоками PL/SQL - одно обращение к БД на {@link #SET_ANSWER_BLOCK_SIZE} ответов,
+     * признак загрузки фото для сохраненных ответов проставляется одним запросом)
+     *
+     * @param answers ответы на вопросы
+     * @return результаты сохранения по каждому ответу (см. {@link #answerSurveyQuestion(SurveyAnswer)}),
+     * ответы, которые не удалось сохранить, в результат не попадают
+     * (кроме ответов с некорректными датами - для них возвращается -1 без повторного сохранения)
+     */
+    private Map<SurveyAnswer, Long> answerSurveyQuestionsInBatch(List<SurveyAnswer> answers) {
+        Map<SurveyAnswer, Long> results = new HashMap<>();
+        List<AnswerCall> calls = new ArrayList<>(answers.size());
+        for (SurveyAnswer answer : answers) {
+            try {
+                calls.add(new AnswerCall(answer,
+                        asTimestamp(answer.parseViewDate()),
+                        asTimestamp(answer.parseAnswerDate()),
+                        writeAnswerJson(answer)));
+            } catch (IllegalArgumentException e) {
+                // ошибка в данных ответа - повторное сохранение не поможет
+                LOGGER.warn("Survey answer date error at: {}, {}", answer, e.getMessage());
+                results.put(answer, -1L);
+            } catch (JsonProcessingException e) {
+                LOGGER.warn("Survey answer serialization error at: " + answer, e);
+            }
+        }
+        for (List<AnswerCall> chunk : Lists.partition(calls, SET_ANSWER_BLOCK_SIZE)) {
+            results.putAll(callSetAnswerBlock(chunk));
+        }
+        List<Long> savedIds = results.values().stream()
+                .filter(result -> result > 0)
+                .collect(Collectors.toList());
+        if (!savedIds.isEmpty()) {
+            List<QuestionAnswer> savedAnswers = questionAnswerRepository.findAllById(savedIds);
+            savedAnswers.forEach(this::checkQuestionAnswerForUploadImage);
+            questionAnswerRepository.saveAll(savedAnswers);
+        }
+        return results;
+    }
+
+    /**
+     * Сохранить ответы одним анонимным блоком PL/SQL
+     *
+     * @param calls подготовленные ответы
+     * @return результаты сохранения ответов, сохраненных без ошибок
+     */
+    private Map<SurveyAnswer, Long> callSetAnswerBlock(List<AnswerCall> calls) {
+        CallableStatementCreator creator = connection -> {
+            StringBuilder sql = new StringBuilder("begin\n");
+            for (int i = 0; i < calls.size(); i++) {
+                sql.append(SET_ANSWER_BLOCK_CALL).append('\n');
+            }
+            CallableStatement cs = connection.prepareCall(sql.append("end;").toString());
+            int index = 1;
+            for (AnswerCall call : calls) {
+                cs.registerOutParameter(index++, Types.NUMERIC);
+                cs.setLong(index++, call.answer.getUserId());
+                cs.setLong(index++, call.answer.getId());
+                cs.setInt(index++, call.answer.isAnswer() ? 1 : 0);
+                cs.setTimestamp(index++, call.viewDate);
+                cs.setTimestamp(index++, call.answerDate);
+                cs.setCharacterStream(index++, new StringReader(call.json), call.json.length());
+                cs.registerOutParameter(index++, Types.VARCHAR);
+            }
+            return cs;
+        };
+        CallableStatementCallback<Map<SurveyAnswer, Long>> callback = cs -> {
+            cs.execute();
+            Map<SurveyAnswer, Long> callResults = new HashMap<>();
+            for (int i = 0; i < calls.size(); i++) {
+                final int offset = i * SET_ANSWER_BLOCK_CALL_PARAMETER_COUNT;
+                final SurveyAnswer answer = calls.get(i).answer;
+                final String error = cs.getString(offset + SET_ANSWER_BLOCK_CALL_PARAMETER_COUNT);
+                if (error != null) {
+                    LOGGER.warn("Survey answer batch call error at: {}, {}", answer, error);
+                    continue;
+                }
+                BigDecimal result = cs.getBigDecimal(offset + 1);
+                callResults.put(answer, result != null ? result.longValue() : -1L);
+            }
+            return callResults;
+        };
+        return jdbcTemplate.execute(creator, callback);
+    }
+
+    /**
+     * Сохранить ответы на вопросы по одному
+     * (ответы распределяются между потоками пула обработки ответов,
+     * но не более чем на {@link #maxParallelAnswers} потоков для одного запроса)
+     *
+     * @param answers ответы на вопросы
+     * @return результаты сохранения по каждому ответу (см. {@link #answerSurveyQuestion(SurveyAnswer)})
+     */
+    private Map<SurveyAnswer, Long> answerSurveyQuestionsSeparately(List<SurveyAnswer> answers) {
+        Map<SurveyAnswer, Long> results = new ConcurrentHashMap<>();
+        if (answers.size() <= 1 || maxParallelAnswers <= 1) {
+            answers.forEach(answer -> results.put(answer, answerSurveyQuestionSeparately(answer)));
+            return results;
+        }
+        final int partitionSize = (answers.size() + maxParallelAnswers - 1) / maxParallelAnswers;
+        CompletableFuture<?>[] tasks = Lists.partition(answers, partitionSize).stream()
+                .map(partition -> CompletableFuture.runAsync(
+                        () -> partition.forEach(answer -> results.put(answer, answerSurveyQuestionSeparately(answer))),
+                        surveyAnswerExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(tasks).join();
+        return results;
+    }
+
+    /**
+     * Сохранить ответ на вопрос в отдельной транзакции
+     *
+     * @param answer ответ
+     * @return результат сохранения (см. {@link #answerSurveyQuestion(SurveyAnswer)}),
+     * {@link #ANSWER_RETRYABLE_ERROR} - если ответ не сохранен из-за недоступности БД
+     */
+    private long answerSurveyQuestionSeparately(SurveyAnswer answer) {
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    long result = answerSurveyQuestion(answer);
+                    if (result > 0) {
+                        QuestionAnswer a = questionAnswerRepository.getOne(result);
+                        checkQuestionAnswerForUploadImage(a);
+                        questionAnswerRepository.save(a);
+                    }
+                    return result;
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.error(e.getMessage(), e);
+            return isRetryableError(e) ? ANSWER_RETRYABLE_ERROR : -1L;
+        }
+    }
+
+    /**
+     * Проверка, что ошибка сохранения вызвана недоступностью БД, а не отказом в сохранении ответа
+     *
+     * @param e ошибка сохранения
+     * @return true - если повторное сохранение может быть успешным
+     */
+    private static boolean isRetryableError(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    /**
+     * Сериализация ответа на вопрос в JSON для сохранения в БД
+     * (при включенном компактном хранении показания датчиков, которые можно восстановить из бинарного вида в точности,
+     * записываются в бинарном виде в поля gyro_bin и acel_bin вместо полей gyro и acel)
+     *
+     * @param answer ответ на вопрос
+     * @return ответ в формате JSON
+     * @throws JsonProcessingException
+     */
+    private String writeAnswerJson(SurveyAnswer answer) throws JsonProcessingException {
+        if (!compactTelemetry) {
+            return jsonMapper.writerFor(SurveyAnswer.class).writeValueAsString(answer);
+        }
+        ObjectNode json = jsonMapper.getObjectMapper().valueToTree(answer);
+        SensorSeries gyro = SensorSeries.parse(answer.getGyro());
+        if (gyro != null) {
+            json.remove("gyro");
+            json.put("gyro_bin", gyro.encode());
+        }
+        SensorSeries acel = SensorSeries.parseAccel(answer.getAcel());
+        if (acel != null) {
+            json.remove("acel");
+            json.put("acel_bin", acel.encode());
+        }
+        return jsonMapper.writerFor(ObjectNode.class).writeValueAsString(json);
+    }
+
+    private static Timestamp asTimestamp(Date date) {
+        return date != null ? new Timestamp(date.getTime()) : null;
+    }
+
     /**
      * Проверка, загружалось ли фото для ответа на вопрос
      * (если фото ранее загружалось, то выставляется признак "Фото загружено" для ответа на вопрос)
@@ -548,15 +842,28 @@ public class SurveyServiceImpl implements SurveyService {
     @Transactional
     @Override
     public void saveSurveyError(Long userId, Long surveyId, SurveyError surveyError) {
+        clientErrorRepository.save(buildSurveyError(userId, surveyId, surveyError));
+    }
+
+    /**
+     * Подготовка ошибки клиента при прохождении опроса к сохранению
+     *
+     * @param userId      идентификатор пользователя, проходящего опрос
+     * @param surveyId    идентификатор опроса
+     * @param surveyError модель с текстом ошибки и юзерагентом
+     * @return несохраненная запись ошибки клиента
+     */
+    @Override
+    public ClientError buildSurveyError(Long userId, Long surveyId, SurveyError surveyError) {
         try {
             ClientError clientError = new ClientError();
             clientError.setUserId(userId);
             clientError.setSurveyId(surveyId);
             UIError error = surveyError.getError();
             clientError.setAgent(surveyError.getAgent());
-            clientError.setDescription(new ObjectMapper().writeValueAsString(error));
+            clientError.setDescription(jsonMapper.writerFor(UIError.class).writeValueAsString(error));
             clientError.setDate(new Date());
-            clientErrorRepository.save(clientError);
+            return clientError;
         } catch (JsonProcessingException ex) {
             LOGGER.error(ex.getMessage(), ex);
             throw new RuntimeException(ex);
@@ -575,6 +882,7 @@ public class SurveyServiceImpl implements SurveyService {
         UserSurveyState state = userSurveyStateRepository.findById(surveyStateId).get();
         state.setLongitude(location.getLongitude());
         state.setLatitude(location.getLatitude());
+        surveySessionService.invalidateState(surveyStateId);
     }
 
     /**
@@ -647,26 +955,40 @@ public class SurveyServiceImpl implements SurveyService {
      * @return > 0 - идентификатор сохраненной записи
      * = 0 - ответ уже был принят заранее
      * = -1 - ошибка сохранения в БД
-     * @throws ParseException
+     * @throws IllegalArgumentException если дата в ответе не соответствует формату
      * @throws JsonProcessingException
      */
-    private long answerSurveyQuestion(SurveyAnswer answer) throws ParseException, JsonProcessingException {
-        return new SimpleJdbcCall(dataSource)
-                .withCatalogName("Q_SURVEY_PKG")
-                .withFunctionName("SET_ANSWER")
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_ITEM", Types.BIGINT),
-                        new SqlParameter("PANSWER", Types.INTEGER),
-                        new SqlParameter("PDT_VIEW", Types.TIMESTAMP),
-                        new SqlParameter("PDT_ANSWER", Types.TIMESTAMP),
-                        new SqlParameter("PJSON", Types.CLOB))
-                .executeFunction(BigDecimal.class, new MapSqlParameterSource()
+    private long answerSurveyQuestion(SurveyAnswer answer) throws JsonProcessingException {
+        return setAnswerCall.executeFunction(BigDecimal.class, new MapSqlParameterSource()
                         .addValue("PID_USER", answer.getUserId())
                         .addValue("PID_ITEM", answer.getId())
                         .addValue("PANSWER", answer.isAnswer() ? 1 : 0)
-                        .addValue("PDT_VIEW", isNotBlank(answer.getViewDate()) ? new SimpleDateFormat("dd.MM.yyyy'T'HH:mm:ss:SSS").parse(answer.getViewDate()) : null)
-                        .addValue("PDT_ANSWER", isNotBlank(answer.getAnswerDate()) ? new SimpleDateFormat("dd.MM.yyyy'T'HH:mm:ss:SSS").parse(answer.getAnswerDate()) : null)
-                        .addValue("PJSON", new ObjectMapper().writeValueAsString(answer))).longValue();
+                        .addValue("PDT_VIEW", answer.parseViewDate())
+                        .addValue("PDT_ANSWER", answer.parseAnswerDate())
+                        .addValue("PJSON", writeAnswerJson(answer))).longValue();
+    }
+
+    /**
+     * Подготовленный к сохранению ответ на вопрос
+     */
+    private static final class AnswerCall {
+
+        private final SurveyAnswer answer;
+
+        private final Timestamp viewDate;
+
+        private final Timestamp answerDate;
+
+        /**
+         * Ответ в формате JSON
+         */
+        private final String json;
+
+        AnswerCall(SurveyAnswer answer, Timestamp viewDate, Timestamp answerDate, String json) {
+            this.answer = answer;
+            this.viewDate = viewDate;
+            this.answerDate = answerDate;
+            this.json = json;
+        }
     }
 }
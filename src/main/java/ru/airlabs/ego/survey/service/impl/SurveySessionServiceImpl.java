@@ -0,0 +1,253 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.airlabs.ego.core.entity.Organization;
+import ru.airlabs.ego.core.entity.User;
+import ru.airlabs.ego.core.entity.UserSurveyState;
+import ru.airlabs.ego.core.entity.Vacancy;
+import ru.airlabs.ego.core.repository.OrganizationRepository;
+import ru.airlabs.ego.core.repository.UserRepository;
+import ru.airlabs.ego.core.repository.UserSurveyStateRepository;
+import ru.airlabs.ego.survey.dto.survey.SurveySession;
+import ru.airlabs.ego.survey.dto.vacancy.VacancyMethodology;
+import ru.airlabs.ego.survey.service.SurveySessionService;
+import ru.airlabs.ego.survey.service.VacancyService;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис для получения данных сессии прохождения опроса
+ * (вакансии, организации, состояния прохождения опроса и пользователи кэшируются на короткое время,
+ * т.к. во время прохождения опроса клиент многократно запрашивает одни и те же данные)
+ * <p>
+ * Сервис не транзакционный, поэтому в кэш попадают отсоединенные от контекста персистентности сущности.
+ * Они разделяются между запросами и только читаются, изменения сохраняются через заново прочитанную сущность.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Service("surveySessionService")
+public class SurveySessionServiceImpl implements SurveySessionService {
+
+    /**
+     * Сервис вакансий
+     * (сервис вакансий сам удаляет вакансии из этого кэша, поэтому внедряется отложенно)
+     */
+    @Lazy
+    @Autowired
+    private VacancyService vacancyService;
+
+    /**
+     * Репозиторий состояния прохождения опроса пользователем
+     */
+    @Autowired
+    private UserSurveyStateRepository userSurveyStateRepository;
+
+    /**
+     * Репозиторий пользователя
+     */
+    @Autowired
+    private UserRepository userRepository;
+
+    /**
+     * Репозиторий организаций
+     */
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    /**
+     * Время хранения данных в кэше (в секундах)
+     */
+    @Value("${surveySession.cache.ttl}")
+    private long cacheTtl;
+
+    /**
+     * Максимальное кол-во записей в кэше
+     */
+    @Value("${surveySession.cache.maxSize}")
+    private long cacheMaxSize;
+
+    /**
+     * Кэш вакансий (ключ - идентификатор вакансии)
+     */
+    private Cache<Long, VacancyEntry> vacancyCache;
+
+    /**
+     * Кэш состояний прохождения опроса (ключ - идентификатор состояния)
+     */
+    private Cache<Long, UserSurveyState> stateCache;
+
+    /**
+     * Кэш пользователей (ключ - идентификатор пользователя)
+     */
+    private Cache<Long, User> userCache;
+
+    /**
+     * Кэш организаций (ключ - идентификатор менеджера, отсутствие организации тоже кэшируется)
+     */
+    private Cache<Long, Optional<Organization>> organizationCache;
+
+    @PostConstruct
+    public void init() {
+        vacancyCache = buildCache();
+        stateCache = buildCache();
+        userCache = buildCache();
+        organizationCache = buildCache();
+    }
+
+    private <V> Cache<Long, V> buildCache() {
+        return CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
+
+    /**
+     * Получить сессию прохождения опроса
+     *
+     * @param vacancyId     идентификатор вакансии (может быть не задан)
+     * @param surveyStateId идентификатор состояния прохождения опроса
+     * @return сессия прохождения опроса или null, если вакансия, состояние или пользователь не найдены
+     */
+    @Override
+    public SurveySession getSession(Long vacancyId, Long surveyStateId) {
+        VacancyEntry vacancyEntry = null;
+        if (vacancyId != null) {
+            vacancyEntry = getVacancyEntry(vacancyId);
+            if (vacancyEntry == null) {
+                return null;
+            }
+        }
+        UserSurveyState state = getState(surveyStateId);
+        if (state == null) {
+            return null;
+        }
+        User user = getUser(state.getUserId());
+        if (user == null) {
+            return null;
+        }
+        return new SurveySession(vacancyEntry != null ? vacancyEntry.vacancy : null,
+                vacancyEntry != null ? vacancyEntry.methodology : null,
+                state,
+                user);
+    }
+
+    /**
+     * Получить организацию менеджера
+     *
+     * @param managerId идентификатор менеджера
+     * @return организация или null, если у менеджера нет организации
+     */
+    @Override
+    public Organization getOrganization(Long managerId) {
+        Optional<Organization> organization = organizationCache.getIfPresent(managerId);
+        if (organization == null) {
+            organization = Optional.ofNullable(organizationRepository.findByManagerId(managerId));
+            organizationCache.put(managerId, organization);
+        }
+        return organization.orElse(null);
+    }
+
+    @Override
+    public void invalidateVacancy(Long vacancyId) {
+        invalidateAfterCommit(vacancyCache, vacancyId);
+    }
+
+    @Override
+    public void invalidateState(Long surveyStateId) {
+        invalidateAfterCommit(stateCache, surveyStateId);
+    }
+
+    @Override
+    public void invalidateUser(Long userId) {
+        invalidateAfterCommit(userCache, userId);
+    }
+
+    @Override
+    public void invalidateOrganization(Long managerId) {
+        invalidateAfterCommit(organizationCache, managerId);
+    }
+
+    /**
+     * Удалить запись из кэша
+     * (внутри транзакции запись удаляется сразу и еще раз после фиксации транзакции,
+     * чтобы параллельный запрос не вернул в кэш незафиксированные данные)
+     *
+     * @param cache кэш
+     * @param key   ключ записи
+     */
+    private static void invalidateAfterCommit(Cache<Long, ?> cache, Long key) {
+        if (key == null) {
+            return;
+        }
+        cache.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(key);
+                }
+            });
+        }
+    }
+
+    private VacancyEntry getVacancyEntry(Long vacancyId) {
+        VacancyEntry entry = vacancyCache.getIfPresent(vacancyId);
+        if (entry == null) {
+            Vacancy vacancy = vacancyService.findById(vacancyId);
+            if (vacancy == null) {
+                return null;
+            }
+            entry = new VacancyEntry(vacancy, vacancyService.detectMethodology(vacancy.getSurveyId()));
+            vacancyCache.put(vacancyId, entry);
+        }
+        return entry;
+    }
+
+    private UserSurveyState getState(Long surveyStateId) {
+        UserSurveyState state = stateCache.getIfPresent(surveyStateId);
+        if (state == null) {
+            state = userSurveyStateRepository.findById(surveyStateId).orElse(null);
+            if (state == null) {
+                return null;
+            }
+            stateCache.put(surveyStateId, state);
+        }
+        return state;
+    }
+
+    private User getUser(Long userId) {
+        User user = userCache.getIfPresent(userId);
+        if (user == null) {
+            user = userRepository.findById(userId).orElse(null);
+            if (user == null) {
+                return null;
+            }
+            userCache.put(userId, user);
+        }
+        return user;
+    }
+
+    /**
+     * Запись кэша вакансий
+     */
+    private static class VacancyEntry {
+
+        private final Vacancy vacancy;
+
+        private final VacancyMethodology methodology;
+
+        VacancyEntry(Vacancy vacancy, VacancyMethodology methodology) {
+            this.vacancy = vacancy;
+            this.methodology = methodology;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.airlabs.ego.core.entity.UserSurveyState;
+import ru.airlabs.ego.core.entity.device.UserDeviceInfo;
+import ru.airlabs.ego.core.entity.util.ClientError;
+import ru.airlabs.ego.core.repository.UserSurveyStateRepository;
+import ru.airlabs.ego.core.repository.device.UserDeviceInfoRepository;
+import ru.airlabs.ego.core.repository.util.ClientErrorRepository;
+import ru.airlabs.ego.survey.dto.device.DeviceInfo;
+import ru.airlabs.ego.survey.dto.survey.SurveyError;
+import ru.airlabs.ego.survey.dto.survey.SurveyStateLocation;
+import ru.airlabs.ego.survey.service.SurveyService;
+import ru.airlabs.ego.survey.service.SurveySessionService;
+import ru.airlabs.ego.survey.service.TelemetryService;
+import ru.airlabs.ego.survey.service.UserDeviceInfoService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Сервис приема телеметрии клиентов опросов
+ * <p>
+ * В асинхронном режиме записи (данные по устройствам, ошибки клиентов, геолокация) складываются
+ * в ограниченную очередь в памяти, а фоновый поток сохраняет их в БД пакетами (одна транзакция на пакет,
+ * вставки выполняются пакетами JDBC Hibernate) - по истечении интервала или при накоплении пакета.
+ * Если пакет не удалось сохранить, его записи сохраняются по отдельности, чтобы одна ошибочная запись
+ * не отменяла сохранение остальных.
+ * Обновления геолокации одного состояния прохождения опроса внутри пакета объединяются (сохраняется последнее).
+ * При заполнении очереди новые записи отбрасываются (телеметрия не должна задерживать ответы на вопросы),
+ * при остановке приложения накопленные записи сохраняются.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Service("telemetryService")
+public class TelemetryServiceImpl implements TelemetryService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TelemetryServiceImpl.class);
+
+    /**
+     * Кол-во отброшенных записей, через которое повторяется предупреждение в логе
+     */
+    private static final long DROP_WARNING_INTERVAL = 1000;
+
+    @Autowired
+    private UserDeviceInfoService deviceInfoService;
+
+    @Autowired
+    private SurveyService surveyService;
+
+    @Autowired
+    private UserDeviceInfoRepository deviceInfoRepository;
+
+    @Autowired
+    private ClientErrorRepository clientErrorRepository;
+
+    @Autowired
+    private UserSurveyStateRepository userSurveyStateRepository;
+
+    @Autowired
+    private SurveySessionService surveySessionService;
+
+    /**
+     * Признак асинхронного режима сохранения телеметрии
+     */
+    @Value("${telemetry.async.enabled}")
+    private boolean asyncEnabled;
+
+    /**
+     * Максимальное кол-во записей, ожидающих сохранения
+     */
+    @Value("${telemetry.async.queueSize}")
+    private int queueSize;
+
+    /**
+     * Кол-во записей, сохраняемых в одной транзакции
+     */
+    @Value("${telemetry.async.batchSize}")
+    private int batchSize;
+
+    /**
+     * Интервал сохранения накопленных записей (в миллисекундах)
+     */
+    @Value("${telemetry.async.flushInterval}")
+    private long flushInterval;
+
+    /**
+     * Движок управления транзакциями
+     */
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Записи, ожидающие сохранения
+     */
+    private BlockingQueue<TelemetryRecord> queue;
+
+    /**
+     * Признак запланированного (по накоплению пакета) сохранения
+     */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong saved = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public void setPlatformTransactionManager(PlatformTransactionManager platformTransactionManager) {
+        this.transactionTemplate = new TransactionTemplate(platformTransactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!asyncEnabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("telemetry-flusher").setDaemon(true).build());
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushInterval * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();    // сохранение записей, принятых после последнего сохранения
+        LOGGER.info("Telemetry stopped: accepted {}, saved {}, coalesced {}, dropped {}, failed {}",
+                accepted.get(), saved.get(), coalesced.get(), dropped.get(), failed.get());
+    }
+
+    @Override
+    public void saveDeviceInfo(Long vacancyId, Long userId, Long surveyId, DeviceInfo deviceInfo, String logType) {
+        if (!asyncEnabled) {
+            deviceInfoService.saveDeviceInfo(vacancyId, userId, surveyId, deviceInfo, logType);
+            return;
+        }
+        offer(new TelemetryRecord(deviceInfoService.buildDeviceInfo(vacancyId, userId, surveyId, deviceInfo, logType)));
+    }
+
+    @Override
+    public void saveSurveyError(Long userId, Long surveyId, SurveyError surveyError) {
+        if (!asyncEnabled) {
+            surveyService.saveSurveyError(userId, surveyId, surveyError);
+            return;
+        }
+        offer(new TelemetryRecord(surveyService.buildSurveyError(userId, surveyId, surveyError)));
+    }
+
+    @Override
+    public void saveSurveyLocation(Long surveyStateId, SurveyStateLocation location) {
+        if (!asyncEnabled) {
+            surveyService.saveSurveyLocation(surveyStateId, location);
+            return;
+        }
+        offer(new TelemetryRecord(surveyStateId, location));
+    }
+
+    /**
+     * Поставить запись в очередь на сохранение
+     *
+     * @param record запись телеметрии
+     */
+    private void offer(TelemetryRecord record) {
+        if (!queue.offer(record)) {
+            long count = dropped.incrementAndGet();
+            if (count % DROP_WARNING_INTERVAL == 1) {
+                LOGGER.warn("Telemetry queue is full ({} records), records dropped so far: {}", queueSize, count);
+            }
+            return;
+        }
+        accepted.incrementAndGet();
+        if (queue.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {    // приложение останавливается - записи сохранятся при остановке
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Сохранить накопленные записи в БД (пакетами)
+     * (если пакет не удалось сохранить в одной транзакции - записи пакета сохраняются по отдельности)
+     */
+    private void flush() {
+        flushRequested.set(false);
+        List<TelemetryRecord> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            List<TelemetryRecord> records = coalesce(batch);
+            try {
+                transactionTemplate.execute(status -> {
+                    saveRecords(records);
+                    return null;
+                });
+                saved.addAndGet(records.size());
+                markDeviceInfosSaved(records);
+            } catch (Exception e) {
+                LOGGER.error("Telemetry batch of " + records.size() + " records was not saved, fallback to single records", e);
+                saveSeparately(records);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Объединить обновления геолокации одного состояния прохождения опроса (сохраняется последнее)
+     *
+     * @param batch пакет записей
+     * @return записи для сохранения
+     */
+    private List<TelemetryRecord> coalesce(List<TelemetryRecord> batch) {
+        List<TelemetryRecord> records = new ArrayList<>(batch.size());
+        Map<Long, TelemetryRecord> locations = new LinkedHashMap<>();
+        for (TelemetryRecord record : batch) {
+            if (record.deviceInfo != null || record.clientError != null) {
+                records.add(record);
+            } else if (locations.put(record.surveyStateId, record) != null) {
+                coalesced.incrementAndGet();
+            }
+        }
+        records.addAll(locations.values());
+        return records;
+    }
+
+    /**
+     * Сохранить записи по отдельности (каждую в своей транзакции)
+     *
+     * @param records записи
+     */
+    private void saveSeparately(List<TelemetryRecord> records) {
+        for (TelemetryRecord record : records) {
+            try {
+                transactionTemplate.execute(status -> {
+                    saveRecords(singletonList(record));
+                    return null;
+                });
+                saved.incrementAndGet();
+                markDeviceInfosSaved(singletonList(record));
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                LOGGER.error("Telemetry record was not saved", e);
+            }
+        }
+    }
+
+    /**
+     * Запомнить сохраненные данные по устройствам (после фиксации транзакции)
+     *
+     * @param records сохраненные записи
+     */
+    private void markDeviceInfosSaved(List<TelemetryRecord> records) {
+        for (TelemetryRecord record : records) {
+            if (record.deviceInfo != null) {
+                deviceInfoService.markDeviceInfoSaved(record.deviceInfo.getUserId(), record.deviceInfo.getSurveyId());
+            }
+        }
+    }
+
+    /**
+     * Сохранить записи в текущей транзакции
+     *
+     * @param records записи (без повторов геолокации одного состояния прохождения опроса)
+     */
+    private void saveRecords(List<TelemetryRecord> records) {
+        List<UserDeviceInfo> deviceInfos = new ArrayList<>();
+        List<ClientError> clientErrors = new ArrayList<>();
+        Map<Long, SurveyStateLocation> locations = new LinkedHashMap<>();
+        for (TelemetryRecord record : records) {
+            if (record.deviceInfo != null) {
+                deviceInfos.add(record.deviceInfo);
+            } else if (record.clientError != null) {
+                clientErrors.add(record.clientError);
+            } else {
+                locations.put(record.surveyStateId, record.location);
+            }
+        }
+        if (!deviceInfos.isEmpty()) {
+            deviceInfoRepository.saveAll(deviceInfos);
+        }
+        if (!clientErrors.isEmpty()) {
+            clientErrorRepository.saveAll(clientErrors);
+        }
+        if (!locations.isEmpty()) {
+            for (UserSurveyState state : userSurveyStateRepository.findAllById(locations.keySet())) {
+                SurveyStateLocation location = locations.get(state.getId());
+                state.setLongitude(location.getLongitude());
+                state.setLatitude(location.getLatitude());
+                surveySessionService.invalidateState(state.getId());
+            }
+        }
+    }
+
+    /**
+     * Запись телеметрии (заполнено одно из: данные по устройству, ошибка клиента, геолокация)
+     */
+    private static final class TelemetryRecord {
+
+        private final UserDeviceInfo deviceInfo;
+
+        private final ClientError clientError;
+
+        private final Long surveyStateId;
+
+        private final SurveyStateLocation location;
+
+        TelemetryRecord(UserDeviceInfo deviceInfo) {
+            this(deviceInfo, null, null, null);
+        }
+
+        TelemetryRecord(ClientError clientError) {
+            this(null, clientError, null, null);
+        }
+
+        TelemetryRecord(Long surveyStateId, SurveyStateLocation location) {
+            this(null, null, surveyStateId, location);
+        }
+
+        private TelemetryRecord(UserDeviceInfo deviceInfo, ClientError clientError,
+                                Long surveyStateId, SurveyStateLocation location) {
+            this.deviceInfo = deviceInfo;
+            this.clientError = clientError;
+            this.surveyStateId = surveyStateId;
+            this.location = location;
+        }
+    }
+}
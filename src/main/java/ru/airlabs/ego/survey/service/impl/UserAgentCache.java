@@ -0,0 +1,198 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.sf.uadetector.ReadableDeviceCategory;
+import net.sf.uadetector.ReadableUserAgent;
+import net.sf.uadetector.UserAgentStringParser;
+import net.sf.uadetector.service.UADetectorServiceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш результатов разбора юзерагентов
+ * <p>
+ * Юзерагенты разбираются одним общим парсером, результат разбора запоминается по строке юзерагента
+ * (клиенты опросов присылают в основном одни и те же строки).
+ * При превышении максимального кол-ва записей вытесняются давно не использовавшиеся.
+ * Статистика попаданий в кэш периодически выводится в лог.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("userAgentCache")
+public class UserAgentCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserAgentCache.class);
+
+    /**
+     * Тип устройства (Desktop)
+     */
+    private static final String DESKTOP_DEVICE_TYPE = "D";
+
+    /**
+     * Тип устройства (Mobile)
+     */
+    private static final String MOBILE_DEVICE_TYPE = "M";
+
+    /**
+     * Максимальное кол-во запомненных юзерагентов
+     */
+    @Value("${userAgent.cache.maxSize}")
+    private long cacheMaxSize;
+
+    /**
+     * Интервал вывода статистики кэша в лог (в секундах, 0 - вывод отключен)
+     */
+    @Value("${userAgent.cache.statsInterval}")
+    private long statsInterval;
+
+    /**
+     * Парсер юзерагентов
+     */
+    private UserAgentStringParser parser;
+
+    /**
+     * Результаты разбора (ключ - строка юзерагента)
+     */
+    private LoadingCache<String, UserAgentInfo> agents;
+
+    private ScheduledExecutorService statsLogger;
+
+    @PostConstruct
+    public void init() {
+        parser = UADetectorServiceFactory.getResourceModuleParser();
+        agents = CacheBuilder.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .recordStats()
+                .build(CacheLoader.from(this::parse));
+        if (statsInterval > 0) {
+            statsLogger = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("user-agent-cache-stats").setDaemon(true).build());
+            statsLogger.scheduleWithFixedDelay(this::logStats, statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (statsLogger != null) {
+            statsLogger.shutdownNow();
+        }
+        logStats();
+    }
+
+    /**
+     * Получить результат разбора юзерагента
+     *
+     * @param agent строка юзерагента (не пустая)
+     * @return результат разбора
+     */
+    public UserAgentInfo get(String agent) {
+        return agents.getUnchecked(agent);
+    }
+
+    /**
+     * Получить статистику кэша
+     *
+     * @return статистика (попадания, промахи, время разбора, вытеснения)
+     */
+    public CacheStats getStats() {
+        return agents.stats();
+    }
+
+    /**
+     * Разобрать юзерагент
+     *
+     * @param agent строка юзерагента
+     * @return результат разбора
+     */
+    private UserAgentInfo parse(String agent) {
+        ReadableUserAgent userAgent = parser.parse(agent);
+        return new UserAgentInfo(userAgent.getName(),
+                detectOperationSystemWithVersionFromAgent(userAgent),
+                detectDeviceTypeFromAgent(userAgent));
+    }
+
+    private void logStats() {
+        CacheStats stats = agents.stats();
+        LOGGER.info("User agent cache: size {}, hits {}, misses {}, hit rate {}, evictions {}, average parse time {} us",
+                agents.size(), stats.hitCount(), stats.missCount(), String.format("%.3f", stats.hitRate()),
+                stats.evictionCount(), TimeUnit.NANOSECONDS.toMicros((long) stats.averageLoadPenalty()));
+    }
+
+    /**
+     * Определение типа устройства по значению юзерагента
+     *
+     * @param userAgent юзерагент
+     * @return тип устройства
+     */
+    private static String detectDeviceTypeFromAgent(ReadableUserAgent userAgent) {
+        ReadableDeviceCategory.Category category = userAgent.getDeviceCategory().getCategory();
+        if (category == ReadableDeviceCategory.Category.UNKNOWN) return null;
+        if (category != ReadableDeviceCategory.Category.PERSONAL_COMPUTER) {
+            return MOBILE_DEVICE_TYPE;
+        } else {
+            return DESKTOP_DEVICE_TYPE;
+        }
+    }
+
+    /**
+     * Определение операционной системы и версии по значению юзерагента
+     *
+     * @param userAgent юзерагент
+     * @return тип операционной системы + номер версии
+     */
+    private static String detectOperationSystemWithVersionFromAgent(ReadableUserAgent userAgent) {
+        return userAgent.getOperatingSystem().getName() + " " +
+                userAgent.getOperatingSystem().getVersionNumber().toVersionString();
+    }
+
+    /**
+     * Результат разбора юзерагента
+     */
+    public static final class UserAgentInfo {
+
+        /**
+         * Устройство (браузер)
+         */
+        private final String device;
+
+        /**
+         * Операционная система + номер версии
+         */
+        private final String os;
+
+        /**
+         * Тип устройства (D - Desktop, M - Mobile, null - не определен)
+         */
+        private final String deviceType;
+
+        UserAgentInfo(String device, String os, String deviceType) {
+            this.device = device;
+            this.os = os;
+            this.deviceType = deviceType;
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public String getOs() {
+            return os;
+        }
+
+        public String getDeviceType() {
+            return deviceType;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import ru.airlabs.ego.core.repository.VacancyUserRepository;
 import ru.airlabs.ego.survey.dto.user.UserDetail;
 import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
 import ru.airlabs.ego.survey.service.ImageUploadService;
+import ru.airlabs.ego.survey.service.SurveySessionService;
 import ru.airlabs.ego.survey.service.UserDetailsService;
 
 import javax.persistence.EntityManager;
@@ -57,6 +58,12 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private VacancyUserRepository vacancyUserRepository;
 
+    /**
+     * Сервис сессии прохождения опроса (кэширует пользователей)
+     */
+    @Autowired
+    private SurveySessionService surveySessionService;
+
     @PersistenceContext
     private EntityManager em;
 
@@ -148,6 +155,7 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         }
         user.setName(userDetail.getName());
         user.setPhone(userDetail.getPhone());
+        surveySessionService.invalidateUser(userId);
     }
 
     /**
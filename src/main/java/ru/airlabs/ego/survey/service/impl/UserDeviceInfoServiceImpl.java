@@ -1,18 +1,24 @@
 package ru.airlabs.ego.survey.service.impl;
 
-import net.sf.uadetector.ReadableDeviceCategory;
-import net.sf.uadetector.ReadableUserAgent;
-import net.sf.uadetector.UserAgentStringParser;
-import net.sf.uadetector.service.UADetectorServiceFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.airlabs.ego.core.entity.device.UserDeviceInfo;
 import ru.airlabs.ego.core.repository.device.UserDeviceInfoRepository;
 import ru.airlabs.ego.survey.dto.device.DeviceInfo;
 import ru.airlabs.ego.survey.service.UserDeviceInfoService;
+import ru.airlabs.ego.survey.service.impl.UserAgentCache.UserAgentInfo;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
@@ -21,20 +27,45 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 public class UserDeviceInfoServiceImpl implements UserDeviceInfoService {
 
     /**
-     * Тип устройства (Desktop)
+     * Репозиторий данных по устройству клиента
      */
-    private static final String DESKTOP_DEVICE_TYPE = "D";
+    @Autowired
+    private UserDeviceInfoRepository deviceInfoRepository;
 
     /**
-     * Тип устройства (Mobile)
+     * Кэш результатов разбора юзерагентов
      */
-    private static final String MOBILE_DEVICE_TYPE = "M";
+    @Autowired
+    private UserAgentCache userAgentCache;
+
+    @PersistenceContext
+    private EntityManager em;
 
     /**
-     * Репозиторий данных по устройству клиента
+     * Время хранения признака после последнего обращения (в секундах)
      */
-    @Autowired
-    private UserDeviceInfoRepository deviceInfoRepository;
+    @Value("${deviceInfo.cache.ttl}")
+    private long cacheTtl;
+
+    /**
+     * Максимальное кол-во хранимых признаков
+     */
+    @Value("${deviceInfo.cache.maxSize}")
+    private long cacheMaxSize;
+
+    /**
+     * Пары (пользователь, опрос), для которых данные по устройству уже сохранялись
+     * (ключ - идентификаторы пользователя и опроса)
+     */
+    private Cache<String, Boolean> knownDeviceInfos;
+
+    @PostConstruct
+    public void init() {
+        knownDeviceInfos = CacheBuilder.newBuilder()
+                .expireAfterAccess(cacheTtl, TimeUnit.SECONDS)
+                .maximumSize(cacheMaxSize)
+                .build();
+    }
 
     /**
      * Сохранение данных по устройству пользователя
@@ -52,7 +83,35 @@ public class UserDeviceInfoServiceImpl implements UserDeviceInfoService {
                                Long surveyId,
                                DeviceInfo deviceInfo,
                                String logType) {
+        deviceInfoRepository.save(buildDeviceInfo(vacancyId, userId, surveyId, deviceInfo, logType));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    markDeviceInfoSaved(userId, surveyId);
+                }
+            });
+        } else {
+            markDeviceInfoSaved(userId, surveyId);
+        }
+    }
 
+    /**
+     * Подготовка данных по устройству пользователя к сохранению (с разбором юзерагента)
+     *
+     * @param vacancyId  идентификатор вакансии
+     * @param userId     идентификатор пользователя
+     * @param surveyId   идентификатор опроса
+     * @param deviceInfo данные по устройству пользователя
+     * @param logType    тип записи
+     * @return несохраненная запись с данными по устройству
+     */
+    @Override
+    public UserDeviceInfo buildDeviceInfo(Long vacancyId,
+                                          Long userId,
+                                          Long surveyId,
+                                          DeviceInfo deviceInfo,
+                                          String logType) {
         UserDeviceInfo info = new UserDeviceInfo();
         info.setUserId(userId);
         info.setSurveyId(surveyId);
@@ -64,54 +123,58 @@ public class UserDeviceInfoServiceImpl implements UserDeviceInfoService {
         info.setLogType(logType);
 
         if (isNotBlank(deviceInfo.getAgent())) {    // делаем разбор юзерагента
-            UserAgentStringParser parser = UADetectorServiceFactory.getResourceModuleParser();
-            ReadableUserAgent agent = parser.parse(deviceInfo.getAgent());
+            UserAgentInfo agent = userAgentCache.get(deviceInfo.getAgent());
 
-            info.setDevice(agent.getName());
-            info.setOs(detectOperationSystemWithVersionFromAgent(agent));
+            info.setDevice(agent.getDevice());
+            info.setOs(agent.getOs());
             info.setAgent(deviceInfo.getAgent());
-            info.setDeviceType(detectDeviceTypeFromAgent(agent));
+            info.setDeviceType(agent.getDeviceType());
         }
-        deviceInfoRepository.save(info);
+        return info;
     }
 
     /**
-     * Метод проверяющий сохранялась ли информация по устройству пользователя, проходящего опрос
+     * Запомнить, что данные по устройству пользователя, проходящего опрос, сохранены
      *
      * @param userId   идентификатор пользователя
      * @param surveyId идентификатор опроса
-     * @return true - если информация по устройству сохранялась ранее, иначе - false
      */
     @Override
-    public Boolean existsDeviceInfo(Long userId, Long surveyId) {
-        return deviceInfoRepository.findAllByUserIdAndSurveyId(userId, surveyId).size() > 0;
+    public void markDeviceInfoSaved(Long userId, Long surveyId) {
+        if (userId != null && surveyId != null) {
+            knownDeviceInfos.put(buildKey(userId, surveyId), Boolean.TRUE);
+        }
     }
 
     /**
-     * Определение типа устройства по значению юзерагента
+     * Метод проверяющий сохранялась ли информация по устройству пользователя, проходящего опрос
+     * (сначала проверяются запомненные пары, иначе в БД проверяется наличие хотя бы одной записи)
      *
-     * @param userAgent юзерагент
-     * @return тип устройства
+     * @param userId   идентификатор пользователя
+     * @param surveyId идентификатор опроса
+     * @return true - если информация по устройству сохранялась ранее, иначе - false
      */
-    private String detectDeviceTypeFromAgent(ReadableUserAgent userAgent) {
-        ReadableDeviceCategory.Category category = userAgent.getDeviceCategory().getCategory();
-        if (category == ReadableDeviceCategory.Category.UNKNOWN) return null;
-        if (category != ReadableDeviceCategory.Category.PERSONAL_COMPUTER) {
-            return MOBILE_DEVICE_TYPE;
-        } else {
-            return DESKTOP_DEVICE_TYPE;
+    @Override
+    public Boolean existsDeviceInfo(Long userId, Long surveyId) {
+        final String key = buildKey(userId, surveyId);
+        if (knownDeviceInfos.getIfPresent(key) != null) {
+            return true;
         }
+        boolean exists = !em.createQuery("select 1 from " + UserDeviceInfo.class.getName() +
+                " d where d.userId = :userId and d.surveyId = :surveyId")
+                .setParameter("userId", userId)
+                .setParameter("surveyId", surveyId)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+        if (exists) {   // отсутствие записи не запоминается - она может быть сохранена на другом сервере
+            knownDeviceInfos.put(key, Boolean.TRUE);
+        }
+        return exists;
     }
 
-    /**
-     * Определение операционной системы и версии по значению юзерагента
-     *
-     * @param userAgent юзерагент
-     * @return тип операционной системы + номер версии
-     */
-    private String detectOperationSystemWithVersionFromAgent(ReadableUserAgent userAgent) {
-        return userAgent.getOperatingSystem().getName() + " " +
-                userAgent.getOperatingSystem().getVersionNumber().toVersionString();
+    private static String buildKey(Long userId, Long surveyId) {
+        return userId + ":" + surveyId;
     }
 
 }
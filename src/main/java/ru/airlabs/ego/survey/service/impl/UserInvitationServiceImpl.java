@@ -1,30 +1,38 @@
 package ru.airlabs.ego.survey.service.impl;
 
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
 import org.springframework.jdbc.core.SqlOutParameter;
 import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcCall;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.airlabs.ego.core.entity.User;
 import ru.airlabs.ego.core.entity.Vacancy;
 import ru.airlabs.ego.survey.dto.invitation.*;
+import ru.airlabs.ego.survey.jdbc.JdbcCallRegistry;
 import ru.airlabs.ego.survey.service.UserInvitationService;
 import ru.airlabs.ego.survey.service.VacancyService;
 
 import javax.sql.DataSource;
+import java.sql.CallableStatement;
 import java.sql.Clob;
 import java.sql.Types;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
 
 import static ru.airlabs.ego.survey.dto.invitation.InvitationRequest.buildRequest;
 
@@ -62,6 +70,20 @@ public class UserInvitationServiceImpl implements UserInvitationService {
      */
     private static final String INVITE_PACKAGE_NAME = "Q_INVITE_PKG";
 
+    /**
+     * Вызов хранимой процедуры отправки приглашения в анонимном блоке PL/SQL
+     * (ошибка отправки одного приглашения откатывается до точки сохранения и возвращается в выходном параметре)
+     */
+    private static final String INVITE_BLOCK_CALL = "begin savepoint invite; " +
+            INVITE_PACKAGE_NAME + "." + INVITE_PROCEDURE_NAME +
+            "(PID_USER => ?, PID_RECIEVER => ?, PID_V_DATA => ?, PIS_EMPLOYEE => ?, PLOCALE => ?, PID_SOURCE => ?); " +
+            "exception when others then rollback to savepoint invite; ? := substr(sqlerrm, 1, 1000); end;";
+
+    /**
+     * Кол-во параметров вызова процедуры отправки приглашения в анонимном блоке
+     */
+    private static final int INVITE_BLOCK_CALL_PARAMETER_COUNT = 7;
+
     /**
      * Сервис вакансий
      */
@@ -69,31 +91,125 @@ public class UserInvitationServiceImpl implements UserInvitationService {
     private VacancyService vacancyService;
 
     /**
-     * Источник данных
+     * Jdbc template
+     */
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Кол-во приглашений, отправляемых за одно обращение к БД
      */
-    private DataSource dataSource;
+    @Value("${invitation.batchSize}")
+    private int batchSize;
 
     /**
-     * Jdbc template
+     * Шаблон транзакций для отправки порций приглашений
      */
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
 
     @Autowired
     private void setDataSource(DataSource dataSource) {
-        this.dataSource = dataSource;
         this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
     }
 
+    /**
+     * Установить менеджер транзакций
+     *
+     * @param platformTransactionManager менеджер транзакций
+     */
+    @Autowired
+    public void setPlatformTransactionManager(PlatformTransactionManager platformTransactionManager) {
+        this.transactionTemplate = new TransactionTemplate(platformTransactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Вызов хранимой процедуры создания текста приглашения
+     */
+    private SimpleJdbcCall createInviteTextCall;
+
+    /**
+     * Вызов хранимой функции получения ссылки на персональный опрос
+     */
+    private SimpleJdbcCall getInviteUrlCall;
+
+    /**
+     * Вызов хранимой процедуры получения кол-ва лимитов по приглашениям
+     */
+    private SimpleJdbcCall getInviteCountCall;
+
+    /**
+     * Получить из реестра вызовы хранимых процедур приглашений
+     *
+     * @param jdbcCallRegistry реестр вызовов хранимых процедур
+     */
+    @Autowired
+    private void setJdbcCallRegistry(JdbcCallRegistry jdbcCallRegistry) {
+        this.createInviteTextCall = jdbcCallRegistry.procedure(INVITE_PACKAGE_NAME, CREATE_INVITE_TEXT_FUNCTION_NAME,
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_RECIEVER", Types.BIGINT),
+                new SqlOutParameter("PTEXT", Types.CLOB),
+                new SqlOutParameter("PID_EVENT", Types.BIGINT),
+                new SqlParameter("PID_V_DATA", Types.BIGINT),
+                new SqlParameter("PIS_EMPLOYEE", Types.BOOLEAN),
+                new SqlParameter("PLOCALE", Types.VARCHAR),
+                new SqlParameter("PID_SOURCE", Types.CHAR),
+                new SqlParameter("PID_TYPE", Types.CHAR));
+        this.getInviteUrlCall = jdbcCallRegistry.function(INVITE_PACKAGE_NAME, GET_INVITE_URL_FUNCTION_NAME, Types.VARCHAR,
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_V_DATA", Types.VARCHAR));
+        this.getInviteCountCall = jdbcCallRegistry.procedure(INVITE_PACKAGE_NAME, GET_INVITE_COUNT_PROCEDURE_NAME,
+                new SqlParameter("PID_USER", Types.BIGINT),
+                new SqlParameter("PID_TYPE", Types.VARCHAR),
+                new SqlParameter("PDT_FROM", Types.DATE),
+                new SqlParameter("PDT_TO", Types.DATE),
+                new SqlParameter("PID_SOURCE", Types.VARCHAR),
+
+                new SqlOutParameter("PCOUNT", Types.BIGINT),
+                new SqlOutParameter("PDT_LAST", Types.DATE),
+                new SqlOutParameter("PLIMIT", Types.BIGINT),
+                new SqlOutParameter("PDAY_LIMIT", Types.BIGINT));
+    }
+
     @Transactional
     @Override
     public void sendInvitations(Set<Invitation> invitations, User user, Long vacancyId) {
-        final SimpleJdbcCall inviteCall = createInviteCall();
-        final boolean isResearch = isResearch(vacancyId);
-        for (Invitation invitation : invitations) {
-            final Boolean isEmployee = isResearch ? Boolean.TRUE : invitation.getEmployee();
-            InvitationRequest request = buildRequest(invitation, user, vacancyId, isEmployee);
-            sendInvite(inviteCall, request);
+        for (List<InvitationRequest> chunk : Lists.partition(buildRequests(invitations, user, vacancyId), batchSize)) {
+            List<String> errors = sendInvites(chunk);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (errors.get(i) != null) {
+                    throw new IllegalStateException(String.format("Ошибка отправки приглашения пользователю %s: %s",
+                            chunk.get(i).getReceiverId(), errors.get(i)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<InvitationResult> sendInvitationsInBatches(Set<Invitation> invitations,
+                                                           User user,
+                                                           Long vacancyId,
+                                                           Consumer<List<InvitationResult>> listener) {
+        List<InvitationRequest> requests = buildRequests(invitations, user, vacancyId);
+        List<InvitationResult> results = new ArrayList<>(requests.size());
+        for (List<InvitationRequest> chunk : Lists.partition(requests, batchSize)) {
+            List<InvitationResult> chunkResults = new ArrayList<>(chunk.size());
+            try {
+                List<String> errors = transactionTemplate.execute(status -> sendInvites(chunk));
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunkResults.add(new InvitationResult(chunk.get(i).getReceiverId(), errors.get(i)));
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Invitation batch error for vacancy " + vacancyId, e);
+                for (InvitationRequest request : chunk) {
+                    chunkResults.add(new InvitationResult(request.getReceiverId(), e.getMessage()));
+                }
+            }
+            results.addAll(chunkResults);
+            if (listener != null) {
+                listener.accept(chunkResults);
+            }
         }
+        return results;
     }
 
     /**
@@ -112,12 +228,11 @@ public class UserInvitationServiceImpl implements UserInvitationService {
                                                Long vacancyId,
                                                InvitationType invitationType) {
         try {
-            final SimpleJdbcCall inviteCall = createTextInviteCall();
             final Boolean isEmployee = isResearch(vacancyId) ? Boolean.TRUE : invitation.getEmployee();
             InvitationRequest request = buildRequest(invitation, user, vacancyId, isEmployee);
             request.setInvitationType(invitationType);
             SqlParameterSource parameters = createTextRequestParameters(request);
-            Map<String, Object> results = inviteCall.execute(parameters);
+            Map<String, Object> results = createInviteTextCall.execute(parameters);
             Long id = (Long) results.get("PID_EVENT");
             Clob clob = (Clob) results.get("PTEXT");
 
@@ -138,13 +253,7 @@ public class UserInvitationServiceImpl implements UserInvitationService {
     @Transactional
     @Override
     public String getSurveyLinkForUserAndVacancy(Long userId, Long vacancyId) {
-        return new SimpleJdbcCall(dataSource)
-                .withCatalogName(INVITE_PACKAGE_NAME)
-                .withFunctionName(GET_INVITE_URL_FUNCTION_NAME)
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_V_DATA", Types.VARCHAR))
-                .executeFunction(String.class, new MapSqlParameterSource()
+        return getInviteUrlCall.executeFunction(String.class, new MapSqlParameterSource()
                         .addValue("PID_USER", userId)
                         .addValue("PID_V_DATA", vacancyId));
     }
@@ -182,21 +291,7 @@ public class UserInvitationServiceImpl implements UserInvitationService {
                                                      String inviteSource) {
         Date truncDate = DateUtils.truncate(fromDate, Calendar.DATE);
         InvitationCount invitationCount = new InvitationCount();
-        Map<String, Object> result = new SimpleJdbcCall(dataSource)
-                .withCatalogName(INVITE_PACKAGE_NAME)
-                .withProcedureName(GET_INVITE_COUNT_PROCEDURE_NAME)
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("PID_TYPE", Types.VARCHAR),
-                        new SqlParameter("PDT_FROM", Types.DATE),
-                        new SqlParameter("PDT_TO", Types.DATE),
-                        new SqlParameter("PID_SOURCE", Types.VARCHAR),
-
-                        new SqlOutParameter("PCOUNT", Types.BIGINT),
-                        new SqlOutParameter("PDT_LAST", Types.DATE),
-                        new SqlOutParameter("PLIMIT", Types.BIGINT),
-                        new SqlOutParameter("PDAY_LIMIT", Types.BIGINT))
-                .execute(new MapSqlParameterSource()
+        Map<String, Object> result = getInviteCountCall.execute(new MapSqlParameterSource()
                         .addValue("PID_USER", user.getId())
                         .addValue("PID_TYPE", inviteType)
                         .addValue("PDT_FROM", truncDate)
@@ -209,19 +304,59 @@ public class UserInvitationServiceImpl implements UserInvitationService {
         return invitationCount;
     }
 
-    private void sendInvite(SimpleJdbcCall inviteCall, InvitationRequest request) {
-        SqlParameterSource parameters = createRequestParameters(request);
-        inviteCall.execute(parameters);
+    /**
+     * Построение запросов на отправку приглашений
+     *
+     * @param invitations список приглашаемых
+     * @param user        пользователь, выполняющий отправку приглашений (HR)
+     * @param vacancyId   идентификатор вакансии
+     * @return запросы на отправку приглашений
+     */
+    private List<InvitationRequest> buildRequests(Set<Invitation> invitations, User user, Long vacancyId) {
+        final boolean isResearch = isResearch(vacancyId);
+        List<InvitationRequest> requests = new ArrayList<>(invitations.size());
+        for (Invitation invitation : invitations) {
+            final Boolean isEmployee = isResearch ? Boolean.TRUE : invitation.getEmployee();
+            requests.add(buildRequest(invitation, user, vacancyId, isEmployee));
+        }
+        return requests;
     }
 
-    private SqlParameterSource createRequestParameters(InvitationRequest request) {
-        return new MapSqlParameterSource()
-                .addValue("PID_USER", request.getUserId())
-                .addValue("PID_RECIEVER", request.getReceiverId())
-                .addValue("PID_V_DATA", request.getVacancyId())
-                .addValue("PIS_EMPLOYEE", request.getEmployee())
-                .addValue("PLOCALE", request.getLocale())
-                .addValue("PID_SOURCE", request.getSourceCode());
+    /**
+     * Отправка порции приглашений за одно обращение к БД
+     * (процедура отправки вызывается для каждого приглашения в одном анонимном блоке PL/SQL)
+     *
+     * @param requests запросы на отправку приглашений
+     * @return ошибки отправки в порядке запросов (null - приглашение отправлено)
+     */
+    private List<String> sendInvites(List<InvitationRequest> requests) {
+        CallableStatementCreator creator = connection -> {
+            StringBuilder sql = new StringBuilder("begin\n");
+            for (int i = 0; i < requests.size(); i++) {
+                sql.append(INVITE_BLOCK_CALL).append('\n');
+            }
+            CallableStatement cs = connection.prepareCall(sql.append("end;").toString());
+            int index = 1;
+            for (InvitationRequest request : requests) {
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.BIGINT, request.getUserId());
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.BIGINT, request.getReceiverId());
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.BIGINT, request.getVacancyId());
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.BOOLEAN, request.getEmployee());
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.VARCHAR, request.getLocale());
+                StatementCreatorUtils.setParameterValue(cs, index++, Types.CHAR, request.getSourceCode());
+                cs.registerOutParameter(index++, Types.VARCHAR);
+            }
+            return cs;
+        };
+        CallableStatementCallback<List<String>> callback = cs -> {
+            cs.execute();
+            List<String> errors = new ArrayList<>(requests.size());
+            for (int i = 1; i <= requests.size(); i++) {
+                errors.add(cs.getString(i * INVITE_BLOCK_CALL_PARAMETER_COUNT));
+            }
+            return errors;
+        };
+        return jdbcTemplate.getJdbcOperations().execute(creator, callback);
     }
 
     private SqlParameterSource createTextRequestParameters(InvitationRequest request) {
@@ -235,35 +370,6 @@ public class UserInvitationServiceImpl implements UserInvitationService {
                 .addValue("PID_TYPE", request.getInvitationType().getTypeId());
     }
 
-    private SimpleJdbcCall createInviteCall() {
-        return new SimpleJdbcCall(dataSource)
-                .withCatalogName(INVITE_PACKAGE_NAME)
-                .withProcedureName(INVITE_PROCEDURE_NAME)
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("ID_RECIEVER", Types.BIGINT),
-                        new SqlParameter("PID_V_DATA", Types.BIGINT),
-                        new SqlParameter("PIS_EMPLOYEE", Types.BOOLEAN),
-                        new SqlParameter("PLOCALE", Types.VARCHAR),
-                        new SqlParameter("PID_SOURCE", Types.CHAR));
-    }
-
-    private SimpleJdbcCall createTextInviteCall() {
-        return new SimpleJdbcCall(dataSource)
-                .withCatalogName(INVITE_PACKAGE_NAME)
-                .withProcedureName(CREATE_INVITE_TEXT_FUNCTION_NAME)
-                .declareParameters(
-                        new SqlParameter("PID_USER", Types.BIGINT),
-                        new SqlParameter("ID_RECIEVER", Types.BIGINT),
-                        new SqlOutParameter("PTEXT", Types.CLOB),
-                        new SqlOutParameter("PID_EVENT", Types.BIGINT),
-                        new SqlParameter("PID_V_DATA", Types.BIGINT),
-                        new SqlParameter("PIS_EMPLOYEE", Types.BOOLEAN),
-                        new SqlParameter("PLOCALE", Types.VARCHAR),
-                        new SqlParameter("PID_SOURCE", Types.CHAR),
-                        new SqlParameter("PID_TYPE", Types.CHAR));
-    }
-
     /**
      * Проверка, является ли вакансия исследованием
      *
@@ -1,6 +1,12 @@
 package ru.airlabs.ego.survey.service.impl;
 
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.SqlOutParameter;
 import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -8,11 +14,15 @@ import org.springframework.jdbc.core.simple.SimpleJdbcCall;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.airlabs.ego.survey.dto.user.Sex;
+import ru.airlabs.ego.survey.dto.user.UserDetail;
 import ru.airlabs.ego.survey.service.UserService;
 
 import javax.sql.DataSource;
+import java.sql.CallableStatement;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Сервис работы с пользователями
@@ -22,8 +32,32 @@ import java.util.Date;
 @Service
 public class UserServiceImpl implements UserService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserServiceImpl.class);
+
+    /**
+     * Вызов функции создания пользователя в анонимном блоке PL/SQL
+     * (ошибка создания одного пользователя откатывается до точки сохранения и не прерывает блок,
+     * идентификатор такого пользователя не заполняется)
+     */
+    private static final String CREATE_USER_BLOCK_CALL = "begin savepoint create_user; ? := Q_INVITE_PKG.CREATE_USER(" +
+            "PID_PARENT => ?, PNAME => ?, PEMAIL => ?, PPHONE => ?, PLOCALE => null, PSURENAME => null, " +
+            "PPARENTNAME => null, PSEX => null, PDT_BIRTH => null, PCITY => null, PDESCR => null, PSALARY => null); " +
+            "exception when others then rollback to savepoint create_user; ? := substr(sqlerrm, 1, 1000); end;";
+
+    /**
+     * Макс. кол-во вызовов функции создания пользователя в одном анонимном блоке
+     */
+    private static final int CREATE_USER_BLOCK_SIZE = 100;
+
+    /**
+     * Jdbc template
+     */
+    private JdbcTemplate jdbcTemplate;
+
     @Autowired
-    private DataSource dataSource;
+    private void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
 
     /**
      * Получить или создать пользователя
@@ -81,6 +115,68 @@ public class UserServiceImpl implements UserService {
     }
 
 
+    /**
+     * Получить или создать список пользователей за одно обращение к БД
+     * (функция создания пользователя вызывается для каждого пользователя в одном анонимном блоке PL/SQL,
+     * большие списки разбиваются на несколько блоков)
+     *
+     * @param users        данные пользователей (имя, email, телефон)
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @return идентификаторы пользователей в порядке списка (null - пользователя не удалось получить или создать)
+     */
+    @Override
+    @Transactional
+    public List<Long> getOrCreateUsers(List<UserDetail> users, Long parentUserId) {
+        List<Long> result = new ArrayList<>(users.size());
+        for (List<UserDetail> chunk : Lists.partition(users, CREATE_USER_BLOCK_SIZE)) {
+            result.addAll(createUsersByJdbcBlock(chunk, parentUserId));
+        }
+        return result;
+    }
+
+    /**
+     * Создать или получить пользователей в одном анонимном блоке PL/SQL
+     *
+     * @param users        данные пользователей (имя, email, телефон)
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @return идентификаторы пользователей в порядке списка (null - пользователя не удалось получить или создать)
+     */
+    private List<Long> createUsersByJdbcBlock(List<UserDetail> users, Long parentUserId) {
+        CallableStatementCreator creator = connection -> {
+            StringBuilder sql = new StringBuilder("begin\n");
+            for (int i = 0; i < users.size(); i++) {
+                sql.append(CREATE_USER_BLOCK_CALL).append('\n');
+            }
+            CallableStatement cs = connection.prepareCall(sql.append("end;").toString());
+            int index = 1;
+            for (UserDetail user : users) {
+                cs.registerOutParameter(index++, Types.BIGINT);
+                cs.setLong(index++, parentUserId != null ? parentUserId : 0);
+                cs.setString(index++, user.getName());
+                cs.setString(index++, user.getEmail());
+                cs.setString(index++, user.getPhone());
+                cs.registerOutParameter(index++, Types.VARCHAR);
+            }
+            return cs;
+        };
+        CallableStatementCallback<List<Long>> callback = cs -> {
+            cs.execute();
+            List<Long> result = new ArrayList<>(users.size());
+            int index = 1;
+            for (UserDetail user : users) {
+                long userId = cs.getLong(index);
+                result.add(cs.wasNull() ? null : userId);
+                String error = cs.getString(index + 5);
+                if (error != null) {
+                    LOGGER.warn("Create user error for email {}, phone {}: {}", user.getEmail(), user.getPhone(), error);
+                }
+                index += 6;
+            }
+            return result;
+        };
+        return jdbcTemplate.execute(creator, callback);
+    }
+
     /**
      * Создать или получить пользователя посредством хранимой процедуры
      *
@@ -102,7 +198,7 @@ public class UserServiceImpl implements UserService {
                                       String locale, String lastName, String middleName,
                                       Sex sex, Date birthDate, String city, String description,
                                       Integer salary, Long parentUserId) {
-        return new SimpleJdbcCall(dataSource)
+        return new SimpleJdbcCall(jdbcTemplate)
                 .withCatalogName("Q_INVITE_PKG")
                 .withFunctionName("CREATE_USER")
                 .declareParameters(
@@ -2,28 +2,30 @@ package ru.airlabs.ego.survey.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.airlabs.ego.core.entity.*;
-import ru.airlabs.ego.core.repository.UserLinkRepository;
 import ru.airlabs.ego.core.repository.UserSurveyStateRepository;
-import ru.airlabs.ego.core.repository.VacancyUserRepository;
+import ru.airlabs.ego.survey.dto.KeysetPage;
 import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
-import ru.airlabs.ego.survey.service.ImageUploadService;
 import ru.airlabs.ego.survey.service.VacancyDetailService;
+import ru.airlabs.ego.survey.utils.KeysetPagination;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Date;
+import javax.sql.DataSource;
 import java.util.List;
 
-import static ru.airlabs.ego.survey.utils.SortingUtils.createOrderQueryForCustomSurveyResults;
-import static ru.airlabs.ego.survey.utils.SortingUtils.createOrderQueryForVacancyUserDetails;
+import static ru.airlabs.ego.survey.service.impl.PageTotalCountCache.buildKey;
+import static ru.airlabs.ego.survey.utils.DbUtils.getNullableDouble;
+import static ru.airlabs.ego.survey.utils.DbUtils.getNullableInt;
+import static ru.airlabs.ego.survey.utils.DbUtils.query;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForCustomSurveyResults;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForVacancyUserDetails;
 
 /**
  * Сервис для получения подробностей по вакансиям
@@ -35,50 +37,77 @@ import static ru.airlabs.ego.survey.utils.SortingUtils.createOrderQueryForVacanc
 public class VacancyDetailServiceImpl implements VacancyDetailService {
 
     /**
-     * Сервис для работы с загруженными фотографиями пользователей
+     * Преобразование строки запроса приглашений и откликов
+     * (номера колонок соответствуют запросам {@link #getDetails} и {@link #getBufferDetails}, 1 - номер строки)
      */
-    @Autowired
-    private ImageUploadService imageUploadService;
+    private static final RowMapper<VacancyUserDetail> USER_DETAIL_MAPPER = (rs, rowNum) -> {
+        VacancyUserDetail detail = new VacancyUserDetail();
+        detail.setVacancyId(rs.getLong(2));
+        detail.setUserId(rs.getLong(3));
+        detail.setEmail(rs.getString(4));
+        detail.setName(rs.getString(5));
+        detail.setPhone(rs.getString(6));
+        detail.setSurveyCreate(rs.getTimestamp(7));
+        detail.setActive(rs.getInt(8) != 0);
+        detail.setProgress(rs.getInt(9));
+        detail.setFinishedParts(rs.getInt(10));
+        detail.setSurveyUpdate(rs.getTimestamp(11));
+        detail.setCompareResult(getNullableDouble(rs, 12));
+        detail.setConflictAnswerPercent(getNullableInt(rs, 13));  // % противоречий в ответах на вопросы
+        detail.setAverageAnswerTime(getNullableDouble(rs, 14));   // Среднее время на ответы в опроснике
+        return detail;
+    };
 
     /**
-     * Репозиторий связей пользователей
+     * Репозиторий состояний прохождения опросов
      */
     @Autowired
-    private UserLinkRepository userLinkRepository;
+    private UserSurveyStateRepository userSurveyStateRepository;
 
     /**
-     * Репозиторий состояний прохождения опросов
+     * Компонент для заполнения откликов и приглашений данными пользователей
      */
     @Autowired
-    private UserSurveyStateRepository userSurveyStateRepository;
+    private VacancyUserDetailEnricher vacancyUserDetailEnricher;
 
     /**
-     * Репозиторий пользователей вакансий
+     * Кэш общего кол-ва строк постраничных выборок
      */
     @Autowired
-    private VacancyUserRepository vacancyUserRepository;
+    private PageTotalCountCache pageTotalCountCache;
 
     @PersistenceContext
     private EntityManager em;
 
+    /**
+     * Jdbc template
+     */
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
     /**
      * Получение откликов по вакансии
      *
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных по откликам
      */
     @Override
-    public Page<VacancyUserDetail> getFeedbackForVacancy(Long vacancyId, User currentUser, Pageable pageable) {
+    public Page<VacancyUserDetail> getFeedbackForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor) {
         Vacancy vacancy = em.find(Vacancy.class, vacancyId);            // получаем вакансию
         Survey survey = em.find(Survey.class, vacancy.getSurveyId());   // получаем опрос
         Page<VacancyUserDetail> pagingDetails;
         if (survey.getAlgo() == 1) { // получение результатов для опроса "Соционика"
-            pagingDetails = getDetails(vacancyId, currentUser.getId(), true, pageable);
+            pagingDetails = getDetails(vacancyId, currentUser.getId(), true, pageable, cursor);
             fillWithPhotos(pagingDetails.getContent());
         } else {    // получение результатов для всех прочих опросов
-            pagingDetails = getDetailsForCustomSurvey(vacancyId, vacancy.getSurveyId(), pageable);
+            pagingDetails = getDetailsForCustomSurvey(vacancyId, vacancy.getSurveyId(), pageable, cursor);
             fillUserInfoAndPhotos(pagingDetails.getContent(), currentUser.getId());
         }
         return pagingDetails;
@@ -90,11 +119,12 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список данных по приглашениям
      */
     @Override
-    public Page<VacancyUserDetail> getInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable) {
-        Page<VacancyUserDetail> pagingDetails = getDetails(vacancyId, currentUser.getId(), false, pageable);
+    public Page<VacancyUserDetail> getInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor) {
+        Page<VacancyUserDetail> pagingDetails = getDetails(vacancyId, currentUser.getId(), false, pageable, cursor);
         fillWithPhotos(pagingDetails.getContent());
         return pagingDetails;
     }
@@ -105,11 +135,12 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      * @param vacancyId   идентификатор вакансии
      * @param currentUser аккаунт текущего пользователя HR
      * @param pageable    настройки пагинации и сортировки
+     * @param cursor      курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return постраничный сортированный список данных по приглашениям из буфера
      */
     @Override
-    public Page<VacancyUserDetail> getBufferInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable) {
-        return getBufferDetails(vacancyId, currentUser.getId(), pageable);
+    public Page<VacancyUserDetail> getBufferInvitationsForVacancy(Long vacancyId, User currentUser, Pageable pageable, String cursor) {
+        return getBufferDetails(vacancyId, currentUser.getId(), pageable, cursor);
     }
 
     /**
@@ -120,10 +151,14 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      */
     private Page<VacancyUserDetail> getDetailsForCustomSurvey(Long vacancyId,
                                                               Long surveyId,
-                                                              Pageable pageable) {
-        List<VacancyUserDetail> details = new ArrayList<>();
+                                                              Pageable pageable,
+                                                              String cursor) {
+        final KeysetPagination keyset = createKeysetForCustomSurveyResults(pageable.getSort(), cursor);
+        final String countKey = buildKey("customSurveyDetails", vacancyId, surveyId);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForCustomSurveyResults(pageable.getSort()) + ") rn, " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
                 "q.id_user, " +
                 "q.dt_create, " +
                 "q.progress, " +
@@ -131,42 +166,37 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "q.dt_update, " +
                 "q.list_result_perc, " +
                 "q.list_conflict_perc, " +
-                "q.list_avg_resp_sec " +
+                "q.list_avg_resp_sec" + keyset.getKeyColumns() + " " +
                 "from users_q_list q " +
                 "join v_data_user vu on vu.id_user = q.id_user and vu.id_v_data = :vacancyId and vu.is_active = 1 " +
                 "where q.id_list = :surveyId and (q.calculated_parts > 0) " +
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("surveyId", surveyId);
-        query.setParameter("vacancyId", vacancyId);
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalDetailsCountForCustomSurvey(surveyId, vacancyId);   // общее кол-во результатов
-
-        List<Object[]> results = query.getResultList();
-        for (Object[] record : results) {
-            VacancyUserDetail detail = new VacancyUserDetail();
-            detail.setVacancyId(vacancyId);
-            Long userId = ((BigDecimal) record[1]).longValue();
-            detail.setUserId(userId);
-            detail.setSurveyCreate((Date) record[2]);
-            detail.setProgress(((BigDecimal) record[3]).intValue());
-            detail.setFinishedParts(((BigDecimal) record[4]).intValue());
-            detail.setSurveyUpdate((Date) record[5]);
-            if (record[6] != null) {
-                detail.setCompareResult(((BigDecimal) record[6]).doubleValue());
-            }
-            if (record[7] != null) {   // % противоречий в ответах на вопросы
-                detail.setConflictAnswerPercent(((BigDecimal) record[7]).intValue());
-            }
-            if (record[8] != null) {   // Среднее время на ответы в опроснике
-                detail.setAverageAnswerTime(((BigDecimal) record[8]).doubleValue());
-            }
-
-            details.add(detail);
-        }
-        Page<VacancyUserDetail> pagingResult = new PageImpl<>(details, pageable, totalCount);
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("surveyId", surveyId)
+                .addValue("vacancyId", vacancyId)
+                .addValue("fromRow", keyset.getFromRow(pageable))
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper((rs, rowNum) -> {
+                    VacancyUserDetail detail = new VacancyUserDetail();
+                    detail.setVacancyId(vacancyId);
+                    detail.setUserId(rs.getLong(2));
+                    detail.setSurveyCreate(rs.getTimestamp(3));
+                    detail.setProgress(rs.getInt(4));
+                    detail.setFinishedParts(rs.getInt(5));
+                    detail.setSurveyUpdate(rs.getTimestamp(6));
+                    detail.setCompareResult(getNullableDouble(rs, 7));
+                    detail.setConflictAnswerPercent(getNullableInt(rs, 8));  // % противоречий в ответах на вопросы
+                    detail.setAverageAnswerTime(getNullableDouble(rs, 9));   // Среднее время на ответы в опроснике
+                    return detail;
+                }, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalDetailsCountForCustomSurvey(surveyId, vacancyId));   // общее кол-во результатов
+        Page<VacancyUserDetail> pagingResult = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return pagingResult;
     }
 
@@ -177,15 +207,20 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      * @param currentUserId идентификатор текущего пользователя
      * @param isFeedback    флаг получения откликов (если получаем только фидбеки - прогресс == 288)
      * @param pageable      настройки пагинации и сортировки
+     * @param cursor        курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список приглашений или откликов
      */
     private Page<VacancyUserDetail> getDetails(Long vacancyId,
                                                Long currentUserId,
                                                boolean isFeedback,
-                                               Pageable pageable) {
-        List<VacancyUserDetail> details = new ArrayList<>();
+                                               Pageable pageable,
+                                               String cursor) {
+        final KeysetPagination keyset = createKeysetForVacancyUserDetails(pageable.getSort(), cursor);
+        final String countKey = buildKey("vacancyUserDetails", vacancyId, currentUserId, isFeedback);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForVacancyUserDetails(pageable.getSort()) + ") rn, " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
                 "v.id, " +
                 "u.id as userId, " +
                 "ul.email, " +
@@ -198,7 +233,7 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "q.dt_update, " +
                 "c.compared, " +
                 "q.list_conflict_perc, " +
-                "q.list_avg_resp_sec " +
+                "q.list_avg_resp_sec" + keyset.getKeyColumns() + " " +
                 "from v_data v " +
                 "join v_data_user vu on v.id = vu.id_v_data " + (isFeedback ? "and vu.is_active = 1 " : "") +   // для фидбеков только активные участники
                 "join users u on vu.id_user = u.id " + (isFeedback ? "and v.id_leader <> u.id " : "") +
@@ -210,42 +245,21 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "and ul.id_parent = :userId " + // исключаем приглашения из буфера
                 "and (vu.id_source <> 'B') and ((vu.id_source <> 'S') or (vu.id_source = 'S' and vu.is_active = 1)) " +
                 (isFeedback ? "and (q.calculated_parts > 0) " : "") +
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("vacancyId", vacancyId); // устанавливаем настройки пагинации
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalDetailsCount(vacancyId, currentUserId, isFeedback); // общее кол-во результатов
-
-        List<Object[]> results = query.getResultList();
-        for (Object[] record : results) {
-            VacancyUserDetail detail = new VacancyUserDetail();
-            detail.setVacancyId(((BigDecimal) record[1]).longValue());
-            detail.setUserId(((BigDecimal) record[2]).longValue());
-            detail.setEmail((String) record[3]);
-            detail.setName((String) record[4]);
-            detail.setPhone((String) record[5]);
-            detail.setSurveyCreate((Date) record[6]);
-            detail.setActive(((BigDecimal) record[7]).intValue() != 0);
-
-            detail.setProgress(((BigDecimal) record[8]).intValue());
-            detail.setFinishedParts(((BigDecimal) record[9]).intValue());
-            detail.setSurveyUpdate((Date) record[10]);
-            if (record[11] != null) {
-                detail.setCompareResult(((BigDecimal) record[11]).doubleValue());
-            }
-            if (record[12] != null) {   // % противоречий в ответах на вопросы
-                detail.setConflictAnswerPercent(((BigDecimal) record[12]).intValue());
-            }
-            if (record[13] != null) {   // Среднее время на ответы в опроснике
-                detail.setAverageAnswerTime(((BigDecimal) record[13]).doubleValue());
-            }
-
-            details.add(detail);
-        }
-        Page<VacancyUserDetail> pagingResult = new PageImpl<VacancyUserDetail>(details, pageable, totalCount);
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("vacancyId", vacancyId)
+                .addValue("fromRow", keyset.getFromRow(pageable))   // устанавливаем настройки пагинации
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper(USER_DETAIL_MAPPER, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalDetailsCount(vacancyId, currentUserId, isFeedback));   // общее кол-во результатов
+        Page<VacancyUserDetail> pagingResult = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return pagingResult;
     }
 
@@ -255,14 +269,19 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      * @param vacancyId     айди вакансии
      * @param currentUserId айди текущего пользователя
      * @param pageable      настройки пагинации
+     * @param cursor        курсор последней строки предыдущей страницы (если задан - выборка по ключу)
      * @return список приглашений из буфера
      */
     private Page<VacancyUserDetail> getBufferDetails(Long vacancyId,
                                                      Long currentUserId,
-                                                     Pageable pageable) {
-        List<VacancyUserDetail> details = new ArrayList<>();
+                                                     Pageable pageable,
+                                                     String cursor) {
+        final KeysetPagination keyset = createKeysetForVacancyUserDetails(pageable.getSort(), cursor);
+        final String countKey = buildKey("bufferDetails", vacancyId, currentUserId);
+        final Long approximateCount = pageTotalCountCache.getApproximate(countKey);
+        keyset.setTotalCount(approximateCount == null);    // общее кол-во строк выбираем вместе со страницей
         final String queryExp = "select s.* from (" +
-                "select row_number() over (" + createOrderQueryForVacancyUserDetails(pageable.getSort()) + ") rn, " +
+                "select row_number() over (" + keyset.getOrderBy() + ") rn, " +
                 "v.id, " +
                 "u.id as userId, " +
                 "ul.email, " +
@@ -275,7 +294,7 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "q.dt_update, " +
                 "c.compared, " +
                 "q.list_conflict_perc, " +
-                "q.list_avg_resp_sec " +
+                "q.list_avg_resp_sec" + keyset.getKeyColumns() + " " +
                 "from v_data v " +
                 "join v_data_user vu on v.id = vu.id_v_data and vu.is_active = 1 " + // получаем только активные приглашения из буфера
                 "join users u on vu.id_user = u.id " +
@@ -285,53 +304,33 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "where v.id = :vacancyId " +
                 "and v.id_user = :userId " +
                 "and ul.id_parent = :userId " +
-                "and vu.id_source = 'B'" + // получаем приглашения из буфера
-                ") s where s.rn > :fromRow and s.rn <= :toRow";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("vacancyId", vacancyId); // устанавливаем настройки пагинации
-        query.setParameter("fromRow", pageable.getPageNumber() * pageable.getPageSize());
-        query.setParameter("toRow", pageable.getPageNumber() * pageable.getPageSize() + pageable.getPageSize());
-
-        final long totalCount = getTotalBufferDetailsCount(vacancyId, currentUserId); // общее кол-во приглашений
-
-        List<Object[]> results = query.getResultList();
-        for (Object[] record : results) {
-            VacancyUserDetail detail = new VacancyUserDetail();
-            detail.setVacancyId(((BigDecimal) record[1]).longValue());
-            detail.setUserId(((BigDecimal) record[2]).longValue());
-            detail.setEmail((String) record[3]);
-            detail.setName((String) record[4]);
-            detail.setPhone((String) record[5]);
-            detail.setSurveyCreate((Date) record[6]);
-            detail.setActive(((BigDecimal) record[7]).intValue() != 0);
-
-            detail.setProgress(((BigDecimal) record[8]).intValue());
-            detail.setFinishedParts(((BigDecimal) record[9]).intValue());
-            detail.setSurveyUpdate((Date) record[10]);
-            if (record[11] != null) {
-                detail.setCompareResult(((BigDecimal) record[11]).doubleValue());
-            }
-            if (record[12] != null) {   // % противоречий в ответах на вопросы
-                detail.setConflictAnswerPercent(((BigDecimal) record[12]).intValue());
-            }
-            if (record[13] != null) {   // Среднее время на ответы в опроснике
-                detail.setAverageAnswerTime(((BigDecimal) record[13]).doubleValue());
-            }
-
-            details.add(detail);
-        }
-        Page<VacancyUserDetail> pagingResult = new PageImpl<VacancyUserDetail>(details, pageable, totalCount);
+                "and vu.id_source = 'B' " + // получаем приглашения из буфера
+                keyset.getCondition() +
+                ") s where s.rn > :fromRow and s.rn <= :toRow order by s.rn";
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("vacancyId", vacancyId)
+                .addValue("fromRow", keyset.getFromRow(pageable))   // устанавливаем настройки пагинации
+                .addValue("toRow", keyset.getToRow(pageable));
+        keyset.setParameters(parameters);
+
+        List<VacancyUserDetail> details = query(jdbcTemplate, queryExp, parameters, pageable.getPageSize(),
+                keyset.rowMapper(USER_DETAIL_MAPPER, pageable));
+        final long totalCount = pageTotalCountCache.resolve(countKey, approximateCount, keyset.getTotal(),
+                () -> getTotalBufferDetailsCount(vacancyId, currentUserId));   // общее кол-во приглашений
+        Page<VacancyUserDetail> pagingResult = new KeysetPage<>(details, keyset.getPageable(pageable), totalCount,
+                keyset.createNextCursor());
         return pagingResult;
     }
 
     /**
      * Получение общего кол-ва откликов или приглашений по вакансии
+     * (условия совпадают с запросом {@link #getDetails})
      *
      * @param vacancyId     идентификатор вакансии
      * @param currentUserId идентификатор текущего пользователя
      * @param isFeedback    флаг получения откликов (если получаем только фидбеки - прогресс == 288)
-     * @return
+     * @return общее кол-во откликов или приглашений
      */
     private long getTotalDetailsCount(Long vacancyId,
                                       Long currentUserId,
@@ -340,20 +339,22 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "from v_data v " +
                 "join v_data_user vu on v.id = vu.id_v_data " + (isFeedback ? "and vu.is_active = 1 " : "") +
                 "join users u on vu.id_user = u.id " + (isFeedback ? "and v.id_leader <> u.id " : "") +
+                "join users_link ul on u.id = ul.id_user " +
                 "join users_q_list q on v.id_list = q.id_list and vu.id_user = q.id_user " +
                 "left join users_q_compare c on q.id_user = c.id_user2 and v.id_leader = c.id_user1 and q.id_list = c.id_list " +
                 "where v.id = :vacancyId " +
                 "and v.id_user = :userId " +
+                "and ul.id_parent = :userId " +
                 "and (vu.id_source <> 'B') and ((vu.id_source <> 'S') or (vu.id_source = 'S' and vu.is_active = 1)) " +
                 (isFeedback ? "and (q.calculated_parts > 0) " : "");
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("vacancyId", vacancyId);
-        return ((BigDecimal) query.getSingleResult()).longValue();
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("vacancyId", vacancyId), Long.class);
     }
 
     /**
      * Получение общего кол-ва приглашений из буфера по вакансии
+     * (условия совпадают с запросом {@link #getBufferDetails})
      *
      * @param vacancyId     идентификатор вакансии
      * @param currentUserId идентификатор текущего пользователя
@@ -365,19 +366,21 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
                 "from v_data v " +
                 "join v_data_user vu on v.id = vu.id_v_data and vu.is_active = 1 " +
                 "join users u on vu.id_user = u.id " +
+                "join users_link ul on u.id = ul.id_user " +
                 "join users_q_list q on v.id_list = q.id_list and vu.id_user = q.id_user " +
                 "left join users_q_compare c on q.id_user = c.id_user2 and v.id_leader = c.id_user1 and q.id_list = c.id_list " +
                 "where v.id = :vacancyId " +
                 "and v.id_user = :userId " +
+                "and ul.id_parent = :userId " +
                 "and vu.id_source = 'B'";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("userId", currentUserId);
-        query.setParameter("vacancyId", vacancyId);
-        return ((BigDecimal) query.getSingleResult()).longValue();
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("userId", currentUserId)
+                .addValue("vacancyId", vacancyId), Long.class);
     }
 
     /**
      * Получение общего кол-ва результатов для пользовательского опроса
+     * (условия совпадают с запросом {@link #getDetailsForCustomSurvey})
      *
      * @param surveyId  идентификатор опроса
      * @param vacancyId идентификатор вакансии
@@ -387,11 +390,10 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
         final String queryExp = "select count(*) " +
                 "from users_q_list q " +
                 "join v_data_user vu on vu.id_user = q.id_user and vu.id_v_data = :vacancyId and vu.is_active = 1 " +
-                "where q.id_list = :surveyId and (q.progress BETWEEN 96 and 288)";
-        Query query = em.createNativeQuery(queryExp);
-        query.setParameter("surveyId", surveyId);
-        query.setParameter("vacancyId", vacancyId);
-        return ((BigDecimal) query.getSingleResult()).longValue();
+                "where q.id_list = :surveyId and (q.calculated_parts > 0)";
+        return jdbcTemplate.queryForObject(queryExp, new MapSqlParameterSource()
+                .addValue("surveyId", surveyId)
+                .addValue("vacancyId", vacancyId), Long.class);
     }
 
     /**
@@ -400,23 +402,11 @@ public class VacancyDetailServiceImpl implements VacancyDetailService {
      * @param details отклики и приглашения
      */
     private void fillWithPhotos(List<VacancyUserDetail> details) {
-        for (VacancyUserDetail detail : details) {
-            List<String> imagePaths = imageUploadService.getImagesForUserAndVacancy(detail.getUserId(), detail.getVacancyId());
-            detail.getImages().addAll(imagePaths);
-        }
+        vacancyUserDetailEnricher.fillWithPhotos(details);
     }
 
     private void fillUserInfoAndPhotos(List<VacancyUserDetail> details, Long currentUserId) {
-        for (VacancyUserDetail detail : details) {
-            UserLink user = userLinkRepository.findByUserIdAndParentId(detail.getUserId(), currentUserId);
-            List<String> imagePaths = imageUploadService.getImagesForUserAndVacancy(detail.getUserId(), detail.getVacancyId());
-            VacancyUser vacancyUser = vacancyUserRepository.findByUserIdAndVacancyId(detail.getUserId(), detail.getVacancyId());
-            detail.getImages().addAll(imagePaths);
-            detail.setEmail(user.getEmail());
-            detail.setName(user.getName());
-            detail.setPhone(user.getPhone());
-            detail.setActive(vacancyUser.getActive());
-        }
+        vacancyUserDetailEnricher.fillUserInfoAndPhotos(details, currentUserId, true);
     }
 
 }
@@ -11,6 +11,7 @@ import ru.airlabs.ego.core.repository.*;
 import ru.airlabs.ego.survey.dto.invitation.Invitation;
 import ru.airlabs.ego.survey.dto.vacancy.VacancyForm;
 import ru.airlabs.ego.survey.dto.vacancy.VacancyMethodology;
+import ru.airlabs.ego.survey.service.SurveySessionService;
 import ru.airlabs.ego.survey.service.UserInvitationService;
 import ru.airlabs.ego.survey.service.UserService;
 import ru.airlabs.ego.survey.service.VacancyService;
@@ -66,6 +67,12 @@ public class VacancyServiceImpl implements VacancyService {
     @Autowired
     private UserService userService;
 
+    /**
+     * Сервис сессии прохождения опроса (кэширует вакансии)
+     */
+    @Autowired
+    private SurveySessionService surveySessionService;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -161,6 +168,7 @@ public class VacancyServiceImpl implements VacancyService {
         vacancy.setBonus(form.getVacancyBonus());
         vacancy.setDateUpdate(new Date());
 
+        surveySessionService.invalidateVacancy(vacancyId);
         return vacancyRepository.save(vacancy);
     }
 
@@ -183,6 +191,7 @@ public class VacancyServiceImpl implements VacancyService {
         research.setMobile(form.getMobile());
         research.setSimilarPerson(form.getSimilarPerson());
         research.setDateUpdate(new Date());
+        surveySessionService.invalidateVacancy(researchId);
         return vacancyRepository.save(research);
     }
 
@@ -192,6 +201,7 @@ public class VacancyServiceImpl implements VacancyService {
         Vacancy vacancy = findById(id);
         checkNotNull(vacancy, VACANCY_NOT_FOUND_ERROR, id);
         entityManager.remove(vacancy);
+        surveySessionService.invalidateVacancy(id);
     }
 
     @Transactional
@@ -200,6 +210,7 @@ public class VacancyServiceImpl implements VacancyService {
         Vacancy vacancy = findById(id);
         checkNotNull(vacancy, VACANCY_NOT_FOUND_ERROR, id);
         vacancy.setActive(!vacancy.getActive());
+        surveySessionService.invalidateVacancy(id);
     }
 
     @Override
@@ -259,6 +270,7 @@ public class VacancyServiceImpl implements VacancyService {
             Vacancy vacancy = findById(vacancyId);
             checkNotNull(vacancy, VACANCY_NOT_FOUND_ERROR, vacancyId);
             vacancy.setLeaderId(leaderId);
+            surveySessionService.invalidateVacancy(vacancyId);
         }
     }
 
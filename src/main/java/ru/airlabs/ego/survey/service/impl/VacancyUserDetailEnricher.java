@@ -0,0 +1,124 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.airlabs.ego.core.entity.UserLink;
+import ru.airlabs.ego.core.entity.VacancyUser;
+import ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail;
+import ru.airlabs.ego.survey.service.ImageUploadService;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static ru.airlabs.ego.survey.utils.DbUtils.MAX_IN_CLAUSE_SIZE;
+import static ru.airlabs.ego.survey.utils.DbUtils.partitionForInClause;
+
+/**
+ * Компонент для заполнения откликов и приглашений данными пользователей
+ * <p>
+ * Данные выбираются для всей страницы откликов несколькими запросами с условием IN
+ * (вместо отдельных запросов для каждого отклика) и сопоставляются в памяти.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("vacancyUserDetailEnricher")
+@Transactional(readOnly = true)
+public class VacancyUserDetailEnricher {
+
+    /**
+     * Сервис для работы с загруженными фотографиями пользователей
+     */
+    @Autowired
+    private ImageUploadService imageUploadService;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Заполнение списка ссылок на загруженные фотографии для откликов и приглашений
+     *
+     * @param details отклики и приглашения
+     */
+    public void fillWithPhotos(List<VacancyUserDetail> details) {
+        imageUploadService.fillImagesForUserDetails(details);
+    }
+
+    /**
+     * Заполнение контактных данных пользователей и ссылок на загруженные фотографии
+     *
+     * @param details       отклики и приглашения
+     * @param currentUserId идентификатор текущего пользователя HR
+     * @param withActivity  признак заполнения активности пользователя в рамках вакансии
+     */
+    public void fillUserInfoAndPhotos(List<VacancyUserDetail> details, Long currentUserId, boolean withActivity) {
+        if (details.isEmpty()) {
+            return;
+        }
+        imageUploadService.fillImagesForUserDetails(details);
+        Map<Long, UserLink> userLinks = findUserLinks(details, currentUserId);
+        Map<String, VacancyUser> vacancyUsers = withActivity ? findVacancyUsers(details) : null;
+        for (VacancyUserDetail detail : details) {
+            UserLink user = userLinks.get(detail.getUserId());
+            if (user != null) {
+                detail.setEmail(user.getEmail());
+                detail.setName(user.getName());
+                detail.setPhone(user.getPhone());
+            }
+            if (withActivity) {
+                VacancyUser vacancyUser = vacancyUsers.get(buildKey(detail.getUserId(), detail.getVacancyId()));
+                if (vacancyUser != null) {
+                    detail.setActive(vacancyUser.getActive());
+                }
+            }
+        }
+    }
+
+    /**
+     * Получение связей пользователей с текущим пользователем HR
+     *
+     * @param details       отклики и приглашения
+     * @param currentUserId идентификатор текущего пользователя HR
+     * @return связи пользователей (ключ - идентификатор пользователя)
+     */
+    private Map<Long, UserLink> findUserLinks(List<VacancyUserDetail> details, Long currentUserId) {
+        Map<Long, UserLink> userLinks = new HashMap<>();
+        List<Long> userIds = details.stream().map(VacancyUserDetail::getUserId).collect(Collectors.toList());
+        for (List<Long> ids : partitionForInClause(userIds)) {
+            em.createQuery("select l from UserLink l where l.parentId = :parentId and l.userId in :userIds", UserLink.class)
+                    .setParameter("parentId", currentUserId)
+                    .setParameter("userIds", ids)
+                    .getResultList()
+                    .forEach(link -> userLinks.put(link.getUserId(), link));
+        }
+        return userLinks;
+    }
+
+    /**
+     * Получение пользователей вакансий
+     *
+     * @param details отклики и приглашения
+     * @return пользователи вакансий (ключ - идентификаторы пользователя и вакансии)
+     */
+    private Map<String, VacancyUser> findVacancyUsers(List<VacancyUserDetail> details) {
+        Map<String, VacancyUser> vacancyUsers = new HashMap<>();
+        for (List<VacancyUserDetail> part : Lists.partition(details, MAX_IN_CLAUSE_SIZE)) {
+            em.createQuery("select v from VacancyUser v where v.vacancyId in :vacancyIds and v.userId in :userIds",
+                    VacancyUser.class)
+                    .setParameter("vacancyIds", part.stream().map(VacancyUserDetail::getVacancyId).distinct().collect(Collectors.toList()))
+                    .setParameter("userIds", part.stream().map(VacancyUserDetail::getUserId).distinct().collect(Collectors.toList()))
+                    .getResultList()
+                    .forEach(user -> vacancyUsers.put(buildKey(user.getUserId(), user.getVacancyId()), user));
+        }
+        return vacancyUsers;
+    }
+
+    private static String buildKey(Long userId, Long vacancyId) {
+        return userId + ":" + vacancyId;
+    }
+}
@@ -0,0 +1,250 @@
+package ru.airlabs.ego.survey.service.resume;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.NoopOptimizer;
+import org.hibernate.id.enhanced.SequenceStructure;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Запись строк опыта и образования резюме
+ * <p>
+ * Строки резюме заменяются целиком: старые строки удаляются одним запросом,
+ * идентификаторы новых строк выбираются из последовательности одним запросом,
+ * новые строки вставляются одним пакетом JDBC.
+ * Таблица, столбцы и последовательность определяются по отображению сущности Hibernate,
+ * значения свойств записываются через типы Hibernate (с учетом конвертеров и пользовательских типов).
+ * Если идентификатор сущности генерируется не простой последовательностью (с шагом 1),
+ * строки сохраняются через JPA.
+ * <p>
+ * Строки удаляются в обход контекста персистентности, поэтому ранее загруженные строки резюме
+ * перед удалением отсоединяются от контекста и удаляются из кэша второго уровня.
+ *
+ * @author Aleksey Gorbachev
+ */
+@Component("resumeDetailsWriter")
+@Transactional(propagation = Propagation.MANDATORY)
+public class ResumeDetailsWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumeDetailsWriter.class);
+
+    /**
+     * Свойство сущности со ссылкой на резюме
+     */
+    private static final String RESUME_ID_PROPERTY = "resumeId";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Jdbc template
+     */
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Запросы для сущностей (определяются при первой записи)
+     */
+    private final Map<Class<?>, TableStatements> statements = new ConcurrentHashMap<>();
+
+    @Autowired
+    private void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    /**
+     * Заменить строки резюме
+     *
+     * @param entityClass класс сущности строк
+     * @param resumeId    идентификатор резюме
+     * @param rows        новые строки (идентификаторы не заполнены)
+     */
+    public <T> void replace(Class<T> entityClass, Long resumeId, List<T> rows) {
+        TableStatements table = statements.computeIfAbsent(entityClass, this::buildStatements);
+        if (table.sequenceSql == null) {    // сохранение через JPA
+            em.createQuery("delete from " + entityClass.getName() + " e where e." + RESUME_ID_PROPERTY + " = :resumeId")
+                    .setParameter("resumeId", resumeId)
+                    .executeUpdate();
+            rows.forEach(em::persist);
+            return;
+        }
+        em.flush(); // строка резюме должна быть записана в БД до вставки ссылающихся на нее строк
+        detachRows(entityClass, table, resumeId);
+        jdbcTemplate.update(table.deleteSql, new MapSqlParameterSource("resumeId", resumeId));
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Long> ids = jdbcTemplate.queryForList(table.sequenceSql,
+                new MapSqlParameterSource("count", rows.size()), Long.class);
+        SharedSessionContractImplementor session = em.unwrap(SharedSessionContractImplementor.class);
+        jdbcTemplate.getJdbcOperations().batchUpdate(table.insertSql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Object[] values = table.persister.getPropertyValues(rows.get(i));
+                ps.setLong(1, ids.get(i));
+                for (int p = 0; p < table.properties.length; p++) {
+                    int property = table.properties[p];
+                    table.types[p].nullSafeSet(ps, values[property], p + 2, session);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * Отсоединить от контекста персистентности загруженные строки резюме
+     * и удалить строки сущности из кэша второго уровня
+     *
+     * @param entityClass класс сущности строк
+     * @param table       запросы для таблицы сущности
+     * @param resumeId    идентификатор резюме
+     */
+    private <T> void detachRows(Class<T> entityClass, TableStatements table, Long resumeId) {
+        List<T> loaded = new ArrayList<>();
+        for (Object key : em.unwrap(Session.class).getStatistics().getEntityKeys()) {
+            EntityKey entityKey = (EntityKey) key;
+            if (entityKey.getEntityName().equals(table.persister.getEntityName())) {
+                loaded.add(em.find(entityClass, entityKey.getIdentifier()));
+            }
+        }
+        for (T row : loaded) {
+            if (row != null && resumeId.equals(table.persister.getPropertyValue(row, RESUME_ID_PROPERTY))) {
+                em.detach(row);
+            }
+        }
+        entityManagerFactory.getCache().evict(entityClass);
+    }
+
+    /**
+     * Построить запросы для сущности по ее отображению Hibernate
+     *
+     * @param entityClass класс сущности
+     * @return запросы
+     */
+    private TableStatements buildStatements(Class<?> entityClass) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(entityClass);
+        TableStatements table = new TableStatements(persister);
+        String sequenceName = getSimpleSequenceName(persister.getIdentifierGenerator());
+        if (sequenceName == null) {
+            LOGGER.warn("Entity {} id is not generated by a simple sequence, rows are saved through JPA", entityClass.getName());
+            return table;
+        }
+        List<Integer> properties = new ArrayList<>();
+        List<Type> propertyTypes = new ArrayList<>();
+        StringBuilder columns = new StringBuilder(persister.getIdentifierColumnNames()[0]);
+        StringBuilder values = new StringBuilder("?");
+        String[] names = persister.getPropertyNames();
+        Type[] types = persister.getPropertyTypes();
+        boolean[] insertable = persister.getPropertyInsertability();
+        for (int i = 0; i < names.length; i++) {
+            if (!insertable[i]) {
+                continue;
+            }
+            if (types[i].isAssociationType() || types[i].getColumnSpan(sessionFactory) != 1) {
+                LOGGER.warn("Entity {} property {} is not a simple column, rows are saved through JPA", entityClass.getName(), names[i]);
+                return table;
+            }
+            columns.append(", ").append(persister.getPropertyColumnNames(i)[0]);
+            values.append(", ?");
+            properties.add(i);
+            propertyTypes.add(types[i]);
+        }
+        table.insertSql = "insert into " + persister.getTableName() + " (" + columns + ") values (" + values + ")";
+        table.deleteSql = "delete from " + persister.getTableName() +
+                " where " + persister.getPropertyColumnNames(RESUME_ID_PROPERTY)[0] + " = :resumeId";
+        table.sequenceSql = "select " + sequenceName + ".nextval from dual connect by level <= :count";
+        table.properties = properties.stream().mapToInt(Integer::intValue).toArray();
+        table.types = propertyTypes.toArray(new Type[0]);
+        LOGGER.info("Entity {} rows are saved in JDBC batches, sequence {}", entityClass.getName(), sequenceName);
+        return table;
+    }
+
+    /**
+     * Получить имя последовательности, если идентификатор генерируется простой последовательностью
+     * (без предварительного выделения значений в приложении)
+     *
+     * @param generator генератор идентификаторов сущности
+     * @return имя последовательности или null
+     */
+    private static String getSimpleSequenceName(IdentifierGenerator generator) {
+        if (generator instanceof SequenceStyleGenerator) {
+            SequenceStyleGenerator sequenceGenerator = (SequenceStyleGenerator) generator;
+            if (sequenceGenerator.getDatabaseStructure() instanceof SequenceStructure
+                    && sequenceGenerator.getOptimizer() instanceof NoopOptimizer
+                    && sequenceGenerator.getDatabaseStructure().getIncrementSize() == 1) {
+                return sequenceGenerator.getDatabaseStructure().getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Запросы для таблицы сущности
+     */
+    private static class TableStatements {
+
+        private final AbstractEntityPersister persister;
+
+        /**
+         * Запрос удаления строк резюме
+         */
+        private String deleteSql;
+
+        /**
+         * Запрос выделения идентификаторов (null - строки сохраняются через JPA)
+         */
+        private String sequenceSql;
+
+        /**
+         * Запрос вставки строки
+         */
+        private String insertSql;
+
+        /**
+         * Номера вставляемых свойств сущности
+         */
+        private int[] properties;
+
+        /**
+         * Типы Hibernate вставляемых свойств сущности
+         */
+        private Type[] types;
+
+        TableStatements(AbstractEntityPersister persister) {
+            this.persister = persister;
+        }
+    }
+}
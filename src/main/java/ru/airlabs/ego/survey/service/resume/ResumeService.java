@@ -3,11 +3,15 @@ package ru.airlabs.ego.survey.service.resume;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.multipart.MultipartFile;
 import ru.airlabs.ego.core.entity.ResumeData;
+import ru.airlabs.ego.survey.dto.resume.ResumeImportResult;
 import ru.airlabs.ego.survey.dto.resume.ResumeInfo;
+import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс сервиса для работы с резюме
@@ -28,6 +32,28 @@ public interface ResumeService {
      */
     ResumeData saveResume(Long vacancyId, Long parentUserId, Resume resume, MultipartFile file, String locale);
 
+    /**
+     * Импортировать список резюме из файла Excel (XLS, XLSX)
+     * <p>
+     * Файл читается потоково, резюме сохраняются пакетами (каждый пакет в отдельной транзакции),
+     * после сохранения каждого пакета ход импорта передается слушателю.
+     * Сам файл не сохраняется: новые резюме создаются без файла, существующие резюме не изменяются.
+     *
+     * @param vacancyId    идентификатор вакансии
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @param file         файл
+     * @param locale       локаль
+     * @param listener     слушатель хода импорта (может быть null)
+     * @return результат импорта
+     * @throws IOException            ошибка ввода-вывода
+     * @throws InvalidFormatException ошибка неверного формата данных
+     */
+    ResumeImportResult importResumeList(Long vacancyId,
+                                        Long parentUserId,
+                                        MultipartFile file,
+                                        String locale,
+                                        Consumer<ResumeImportResult> listener) throws IOException, InvalidFormatException;
+
     /**
      * Сохранить файл резюме для существующего конкретного пользователя
      *
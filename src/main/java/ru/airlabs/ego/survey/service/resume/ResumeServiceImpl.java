@@ -1,17 +1,25 @@
 package ru.airlabs.ego.survey.service.resume;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.jdbc.core.SqlOutParameter;
-import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcCall;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import ru.airlabs.ego.core.entity.ResumeData;
 import ru.airlabs.ego.core.entity.User;
@@ -19,26 +27,32 @@ import ru.airlabs.ego.core.entity.resume.ResumeEducation;
 import ru.airlabs.ego.core.entity.resume.ResumeExperience;
 import ru.airlabs.ego.core.repository.ResumeDataRepository;
 import ru.airlabs.ego.core.repository.UserRepository;
-import ru.airlabs.ego.core.repository.resume.ResumeEducationRepository;
-import ru.airlabs.ego.core.repository.resume.ResumeExperienceRepository;
 import ru.airlabs.ego.model.AdditionalEducation;
 import ru.airlabs.ego.model.Education;
 import ru.airlabs.ego.model.Examination;
 import ru.airlabs.ego.model.Experience;
 import ru.airlabs.ego.survey.config.FileUploadConfig;
+import ru.airlabs.ego.survey.dto.resume.ResumeImportResult;
 import ru.airlabs.ego.survey.dto.resume.ResumeInfo;
 import ru.airlabs.ego.survey.dto.user.Sex;
 import ru.airlabs.ego.survey.service.UserService;
 import ru.airlabs.ego.survey.service.mail.MailSenderService;
+import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
+import ru.airlabs.ego.survey.service.resume.parse.xls.ResumeXLSParseService;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.sql.DataSource;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.sql.CallableStatement;
 import java.sql.Types;
 import java.text.ParseException;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -65,6 +79,22 @@ public class ResumeServiceImpl implements ResumeService {
      */
     private static final String BLACK_BOX_EMAIL = "blackbox@pro.hr";
 
+    /**
+     * Вызов процедуры проверки ссылки на резюме (в анонимном блоке PL/SQL)
+     */
+    private static final String IS_RESUME_LOADED_CALL =
+            "Q_INVITE_PKG.IS_RESUME_LOADED(PID_V_DATA => ?, PURL => ?, PRESULT => ?, PID_USER => ?);";
+
+    /**
+     * Статус проверки ссылки на резюме "общая ошибка" (не кэшируется)
+     */
+    private static final int RESUME_CHECK_ERROR_STATUS = -1;
+
+    /**
+     * Макс. кол-во вызовов процедуры проверки ссылки на резюме в одном анонимном блоке
+     */
+    private static final int IS_RESUME_LOADED_BLOCK_SIZE = 50;
+
     /**
      * Логгер
      */
@@ -77,16 +107,10 @@ public class ResumeServiceImpl implements ResumeService {
     private ResumeDataRepository resumeDataRepository;
 
     /**
-     * Репозиторий опыта для резюме
+     * Запись строк опыта и образования резюме
      */
     @Autowired
-    private ResumeExperienceRepository resumeExperienceRepository;
-
-    /**
-     * Репозиторий образования для резюме
-     */
-    @Autowired
-    private ResumeEducationRepository resumeEducationRepository;
+    private ResumeDetailsWriter resumeDetailsWriter;
 
     /**
      * Сервис для отправки писем
@@ -106,9 +130,6 @@ public class ResumeServiceImpl implements ResumeService {
     @Autowired
     private UserRepository userRepository;
 
-    @Autowired
-    private DataSource dataSource;
-
     /**
      * Конфигурация параметров загрузки файлов
      */
@@ -119,11 +140,58 @@ public class ResumeServiceImpl implements ResumeService {
      */
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    /**
+     * Кол-во резюме, сохраняемых в одной транзакции при импорте из Excel
+     */
+    @Value("${resume.import.batchSize}")
+    private int importBatchSize;
+
+    /**
+     * Шаблон транзакций для сохранения пакетов резюме при импорте
+     */
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Время жизни результата проверки ссылки на резюме в кэше (в секундах)
+     */
+    @Value("${resume.check.cache.ttl}")
+    private long checkCacheTtl;
+
+    /**
+     * Макс. кол-во результатов проверки ссылок на резюме в кэше
+     */
+    @Value("${resume.check.cache.maxSize}")
+    private long checkCacheMaxSize;
+
+    /**
+     * Результаты проверки ссылок на резюме (ключ - идентификатор вакансии и ссылка)
+     */
+    private Cache<String, ResumeInfo> checkedResumes;
+
+    @PostConstruct
+    public void init() {
+        checkedResumes = CacheBuilder.newBuilder()
+                .expireAfterWrite(checkCacheTtl, TimeUnit.SECONDS)
+                .maximumSize(checkCacheMaxSize)
+                .build();
+    }
+
     @Autowired
     private void setDataSource(DataSource dataSource) {
         this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
     }
 
+    /**
+     * Установить менеджер транзакций
+     *
+     * @param platformTransactionManager менеджер транзакций
+     */
+    @Autowired
+    public void setPlatformTransactionManager(PlatformTransactionManager platformTransactionManager) {
+        this.transactionTemplate = new TransactionTemplate(platformTransactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     /**
      * Сохранить резюме
      *
@@ -137,41 +205,54 @@ public class ResumeServiceImpl implements ResumeService {
     @Override
     @Transactional
     public ResumeData saveResume(Long vacancyId, Long parentUserId, Resume resume, MultipartFile file, String locale) {
-        Date birthDate = resume.getBirthDate() != null ?
-                Date.from(resume.getBirthDate().atStartOfDay(ZoneId.systemDefault()).toInstant()) : null;
-        Long userId = userService.getOrCreateUser(resume.getFirstName(), resume.getEmail(), resume.getPhone(),
-                locale, resume.getLastName(), resume.getMiddleName(), resume.getSex(),
-                birthDate, resume.getAddress(), resume.getPosition(), resume.getSalary(), parentUserId);
-        if (userId != null) {
-            List<ResumeData> resumeDataList = resumeDataRepository.findAllByUserIdAndVacancyIdAndDeleted(userId, vacancyId, false);
-            if (resumeDataList.size() > 1) {
-                throw new IllegalStateException(String.format("Кол-во резюме для вакансии %s и пользователя %s превышает 1", vacancyId, userId));
-            } else if (resumeDataList.isEmpty()) {
-                ResumeData data = new ResumeData();
-                data.setUserId(userId);
-                data.setVacancyId(vacancyId);
-                data.setDateCreate(new Date());
-                data.setSource(resume.getSource());
-                data.setType(resume.getType());
-                data.setFileName(file.getOriginalFilename());
-                data.setFileSize(file.getSize());
-                data.setDescription(resume.getPosition());
-                resumeDataRepository.save(data);
-                saveResumeFile(data.getId(), file, resume.getType());
-                return data;
-            } else {
-                ResumeData data = resumeDataList.get(0);
-                data.setSource(resume.getSource());
-                data.setType(resume.getType());
-                data.setFileName(file.getOriginalFilename());
-                data.setFileSize(file.getSize());
-                data.setDescription(resume.getPosition());
-                resumeDataRepository.save(data);
-                saveResumeFile(data.getId(), file, resume.getType());
-                return data;
-            }
+        ResumeData data = saveResumeData(vacancyId, parentUserId, resume, locale, file);
+        if (data != null) {
+            saveResumeFile(data.getId(), file, resume.getType());
+        }
+        return data;
+    }
+
+    /**
+     * Импортировать список резюме из файла Excel (XLS, XLSX)
+     *
+     * @param vacancyId    идентификатор вакансии
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @param file         файл
+     * @param locale       локаль
+     * @param listener     слушатель хода импорта (может быть null)
+     * @return результат импорта
+     * @throws IOException            ошибка ввода-вывода
+     * @throws InvalidFormatException ошибка неверного формата данных
+     */
+    @Override
+    public ResumeImportResult importResumeList(Long vacancyId,
+                                               Long parentUserId,
+                                               MultipartFile file,
+                                               String locale,
+                                               Consumer<ResumeImportResult> listener) throws IOException, InvalidFormatException {
+        final ResumeImportResult result = new ResumeImportResult();
+        final List<Resume> batch = new ArrayList<>(importBatchSize);
+        try (InputStream stream = file.getInputStream()) {
+            // разбор файла приостанавливается на время сохранения очередного пакета,
+            // поэтому в памяти хранится не более одного пакета резюме
+            new ResumeXLSParseService(stream).parse(resume -> {
+                result.parsed++;
+                if (!resume.isContactFilled()) {
+                    result.skipped++;
+                    return;
+                }
+                batch.add(resume);
+                if (batch.size() >= importBatchSize) {
+                    saveResumeBatch(vacancyId, parentUserId, batch, locale, result, listener);
+                }
+            });
+        }
+        if (!batch.isEmpty()) {
+            saveResumeBatch(vacancyId, parentUserId, batch, locale, result, listener);
         }
-        return null;
+        LOGGER.info("Resume import for vacancy {}: parsed {}, saved {}, skipped {}, failed {}",
+                vacancyId, result.parsed, result.saved, result.skipped, result.failed);
+        return result;
     }
 
     /**
@@ -195,6 +276,7 @@ public class ResumeServiceImpl implements ResumeService {
         if (type == null) {
             throw new IllegalArgumentException(String.format("Resource type '%s' is not supported", ext));
         }
+        invalidateCheckedResume(vacancyId, url);
         List<ResumeData> resumeDataList = resumeDataRepository.findAllByUserIdAndVacancyIdAndDeleted(userId, vacancyId, false);
         if (resumeDataList.size() > 1) {
             throw new IllegalStateException(String.format("Кол-во резюме для вакансии %s и пользователя %s превышает 1", vacancyId, userId));
@@ -234,6 +316,7 @@ public class ResumeServiceImpl implements ResumeService {
                                              MultipartFile file,
                                              Resume resume,
                                              String url) {
+        invalidateCheckedResume(vacancyId, url);
         List<ResumeData> resumeDataList = resumeDataRepository.findAllByUserIdAndVacancyIdAndDeleted(userId, vacancyId, false);
         ResumeData data;
         try {
@@ -277,6 +360,10 @@ public class ResumeServiceImpl implements ResumeService {
             return Optional.empty();
         }
         ResumeData data = resumeDataList.get(0);
+        if (data.getType() == null) {
+            // резюме импортировано из Excel без файла
+            return Optional.empty();
+        }
         final String root = fileUploadConfig.getUserResumeRootLocation();
         final long folderNumber = data.getId() / fileUploadConfig.getMaxDirectorySize() + 1;
         String ext = getFileExtension(data.getType());
@@ -340,25 +427,29 @@ public class ResumeServiceImpl implements ResumeService {
     @Transactional
     @Override
     public List<ResumeInfo> checkResumeLoaded(Long vacancyId, List<String> resumeUrls) {
-        List<ResumeInfo> resumeInfoList = new ArrayList<>();
+        Map<String, ResumeInfo> results = new HashMap<>();
+        Set<String> uncheckedUrls = new LinkedHashSet<>();
+        for (String url : resumeUrls) {
+            ResumeInfo info = checkedResumes.getIfPresent(checkedResumeKey(vacancyId, url));
+            if (info != null) {
+                results.put(url, info);
+            } else {
+                uncheckedUrls.add(url);
+            }
+        }
+        if (!uncheckedUrls.isEmpty()) {
+            List<ResumeInfo> checked = callIsResumeLoaded(vacancyId, new ArrayList<>(uncheckedUrls));
+            for (ResumeInfo info : checked) {
+                results.put(info.getUrl(), info);
+                if (info.getStatus() != RESUME_CHECK_ERROR_STATUS) {
+                    checkedResumes.put(checkedResumeKey(vacancyId, info.getUrl()), info);
+                }
+            }
+            writeCheckResumeInLog(vacancyId, checked);
+        }
+        List<ResumeInfo> resumeInfoList = new ArrayList<>(resumeUrls.size());
         for (String url : resumeUrls) {
-            Map<String, Object> result = new SimpleJdbcCall(dataSource)
-                    .withCatalogName("Q_INVITE_PKG")
-                    .withProcedureName("IS_RESUME_LOADED")
-                    .declareParameters(
-                            new SqlParameter("PID_V_DATA", Types.BIGINT),
-                            new SqlParameter("PURL", Types.VARCHAR),
-
-                            new SqlOutParameter("PRESULT", Types.BIGINT),
-                            new SqlOutParameter("PID_USER", Types.BIGINT))
-                    .execute(new MapSqlParameterSource()
-                            .addValue("PID_V_DATA", vacancyId)
-                            .addValue("PURL", url));
-            Long userId = (Long) result.get("PID_USER");
-            Integer status = ((Long) result.get("PRESULT")).intValue();
-
-            writeCheckResumeInLog(vacancyId, userId, url, status);
-            resumeInfoList.add(new ResumeInfo(userId, status, url));
+            resumeInfoList.add(results.get(url));
         }
         return resumeInfoList;
     }
@@ -395,21 +486,113 @@ public class ResumeServiceImpl implements ResumeService {
     }
 
     /**
-     * Логгирование проверки ссылки на резюме
+     * Проверка списка ссылок на резюме
+     * (процедура проверки вызывается для каждой ссылки в анонимном блоке PL/SQL,
+     * большие списки разбиваются на блоки по {@link #IS_RESUME_LOADED_BLOCK_SIZE} ссылок)
+     *
+     * @param vacancyId идентификатор вакансии
+     * @param urls      список ссылок на резюме (без повторов)
+     * @return результат проверки в порядке ссылок
+     */
+    private List<ResumeInfo> callIsResumeLoaded(Long vacancyId, List<String> urls) {
+        List<ResumeInfo> result = new ArrayList<>(urls.size());
+        for (List<String> chunk : Lists.partition(urls, IS_RESUME_LOADED_BLOCK_SIZE)) {
+            result.addAll(callIsResumeLoadedBlock(vacancyId, chunk));
+        }
+        return result;
+    }
+
+    /**
+     * Проверка списка ссылок на резюме в одном анонимном блоке PL/SQL
+     *
+     * @param vacancyId идентификатор вакансии
+     * @param urls      список ссылок на резюме (без повторов)
+     * @return результат проверки в порядке ссылок
+     */
+    private List<ResumeInfo> callIsResumeLoadedBlock(Long vacancyId, List<String> urls) {
+        CallableStatementCreator creator = connection -> {
+            StringBuilder sql = new StringBuilder("begin\n");
+            for (int i = 0; i < urls.size(); i++) {
+                sql.append(IS_RESUME_LOADED_CALL).append('\n');
+            }
+            CallableStatement cs = connection.prepareCall(sql.append("end;").toString());
+            int index = 1;
+            for (String url : urls) {
+                cs.setLong(index++, vacancyId);
+                cs.setString(index++, url);
+                cs.registerOutParameter(index++, Types.BIGINT);
+                cs.registerOutParameter(index++, Types.BIGINT);
+            }
+            return cs;
+        };
+        CallableStatementCallback<List<ResumeInfo>> callback = cs -> {
+            cs.execute();
+            List<ResumeInfo> result = new ArrayList<>(urls.size());
+            int index = 3;
+            for (String url : urls) {
+                Integer status = (int) cs.getLong(index);
+                long userId = cs.getLong(index + 1);
+                result.add(new ResumeInfo(cs.wasNull() ? null : userId, status, url));
+                index += 4;
+            }
+            return result;
+        };
+        return jdbcTemplate.getJdbcOperations().execute(creator, callback);
+    }
+
+    /**
+     * Ключ результата проверки ссылки на резюме
      *
      * @param vacancyId идентификатор вакансии
-     * @param userId    идентификатор пользователя
      * @param url       ссылка
-     * @param status    статус
+     * @return ключ
      */
-    private void writeCheckResumeInLog(Long vacancyId, Long userId, String url, Integer status) {
-        String info = new StringBuilder("PLUGIN CHECK RESUME URL: ")
-                .append("userId=").append(userId).append(", ")
+    private static String checkedResumeKey(Long vacancyId, String url) {
+        return vacancyId + ":" + url;
+    }
+
+    /**
+     * Удалить результат проверки ссылки на резюме из кэша
+     * (при сохранении резюме результат проверки ссылки меняется;
+     * внутри транзакции результат удаляется сразу и еще раз после фиксации транзакции,
+     * чтобы параллельная проверка не вернула в кэш результат до сохранения резюме)
+     *
+     * @param vacancyId идентификатор вакансии
+     * @param url       ссылка
+     */
+    private void invalidateCheckedResume(Long vacancyId, String url) {
+        if (url == null) {
+            return;
+        }
+        final String key = checkedResumeKey(vacancyId, url);
+        checkedResumes.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    checkedResumes.invalidate(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Логгирование проверки ссылок на резюме (одной записью на список ссылок)
+     *
+     * @param vacancyId идентификатор вакансии
+     * @param checked   результаты проверки
+     */
+    private void writeCheckResumeInLog(Long vacancyId, List<ResumeInfo> checked) {
+        StringBuilder info = new StringBuilder("PLUGIN CHECK RESUME URLS: ")
                 .append("vacancyId=").append(vacancyId).append(", ")
-                .append("url=").append(url).append(", ")
-                .append("result=").append(status).append(", ")
-                .toString();
-        LOGGER.info(info);
+                .append("count=").append(checked.size());
+        for (ResumeInfo resumeInfo : checked) {
+            info.append("; ")
+                    .append("userId=").append(resumeInfo.getUserId()).append(", ")
+                    .append("url=").append(resumeInfo.getUrl()).append(", ")
+                    .append("result=").append(resumeInfo.getStatus());
+        }
+        LOGGER.info(info.toString());
     }
 
     /**
@@ -455,16 +638,21 @@ public class ResumeServiceImpl implements ResumeService {
 
     /**
      * Сохранение опыта и образования соискателя для резюме
+     * (при повторной загрузке резюме ранее сохраненные опыт и образование заменяются)
      *
      * @param resumeId идентификатор резюме
      * @param resume   данные по резюме
      */
     private void saveResumeExperienceAndEducationFromHtml(Long resumeId, Resume resume) {
         if (resume.getHtmlResume() != null) {
-            fillResumeExperience(resumeId, resume.getHtmlResume().getExperiences());
-            fillResumeEducation(resumeId, resume.getHtmlResume().getEducationsInfo());
-            fillResumeAdditionalEducation(resumeId, resume.getHtmlResume().getAdditionalEducations());
-            fillResumeExamination(resumeId, resume.getHtmlResume().getExaminations());
+            List<ResumeExperience> experiences = new ArrayList<>();
+            fillResumeExperience(resumeId, resume.getHtmlResume().getExperiences(), experiences);
+            List<ResumeEducation> educations = new ArrayList<>();
+            fillResumeEducation(resumeId, resume.getHtmlResume().getEducationsInfo(), educations);
+            fillResumeAdditionalEducation(resumeId, resume.getHtmlResume().getAdditionalEducations(), educations);
+            fillResumeExamination(resumeId, resume.getHtmlResume().getExaminations(), educations);
+            resumeDetailsWriter.replace(ResumeExperience.class, resumeId, experiences);
+            resumeDetailsWriter.replace(ResumeEducation.class, resumeId, educations);
         }
     }
 
@@ -473,8 +661,9 @@ public class ResumeServiceImpl implements ResumeService {
      *
      * @param resumeId    идентификатор резюме
      * @param experiences опыт
+     * @param rows        строки опыта для резюме
      */
-    private void fillResumeExperience(Long resumeId, List<Experience> experiences) {
+    private void fillResumeExperience(Long resumeId, List<Experience> experiences, List<ResumeExperience> rows) {
         if (experiences != null) {
             for (Experience experience : experiences) {
                 ResumeExperience resumeExperience = new ResumeExperience();
@@ -485,7 +674,7 @@ public class ResumeServiceImpl implements ResumeService {
                 resumeExperience.setCompanyName(experience.getCompanyName());
                 resumeExperience.setAddressLocality(experience.getAddressLocality());
                 resumeExperience.setDates(experience.getDates());
-                resumeExperienceRepository.save(resumeExperience);
+                rows.add(resumeExperience);
             }
         }
     }
@@ -495,8 +684,9 @@ public class ResumeServiceImpl implements ResumeService {
      *
      * @param resumeId   идентификатор резюме
      * @param educations данные об образовании
+     * @param rows       строки образования для резюме
      */
-    private void fillResumeEducation(Long resumeId, List<Education> educations) {
+    private void fillResumeEducation(Long resumeId, List<Education> educations, List<ResumeEducation> rows) {
         if (educations != null) {
             for (Education education : educations) {
                 ResumeEducation resumeEducation = new ResumeEducation();
@@ -505,7 +695,7 @@ public class ResumeServiceImpl implements ResumeService {
                 resumeEducation.setOrganization(education.getEducationOrganization());
                 resumeEducation.setDates(education.getDate());
                 resumeEducation.setType("B");   // [B]ase
-                resumeEducationRepository.save(resumeEducation);
+                rows.add(resumeEducation);
             }
         }
     }
@@ -515,8 +705,9 @@ public class ResumeServiceImpl implements ResumeService {
      *
      * @param resumeId   идентификатор резюме
      * @param educations данные об образовании
+     * @param rows       строки образования для резюме
      */
-    private void fillResumeAdditionalEducation(Long resumeId, List<AdditionalEducation> educations) {
+    private void fillResumeAdditionalEducation(Long resumeId, List<AdditionalEducation> educations, List<ResumeEducation> rows) {
         if (educations != null) {
             for (AdditionalEducation education : educations) {
                 ResumeEducation resumeEducation = new ResumeEducation();
@@ -525,7 +716,7 @@ public class ResumeServiceImpl implements ResumeService {
                 resumeEducation.setOrganization(education.getEducationOrganization());
                 resumeEducation.setDates(education.getDate());
                 resumeEducation.setType("A");   // [A]dditional
-                resumeEducationRepository.save(resumeEducation);
+                rows.add(resumeEducation);
             }
         }
     }
@@ -535,8 +726,9 @@ public class ResumeServiceImpl implements ResumeService {
      *
      * @param resumeId   идентификатор резюме
      * @param educations данные об образовании
+     * @param rows       строки образования для резюме
      */
-    private void fillResumeExamination(Long resumeId, List<Examination> educations) {
+    private void fillResumeExamination(Long resumeId, List<Examination> educations, List<ResumeEducation> rows) {
         if (educations != null) {
             for (Examination education : educations) {
                 ResumeEducation resumeEducation = new ResumeEducation();
@@ -545,11 +737,134 @@ public class ResumeServiceImpl implements ResumeService {
                 resumeEducation.setOrganization(education.getEducationOrganization());
                 resumeEducation.setDates(education.getDate());
                 resumeEducation.setType("E"); // [E]xamination
-                resumeEducationRepository.save(resumeEducation);
+                rows.add(resumeEducation);
             }
         }
     }
 
+    /**
+     * Сохранить данные резюме (без файла)
+     *
+     * @param vacancyId    идентификатор вакансии
+     * @param parentUserId идентификатор пользователя, создающего нового пользователя
+     * @param resume       данные резюме
+     * @param locale       локаль
+     * @param file         файл резюме (null - при импорте из Excel)
+     * @return резюме или null, если не удалось создать пользователя
+     */
+    private ResumeData saveResumeData(Long vacancyId,
+                                      Long parentUserId,
+                                      Resume resume,
+                                      String locale,
+                                      MultipartFile file) {
+        Date birthDate = resume.getBirthDate() != null ?
+                Date.from(resume.getBirthDate().atStartOfDay(ZoneId.systemDefault()).toInstant()) : null;
+        Long userId = userService.getOrCreateUser(resume.getFirstName(), resume.getEmail(), resume.getPhone(),
+                locale, resume.getLastName(), resume.getMiddleName(), resume.getSex(),
+                birthDate, resume.getAddress(), resume.getPosition(), resume.getSalary(), parentUserId);
+        if (userId == null) {
+            return null;
+        }
+        List<ResumeData> resumeDataList = resumeDataRepository.findAllByUserIdAndVacancyIdAndDeleted(userId, vacancyId, false);
+        if (resumeDataList.size() > 1) {
+            throw new IllegalStateException(String.format("Кол-во резюме для вакансии %s и пользователя %s превышает 1", vacancyId, userId));
+        }
+        ResumeData data;
+        if (resumeDataList.isEmpty()) {
+            data = new ResumeData();
+            data.setUserId(userId);
+            data.setVacancyId(vacancyId);
+            data.setDateCreate(new Date());
+        } else {
+            data = resumeDataList.get(0);
+        }
+        if (prepareResumeData(data, resume, file)) {
+            resumeDataRepository.save(data);
+        }
+        return data;
+    }
+
+    /**
+     * Заполнить данные резюме перед сохранением
+     * (при импорте из Excel файл резюме не сохраняется, поэтому у новых резюме данные файла не заполняются,
+     * а существующие резюме остаются без изменений вместе с ранее загруженным файлом)
+     *
+     * @param data   сущность резюме
+     * @param resume данные резюме
+     * @param file   файл резюме (null - при импорте из Excel)
+     * @return true - если резюме нужно сохранить
+     */
+    static boolean prepareResumeData(ResumeData data, Resume resume, MultipartFile file) {
+        if (file == null && data.getId() != null) {
+            return false;
+        }
+        data.setSource(resume.getSource());
+        if (file != null) {
+            data.setType(resume.getType());
+            data.setFileName(file.getOriginalFilename());
+            data.setFileSize(file.getSize());
+        }
+        data.setDescription(resume.getPosition());
+        return true;
+    }
+
+    /**
+     * Сохранить пакет резюме при импорте
+     * (если пакет не удалось сохранить в одной транзакции - резюме сохраняются по отдельности)
+     *
+     * @param vacancyId    идентификатор вакансии
+     * @param parentUserId идентификатор пользователя, создающего новых пользователей
+     * @param batch        пакет резюме (очищается после сохранения)
+     * @param locale       локаль
+     * @param result       ход импорта
+     * @param listener     слушатель хода импорта (может быть null)
+     */
+    private void saveResumeBatch(Long vacancyId,
+                                 Long parentUserId,
+                                 List<Resume> batch,
+                                 String locale,
+                                 ResumeImportResult result,
+                                 Consumer<ResumeImportResult> listener) {
+        Integer saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                int count = 0;
+                for (Resume resume : batch) {
+                    if (saveResumeData(vacancyId, parentUserId, resume, locale, null) != null) {
+                        count++;
+                    }
+                }
+                return count;
+            });
+        } catch (RuntimeException e) {
+            LOGGER.error("Resume import batch error, fallback to single resumes", e);
+            saved = null;
+        }
+        if (saved != null) {
+            result.saved += saved;
+            result.skipped += batch.size() - saved;
+        } else {
+            for (Resume resume : batch) {
+                try {
+                    ResumeData data = transactionTemplate.execute(status ->
+                            saveResumeData(vacancyId, parentUserId, resume, locale, null));
+                    if (data != null) {
+                        result.saved++;
+                    } else {
+                        result.skipped++;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Resume import error", e);
+                    result.failed++;
+                }
+            }
+        }
+        batch.clear();
+        if (listener != null) {
+            listener.accept(result);
+        }
+    }
+
     /**
      * Сохранить резюме в файл
      *
@@ -1,6 +1,7 @@
 package ru.airlabs.ego.survey.service.resume.parse;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.io.IOUtils;
 import ru.airlabs.ego.ResumeParser;
 import ru.airlabs.ego.Type;
@@ -28,9 +29,10 @@ import static ru.airlabs.ego.core.entity.ResumeData.Source;
 public class ResumeParseService implements IResumeListParseService {
 
     /**
-     * Расширение Excel-файлов с резюме
+     * Расширения Excel-файлов с резюме
      */
     private static final String EXCEL_FILE_EXTENSION = "xls";
+    private static final String EXCEL_XML_FILE_EXTENSION = "xlsx";
 
     /**
      * Расширения RTF-файлов с резюме
@@ -38,6 +40,11 @@ public class ResumeParseService implements IResumeListParseService {
     private static final String RTF_FILE_EXTENSION = "rtf";
     private static final String DOC_FILE_EXTENSION = "doc";
 
+    /**
+     * Объект для чтения резюме из JSON (создается один раз, потокобезопасен)
+     */
+    private static final ObjectReader RESUME_HTML_MODEL_READER = new ObjectMapper().readerFor(ResumeHtmlModel.class);
+
     /**
      * Полное имя файла с резюме
      */
@@ -55,7 +62,7 @@ public class ResumeParseService implements IResumeListParseService {
 
     /**
      * Распарсить список резюме
-     * (поддерживаемые форматы: RTF, XLS)
+     * (поддерживаемые форматы: RTF, DOC, XLS, XLSX)
      *
      * @return список резюме
      * @throws IOException            ошибка ввода-вывода
@@ -64,7 +71,7 @@ public class ResumeParseService implements IResumeListParseService {
     @Override
     public List<Resume> parse() throws IOException, InvalidFormatException {
         String fileExtension = getExtension(fileName);
-        if (fileExtension.equals(EXCEL_FILE_EXTENSION)) {   // формат Excel
+        if (fileExtension.equals(EXCEL_FILE_EXTENSION) || fileExtension.equals(EXCEL_XML_FILE_EXTENSION)) {   // формат Excel
             return parseInXLS();
         } else if (fileExtension.equals(RTF_FILE_EXTENSION) || fileExtension.equals(DOC_FILE_EXTENSION)) {    // формат RTF или DOC
             Resume resume = parseRtfOrDoc();
@@ -97,7 +104,7 @@ public class ResumeParseService implements IResumeListParseService {
             } else {
                 resumeInJson = ResumeParser.parse(IOUtils.toString(stream, StandardCharsets.UTF_8.name()), Type.TRUD_VSEM);
             }
-            ResumeHtmlModel resumeHtmlModel = new ObjectMapper().readValue(resumeInJson, ResumeHtmlModel.class);
+            ResumeHtmlModel resumeHtmlModel = RESUME_HTML_MODEL_READER.readValue(resumeInJson);
             Resume resume = resumeHtmlModel.buildResume(source);
             return resume != null ? asList(resume) : emptyList();
         } catch (Exception ex) {
@@ -116,12 +123,12 @@ public class ResumeParseService implements IResumeListParseService {
         byte[] bytes = IOUtils.toByteArray(stream); // получаем массив байт для раздельного использования потока сервисами
         Resume resume;
         try {   // разбор в формате RTF (hh.ru, superjob.ru, rabota.ua)
-            List<IResumeParseService> services = asList(
-                    new ResumeHHParseService(new ByteArrayInputStream(bytes)),
-                    new ResumeRabotaUAParseService(new ByteArrayInputStream(bytes)),
-                    new ResumeSuperjobRUParseService(new ByteArrayInputStream(bytes))); // список сервисов для разбора резюме с hh.ru, superjob.ru, rabota.ua
+            List<ResumeLinesExtractor> extractors = asList(
+                    new ResumeHHParseService(),
+                    new ResumeRabotaUAParseService(),
+                    new ResumeSuperjobRUParseService()); // список извлекателей данных резюме с hh.ru, superjob.ru, rabota.ua
 
-            resume = new ResumeRTFParseService(services).parse();
+            resume = new ResumeRTFParseService(new ByteArrayInputStream(bytes), extractors).parse();
         } catch (InvalidFormatException ex) {   // если не удалось в RTF - парсим для work.ua в формате DOC
             resume = new ResumeWorkUAParseService(new ByteArrayInputStream(bytes)).parse();
         }
@@ -129,7 +136,7 @@ public class ResumeParseService implements IResumeListParseService {
     }
 
     /**
-     * Разбор резюме в формате XLS
+     * Разбор резюме в формате XLS или XLSX
      *
      * @return резюме
      */
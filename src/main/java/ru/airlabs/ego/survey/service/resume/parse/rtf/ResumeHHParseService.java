@@ -1,23 +1,14 @@
 package ru.airlabs.ego.survey.service.resume.parse.rtf;
 
-import org.apache.commons.io.IOUtils;
 import ru.airlabs.ego.survey.dto.user.Sex;
 import ru.airlabs.ego.survey.service.resume.Resume;
-import ru.airlabs.ego.survey.service.resume.parse.IResumeParseService;
-import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
-import ru.airlabs.parser.rtf.rpk.parser.RtfStreamSource;
-import ru.airlabs.parser.rtf.rpk.text.StringTextConverter;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.time.LocalDate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.apache.logging.log4j.util.Strings.isNotBlank;
 import static ru.airlabs.ego.core.entity.ResumeData.Source;
 import static ru.airlabs.ego.core.entity.ResumeData.Type;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.*;
 
 
 /**
@@ -25,7 +16,7 @@ import static ru.airlabs.ego.core.entity.ResumeData.Type;
  *
  * @author Roman Kochergin
  */
-public class ResumeHHParseService implements IResumeParseService {
+public class ResumeHHParseService implements ResumeLinesExtractor {
 
     /**
      * Текст заголовка для занимаемой должности в резюме на английском
@@ -37,74 +28,15 @@ public class ResumeHHParseService implements IResumeParseService {
      */
     private static final String RUSSIAN_RESUME_POSITION_TAG = "желаемая должность и зарплата";
 
-    /**
-     * Последовательности символов, мешающие разбору резюме из HH в формате rtf (регулярное выражение)
-     */
-    private static final String errorCharSequence = "\\{\\\\cf189[0-9]{9}\\}";
-
-    /**
-     * Поток данных
-     */
-    private InputStream inputStream;
-
-    /**
-     * Конструктор
-     *
-     * @param inputStream поток данных
-     */
-    public ResumeHHParseService(InputStream inputStream) {
-        this.inputStream = inputStream;
-    }
-
-    /**
-     * Распарсить файл-резюме
-     *
-     * @return резюме
-     * @throws IOException    ошибка ввода-вывода
-     * @throws InvalidFormatException ошибка неверного формата данных
-     */
-    @Override
-    public Resume parse() throws IOException, InvalidFormatException {
-        try (InputStream stream = new ByteArrayInputStream(clearBytes(getInputStream()))) {
-            StringTextConverter converter = new StringTextConverter();
-            converter.convert(new RtfStreamSource(stream));
-            String text = converter.getText();
-            String[] lines = getLines(text);
-            return buildResumeFromLines(lines);
-        } catch (Exception e) {
-            throw new InvalidFormatException("Неверный формат данных", e);
-        }
-    }
-
-    /**
-     * Убираем из входного потока символы, которые мешают разбору библиотекой rtf-parser-kit
-     *
-     * @param stream входной поток
-     * @return массив байт
-     * @throws IOException
-     */
-    private byte[] clearBytes(InputStream stream) throws IOException {
-        byte[] bytes = IOUtils.toByteArray(stream);
-        String fileContent = new String(bytes);
-        fileContent = fileContent.replaceAll(errorCharSequence, "");
-        return fileContent.getBytes();
-    }
-
-
-    public InputStream getInputStream() {
-        return inputStream;
-    }
-
     /**
      * Получение массива строк из файла
      *
      * @param text текст из файла
      * @return массив строк
      */
-    protected String[] getLines(String text) {
+    protected static String[] getLines(String text) {
         // убираем пустые строки
-        text = text.replaceAll("(?m)^[ \t]*\r?\n", "");
-        return text.split("\\n");
+        return split(text);
     }
 
     /**
@@ -113,7 +45,8 @@ public class ResumeHHParseService implements IResumeParseService {
      * @param lines строки файла
      * @return модель резюме
      */
-    protected Resume buildResumeFromLines(String[] lines) {
+    @Override
+    public Resume buildResumeFromLines(String[] lines) {
         if (isResumeInEnglish(lines)) {
             return parseEnglish(lines);
         } else {
@@ -121,6 +54,23 @@ public class ResumeHHParseService implements IResumeParseService {
         }
     }
 
+    /**
+     * Проверка признаков резюме из HH (заголовок желаемой должности на русском или английском)
+     *
+     * @param lines строки файла
+     * @return true - если строки похожи на резюме из HH
+     */
+    @Override
+    public boolean hasSignature(String[] lines) {
+        for (String line : lines) {
+            String formatLine = normalize(line);
+            if (formatLine.startsWith(RUSSIAN_RESUME_POSITION_TAG) || formatLine.startsWith(ENGLISH_RESUME_POSITION_TAG)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Проверка на анлийском ли языке резюме
      *
@@ -129,7 +79,7 @@ public class ResumeHHParseService implements IResumeParseService {
      */
     private boolean isResumeInEnglish(String[] lines) {
         for (String line : lines) {
-           String formatLine = line.replaceAll(" +", " ").toLowerCase().trim();
+           String formatLine = normalize(line);
            if (formatLine.startsWith(RUSSIAN_RESUME_POSITION_TAG)) {
                return Boolean.FALSE;
            } else if (formatLine.startsWith(ENGLISH_RESUME_POSITION_TAG)) {
@@ -149,11 +99,11 @@ public class ResumeHHParseService implements IResumeParseService {
         Resume resume = new Resume(Source.HH, Type.R);
         try {
             for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                line = line.replaceAll("\\t", "").trim();
+                String line = clean(lines[i]);
+                String lowerLine = line.toLowerCase();
                 if (i == 0) {
                     // ФИО
-                    String[] name = line.replaceAll(" +", " ").split(" ");
+                    String[] name = collapseSpaces(line).split(" ");
                     if (name.length > 1) {
                         resume.setLastName(name[0]);
                         resume.setFirstName(name[1]);
@@ -164,9 +114,9 @@ public class ResumeHHParseService implements IResumeParseService {
                 }
                 if (i == 1) {
                     // пол
-                    if (line.toLowerCase().contains("женщина")) {
+                    if (lowerLine.contains("женщина")) {
                         resume.setSex(Sex.W);
-                    } else if (line.toLowerCase().contains("мужчина")) {
+                    } else if (lowerLine.contains("мужчина")) {
                         resume.setSex(Sex.M);
                     }
                     // дата рождения
@@ -182,30 +132,30 @@ public class ResumeHHParseService implements IResumeParseService {
                         resume.setPhone(parsePhone(line));
                     }
                 }
-                if (line.toLowerCase().startsWith("проживает:")) {
+                if (lowerLine.startsWith("проживает:")) {
                     // адрес
                     if (resume.getAddress() == null) {
-                        String s = line.replaceFirst("(?i)(?u)проживает:", "");
+                        String s = line.substring("проживает:".length());
                         resume.setAddress(s.trim());
                     }
                 }
-                if (line.replaceAll(" +", " ").toLowerCase().equals(RUSSIAN_RESUME_POSITION_TAG)) {
+                if (collapseSpaces(lowerLine).equals(RUSSIAN_RESUME_POSITION_TAG)) {
                     // должность
                     if (resume.getPosition() == null) {
-                        String position = "";
+                        StringBuilder position = new StringBuilder();
                         for (int j = (i + 1); j < lines.length; j++) {
-                            String s = lines[j].replaceAll("\\t", "").trim();
-                            if (s.toLowerCase().startsWith("занятость:")) {
+                            String s = clean(lines[j]);
+                            if (startsWithIgnoreCase(s, "занятость:")) {
                                 if (position.length() > 0) {
-                                    resume.setPosition(position);
+                                    resume.setPosition(position.toString());
                                     break;
                                 }
                             }
-                            position += (s + "\n");
+                            position.append(s).append('\n');
                         }
                     }
                 }
-                if ((i == 15 || i == 16 || i == 17) && !line.toLowerCase().contains("опыт работы")) {  // зарплата
+                if ((i == 15 || i == 16 || i == 17) && !lowerLine.contains("опыт работы")) {  // зарплата
                     if (resume.getSalary() == null) {
                         resume.setSalary(parseSalary(line));
                     }
@@ -230,11 +180,11 @@ public class ResumeHHParseService implements IResumeParseService {
         Resume resume = new Resume(Source.HH, Type.R);
         try {
             for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                line = line.replaceAll("\\t", "").trim();
+                String line = clean(lines[i]);
+                String lowerLine = line.toLowerCase();
                 if (i == 0) {
                     // ФИО
-                    String[] name = line.replaceAll(" +", " ").split(" ");
+                    String[] name = collapseSpaces(line).split(" ");
                     if (name.length > 1) {
                         resume.setLastName(name[0]);
                         resume.setFirstName(name[1]);
@@ -245,9 +195,9 @@ public class ResumeHHParseService implements IResumeParseService {
                 }
                 if (i == 1) {
                     // пол
-                    if (line.toLowerCase().contains("female")) {
+                    if (lowerLine.contains("female")) {
                         resume.setSex(Sex.W);
-                    } else if (line.toLowerCase().contains("male")) {
+                    } else if (lowerLine.contains("male")) {
                         resume.setSex(Sex.M);
                     }
                     // дата рождения
@@ -263,30 +213,30 @@ public class ResumeHHParseService implements IResumeParseService {
                         resume.setPhone(parsePhone(line));
                     }
                 }
-                if (line.toLowerCase().startsWith("reside in:")) {
+                if (lowerLine.startsWith("reside in:")) {
                     // адрес
                     if (resume.getAddress() == null) {
-                        String s = line.replaceFirst("(?i)(?u)reside in:", "");
+                        String s = line.substring("reside in:".length());
                         resume.setAddress(s.trim());
                     }
                 }
-                if (line.replaceAll(" +", " ").toLowerCase().equals(ENGLISH_RESUME_POSITION_TAG)) {
+                if (collapseSpaces(lowerLine).equals(ENGLISH_RESUME_POSITION_TAG)) {
                     // должность
                     if (resume.getPosition() == null) {
-                        String position = "";
+                        StringBuilder position = new StringBuilder();
                         for (int j = (i + 1); j < lines.length; j++) {
-                            String s = lines[j].replaceAll("\\t", "").trim();
-                            if (s.toLowerCase().startsWith("employment:")) {
+                            String s = clean(lines[j]);
+                            if (startsWithIgnoreCase(s, "employment:")) {
                                 if (position.length() > 0) {
-                                    resume.setPosition(position);
+                                    resume.setPosition(position.toString());
                                     break;
                                 }
                             }
-                            position += (s + "\n");
+                            position.append(s).append('\n');
                         }
                     }
                 }
-                if ((i == 15 || i == 16 || i == 17) && !line.toLowerCase().contains("work experience")) {  // зарплата
+                if ((i == 15 || i == 16 || i == 17) && !lowerLine.contains("work experience")) {  // зарплата
                     if (resume.getSalary() == null) {
                         resume.setSalary(parseSalary(line));
                     }
@@ -311,10 +261,11 @@ public class ResumeHHParseService implements IResumeParseService {
         String[] tokens = s.split(",");
         for (String token : tokens) {
             String text = null;
-            if (token.toLowerCase().contains("родилась")) {
-                text = token.replace("родилась", "").trim().replaceAll(" +", " ").toLowerCase();
-            } else if (token.toLowerCase().contains("родился")) {
-                text = token.replace("родился", "").trim().replaceAll(" +", " ").toLowerCase();
+            String lowerToken = token.toLowerCase();
+            if (lowerToken.contains("родилась")) {
+                text = collapseSpaces(token.replace("родилась", "").trim()).toLowerCase();
+            } else if (lowerToken.contains("родился")) {
+                text = collapseSpaces(token.replace("родился", "").trim()).toLowerCase();
             }
             if (text != null) {
                 String[] date = text.split(" ");
@@ -364,7 +315,7 @@ public class ResumeHHParseService implements IResumeParseService {
         for (String token : tokens) {
             String text = null;
             if (token.toLowerCase().contains("born on")) {
-                text = token.replace("born on", "").trim().replaceAll(" +", " ").toLowerCase();
+                text = collapseSpaces(token.replace("born on", "").trim()).toLowerCase();
             }
             if (text != null) {
                 String[] date = text.split(" ");
@@ -410,11 +361,7 @@ public class ResumeHHParseService implements IResumeParseService {
      * @return email
      */
     private String parseEmail(String s) {
-        Matcher m = Pattern.compile("[a-zA-Z0-9_.+-]+@[a-zA-Z0-9-]+\\.[a-zA-Z0-9-.]+").matcher(s);
-        if (m.find()) {
-            return m.group().toLowerCase();
-        }
-        return null;
+        return findEmail(s);
     }
 
     /**
@@ -429,10 +376,9 @@ public class ResumeHHParseService implements IResumeParseService {
         }
         int idx = findFirstLetterPosition(s);
         if (idx == -1) {
-            s = s.replaceAll("[^\\d]", "");
+            s = digits(s);
         } else {
-            s = s.substring(0, idx);
-            s = s.replaceAll("[^\\d]", "");
+            s = digits(s.substring(0, idx));
         }
         if (s.length() == 11) {
             if (s.startsWith("8")) {
@@ -474,7 +420,7 @@ public class ResumeHHParseService implements IResumeParseService {
      */
     protected Integer parseSalary(String line) {
         if (isNotBlank(line)) {
-            String salaryValue = line.replaceAll("[^0-9]+","");
+            String salaryValue = digits(line);
             if (isNotBlank(salaryValue) && salaryValue.length() <= 7) {
                 return Integer.parseInt(salaryValue);
             }
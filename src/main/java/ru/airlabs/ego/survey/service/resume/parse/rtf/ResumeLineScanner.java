@@ -0,0 +1,131 @@
+package ru.airlabs.ego.survey.service.resume.parse.rtf;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Утилиты для построчного разбора текста резюме
+ * <p>
+ * Регулярные выражения компилируются один раз, строки без символов для замены возвращаются без копирования.
+ *
+ * @author Aleksey Gorbachev
+ */
+final class ResumeLineScanner {
+
+    /**
+     * Последовательности символов, мешающие разбору резюме из HH в формате rtf
+     */
+    private static final Pattern ERROR_CHAR_SEQUENCE = Pattern.compile("\\{\\\\cf189[0-9]{9}\\}");
+
+    /**
+     * Пустые строки (из пробелов и табуляций)
+     */
+    private static final Pattern BLANK_LINES = Pattern.compile("(?m)^[ \t]*\r?\n");
+
+    /**
+     * Символы табуляции
+     */
+    private static final Pattern TABS = Pattern.compile("\t");
+
+    /**
+     * Последовательности пробелов
+     */
+    private static final Pattern SPACES = Pattern.compile(" +");
+
+    /**
+     * Символы, не являющиеся цифрами
+     */
+    private static final Pattern NOT_DIGITS = Pattern.compile("[^\\d]+");
+
+    /**
+     * Адрес электронной почты
+     */
+    private static final Pattern EMAIL = Pattern.compile("[a-zA-Z0-9_.+-]+@[a-zA-Z0-9-]+\\.[a-zA-Z0-9-.]+");
+
+    private ResumeLineScanner() {
+    }
+
+    /**
+     * Убрать из содержимого файла в формате RTF последовательности символов, мешающие разбору
+     *
+     * @param content содержимое файла
+     * @return содержимое файла без мешающих последовательностей
+     */
+    static String removeErrorCharSequences(String content) {
+        return ERROR_CHAR_SEQUENCE.matcher(content).replaceAll("");
+    }
+
+    /**
+     * Разбить текст на строки, пропуская пустые строки (из пробелов и табуляций)
+     *
+     * @param text текст
+     * @return массив строк
+     */
+    static String[] split(String text) {
+        // split по одному символу выполняется без регулярного выражения
+        return BLANK_LINES.matcher(text).replaceAll("").split("\n");
+    }
+
+    /**
+     * Убрать из строки табуляции и пробелы в начале и конце
+     *
+     * @param line строка
+     * @return строка без табуляций
+     */
+    static String clean(String line) {
+        return (line.indexOf('\t') == -1 ? line : TABS.matcher(line).replaceAll("")).trim();
+    }
+
+    /**
+     * Заменить последовательности пробелов одним пробелом
+     *
+     * @param line строка
+     * @return строка без повторяющихся пробелов
+     */
+    static String collapseSpaces(String line) {
+        return line.contains("  ") ? SPACES.matcher(line).replaceAll(" ") : line;
+    }
+
+    /**
+     * Привести строку к виду для сравнения с заголовками резюме
+     * (без повторяющихся пробелов, в нижнем регистре, без пробелов в начале и конце)
+     *
+     * @param line строка
+     * @return приведенная строка
+     */
+    static String normalize(String line) {
+        return collapseSpaces(line).toLowerCase().trim();
+    }
+
+    /**
+     * Проверка, начинается ли строка с заданного префикса без учета регистра
+     *
+     * @param line   строка
+     * @param prefix префикс (в нижнем регистре)
+     * @return да или нет
+     */
+    static boolean startsWithIgnoreCase(String line, String prefix) {
+        return line.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     * Оставить в строке только цифры
+     *
+     * @param line строка
+     * @return цифры из строки
+     */
+    static String digits(String line) {
+        return NOT_DIGITS.matcher(line).replaceAll("");
+    }
+
+    /**
+     * Найти в строке адрес электронной почты
+     *
+     * @param line строка
+     * @return адрес в нижнем регистре или null, если адрес не найден
+     */
+    static String findEmail(String line) {
+        Matcher m = EMAIL.matcher(line);
+        return m.find() ? m.group().toLowerCase() : null;
+    }
+}
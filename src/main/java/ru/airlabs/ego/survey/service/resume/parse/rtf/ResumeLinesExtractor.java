@@ -0,0 +1,27 @@
+package ru.airlabs.ego.survey.service.resume.parse.rtf;
+
+import ru.airlabs.ego.survey.service.resume.Resume;
+
+/**
+ * Извлечение данных резюме из строк текста файла-резюме для одного источника (hh.ru, rabota.ua и т.д.)
+ *
+ * @author Aleksey Gorbachev
+ */
+public interface ResumeLinesExtractor {
+
+    /**
+     * Проверка признаков резюме из источника
+     *
+     * @param lines строки файла
+     * @return true - если строки похожи на резюме из источника
+     */
+    boolean hasSignature(String[] lines);
+
+    /**
+     * Создание модели резюме по строкам файла
+     *
+     * @param lines строки файла
+     * @return модель резюме
+     */
+    Resume buildResumeFromLines(String[] lines);
+}
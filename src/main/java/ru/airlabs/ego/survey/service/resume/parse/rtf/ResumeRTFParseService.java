@@ -1,26 +1,50 @@
 package ru.airlabs.ego.survey.service.resume.parse.rtf;
 
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.airlabs.ego.survey.service.resume.Resume;
 import ru.airlabs.ego.survey.service.resume.parse.IResumeParseService;
 import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
+import ru.airlabs.parser.rtf.rpk.parser.RtfStreamSource;
+import ru.airlabs.parser.rtf.rpk.text.StringTextConverter;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.removeErrorCharSequences;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.split;
 
 /**
  * Сервис для парсинга резюме в формате RTF
+ * <p>
+ * Файл преобразуется в текст один раз, строки текста разбираются извлекателями для разных источников.
+ * Первыми разбирают строки извлекатели, признаки источника которых найдены в тексте, остальные - если первые не справились
+ * (ошибка одного извлекателя не прерывает разбор остальными).
  *
  * @author Aleksey Gorbachev
  */
 public class ResumeRTFParseService implements IResumeParseService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumeRTFParseService.class);
+
     /**
-     * Список сервисов для парсинга резюме в формате RTF из разных источников (hh.ru, rabota.ua и т.д.)
+     * Поток данных файла
      */
-    private List<IResumeParseService> services;
+    private InputStream inputStream;
 
-    public ResumeRTFParseService(List<IResumeParseService> services) {
-        this.services = services;
+    /**
+     * Список извлекателей данных резюме из разных источников (hh.ru, rabota.ua и т.д.)
+     */
+    private List<ResumeLinesExtractor> extractors;
+
+    public ResumeRTFParseService(InputStream inputStream, List<ResumeLinesExtractor> extractors) {
+        this.inputStream = inputStream;
+        this.extractors = extractors;
     }
 
     /**
@@ -32,12 +56,84 @@ public class ResumeRTFParseService implements IResumeParseService {
      */
     @Override
     public Resume parse() throws IOException, InvalidFormatException {
-        for (IResumeParseService service : services) {  // разбор резюме с помощью сервисов для разных источников
-            Resume resume =  service.parse();
+        final long start = System.nanoTime();
+        final String[] lines;
+        try {
+            lines = convertToLines(inputStream);
+        } catch (Exception e) {
+            throw new InvalidFormatException("Неверный формат данных", e);
+        }
+        final long converted = System.nanoTime();
+        for (ResumeLinesExtractor extractor : orderBySignature(lines)) {  // разбор резюме извлекателями для разных источников
+            Resume resume;
+            try {
+                resume = extractor.buildResumeFromLines(lines);
+            } catch (Exception e) {
+                LOGGER.debug("RTF resume extraction by " + extractor.getClass().getSimpleName() + " failed", e);
+                continue;
+            }
             if (resume != null && resume.isRequiredFilled()) {
+                LOGGER.debug("RTF resume parsed by {}: conversion {} ms, extraction {} ms",
+                        extractor.getClass().getSimpleName(),
+                        TimeUnit.NANOSECONDS.toMillis(converted - start),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - converted));
                 return resume;
             }
         }
+        LOGGER.debug("RTF resume not recognized: conversion {} ms, extraction {} ms",
+                TimeUnit.NANOSECONDS.toMillis(converted - start),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - converted));
         return null;
     }
+
+    /**
+     * Упорядочить извлекатели: сначала извлекатели, признаки источника которых найдены в строках резюме
+     *
+     * @param lines строки резюме
+     * @return упорядоченный список извлекателей
+     */
+    private List<ResumeLinesExtractor> orderBySignature(String[] lines) {
+        List<ResumeLinesExtractor> matched = new ArrayList<>(extractors.size());
+        List<ResumeLinesExtractor> others = new ArrayList<>(extractors.size());
+        for (ResumeLinesExtractor extractor : extractors) {
+            boolean signature;
+            try {
+                signature = extractor.hasSignature(lines);
+            } catch (Exception e) {
+                signature = false;
+            }
+            (signature ? matched : others).add(extractor);
+        }
+        matched.addAll(others);
+        return matched;
+    }
+
+    /**
+     * Преобразование файла в формате RTF в строки текста
+     *
+     * @param inputStream поток данных файла
+     * @return строки текста (без пустых строк)
+     * @throws IOException ошибка ввода-вывода или неверный формат RTF
+     */
+    private static String[] convertToLines(InputStream inputStream) throws IOException {
+        try (InputStream stream = new ByteArrayInputStream(clearBytes(inputStream))) {
+            StringTextConverter converter = new StringTextConverter();
+            converter.convert(new RtfStreamSource(stream));
+            return split(converter.getText());
+        }
+    }
+
+    /**
+     * Убираем из входного потока символы, которые мешают разбору библиотекой rtf-parser-kit
+     *
+     * @param stream входной поток
+     * @return массив байт
+     * @throws IOException ошибка ввода-вывода
+     */
+    private static byte[] clearBytes(InputStream stream) throws IOException {
+        byte[] bytes = IOUtils.toByteArray(stream);
+        String fileContent = new String(bytes);
+        fileContent = removeErrorCharSequences(fileContent);
+        return fileContent.getBytes();
+    }
 }
@@ -2,14 +2,12 @@ package ru.airlabs.ego.survey.service.resume.parse.rtf;
 
 import ru.airlabs.ego.survey.service.resume.Resume;
 
-import java.io.InputStream;
 import java.time.LocalDate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static ru.airlabs.ego.core.entity.ResumeData.Source;
 import static ru.airlabs.ego.core.entity.ResumeData.Type;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.*;
 
 /**
  * Сервис парсинга резюме из сайта rabota.ua на основе формата RTF
@@ -24,12 +22,14 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
     private static final String SUPERJOB_RESUME_INDICATOR = "superjob";
 
     /**
-     * Конструктор
+     * Проверка признаков резюме с сайта rabota.ua (адрес сайта в первой строке)
      *
-     * @param inputStream поток данных
+     * @param lines строки файла
+     * @return true - если строки похожи на резюме с сайта rabota.ua
      */
-    public ResumeRabotaUAParseService(InputStream inputStream) {
-        super(inputStream);
+    @Override
+    public boolean hasSignature(String[] lines) {
+        return lines[0].contains("rabota.ua");
     }
 
     /**
@@ -39,14 +39,13 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
      * @return модель резюме
      */
     @Override
-    protected Resume buildResumeFromLines(String[] lines) {
+    public Resume buildResumeFromLines(String[] lines) {
         Resume resume = new Resume(Source.RB, Type.R);
         if (isSuperJobResume(lines)) return null;   // возвращаем null, если резюме из SuperJob
         int firstLineIndex = detectFirstLineIndex(lines);
         try {
             for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                line = line.replaceAll("\\t", "").trim();
+                String line = clean(lines[i]);
                 if (i == firstLineIndex) {
                     // ФИО
                     if (isNotBlank(line)) {
@@ -107,7 +106,7 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
      */
     private boolean isSuperJobResume(String[] lines) {
         String firstLine = lines[0];
-        if (firstLine.replaceAll(" +", " ").toLowerCase().trim().startsWith(SUPERJOB_RESUME_INDICATOR)) {
+        if (normalize(firstLine).startsWith(SUPERJOB_RESUME_INDICATOR)) {
             return Boolean.TRUE;
         }
         return Boolean.FALSE;
@@ -165,7 +164,7 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
      * @return
      */
     protected void fillClientName(String line, Resume resume) {
-        String[] name = line.replaceAll(" +", " ").split(" ");
+        String[] name = collapseSpaces(line).split(" ");
         if (name.length == 1) {
             resume.setFirstName(name[0]);
         } else if (name.length == 2) {
@@ -199,7 +198,7 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
      */
     private String parsePhone(String line) {
         if (isNotBlank(line) && line.startsWith("Phone number(s):")) {
-            String phone = line.replaceAll("[^\\d]", "");
+            String phone = digits(line);
             if (phone.startsWith("0")) {
                 return phone.replaceFirst("0", "380");
             } else {
@@ -217,10 +216,7 @@ public class ResumeRabotaUAParseService extends ResumeHHParseService {
      */
     private String parseEmail(String line) {
         if (isNotBlank(line) && line.startsWith("E-mail:")) {
-            Matcher m = Pattern.compile("[a-zA-Z0-9_.+-]+@[a-zA-Z0-9-]+\\.[a-zA-Z0-9-.]+").matcher(line);
-            if (m.find()) {
-                return m.group().toLowerCase();
-            }
+            return findEmail(line);
         }
         return null;
     }
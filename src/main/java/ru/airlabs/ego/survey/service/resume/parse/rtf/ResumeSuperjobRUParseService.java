@@ -3,14 +3,12 @@ package ru.airlabs.ego.survey.service.resume.parse.rtf;
 import ru.airlabs.ego.survey.dto.user.Sex;
 import ru.airlabs.ego.survey.service.resume.Resume;
 
-import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static ru.airlabs.ego.core.entity.ResumeData.Source;
 import static ru.airlabs.ego.core.entity.ResumeData.Type;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.*;
 
 /**
  * Сервис парсинга резюме с сайта superjob.ru на основе формата RTF
@@ -20,12 +18,22 @@ import static ru.airlabs.ego.core.entity.ResumeData.Type;
 public class ResumeSuperjobRUParseService extends ResumeHHParseService {
 
     /**
-     * Конструктор
+     * Проверка признаков резюме с сайта superjob.ru (название сайта в первой строке или поле "Ф.И.О.:")
      *
-     * @param inputStream поток данных
+     * @param lines строки файла
+     * @return true - если строки похожи на резюме с сайта superjob.ru
      */
-    public ResumeSuperjobRUParseService(InputStream inputStream) {
-        super(inputStream);
+    @Override
+    public boolean hasSignature(String[] lines) {
+        if (normalize(lines[0]).startsWith("superjob")) {
+            return true;
+        }
+        for (String line : lines) {
+            if (startsWithIgnoreCase(clean(line), "ф.и.о.:")) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -35,15 +43,15 @@ public class ResumeSuperjobRUParseService extends ResumeHHParseService {
      * @return модель резюме
      */
     @Override
-    protected Resume buildResumeFromLines(String[] lines) {
+    public Resume buildResumeFromLines(String[] lines) {
         Resume resume = new Resume(Source.SJ, Type.R);
         try {
             for (String line : lines) {
-                line = line.replaceAll("\\t", "").trim();
+                line = clean(line);
                 // ФИО
-                if (line.toLowerCase().startsWith("ф.и.о.:")) {
+                if (startsWithIgnoreCase(line, "ф.и.о.:")) {
                     line = line.substring("ф.и.о.:".length()).trim();
-                    String[] name = line.replaceAll(" +", " ").split(" ");
+                    String[] name = collapseSpaces(line).split(" ");
                     if (name.length == 1) {
                         resume.setFirstName(name[0]);
                     } else if (name.length == 2) {
@@ -56,43 +64,43 @@ public class ResumeSuperjobRUParseService extends ResumeHHParseService {
                     }
                 }
                 // пол
-                if (line.toLowerCase().startsWith("пол:")) {
+                if (startsWithIgnoreCase(line, "пол:")) {
                     line = line.substring("пол:".length()).trim();
-                    if (line.toLowerCase().equals("женский")) {
+                    if (line.equalsIgnoreCase("женский")) {
                         resume.setSex(Sex.W);
-                    } else if (line.toLowerCase().equals("мужской")) {
+                    } else if (line.equalsIgnoreCase("мужской")) {
                         resume.setSex(Sex.M);
                     }
                 }
                 // дата рождения
-                if (line.toLowerCase().startsWith("дата рождения:")) {
+                if (startsWithIgnoreCase(line, "дата рождения:")) {
                     line = line.substring("дата рождения:".length()).trim();
                     resume.setBirthDate(parseBirthDate(line));
                 }
                 // email
-                if (line.toLowerCase().startsWith("электронная почта:")) {
+                if (startsWithIgnoreCase(line, "электронная почта:")) {
                     line = line.substring("электронная почта:".length()).trim();
                     resume.setEmail(parseEmail(line));
                 }
                 // телефон
-                if (line.toLowerCase().startsWith("телефон:")) {
+                if (startsWithIgnoreCase(line, "телефон:")) {
                     line = line.substring("телефон:".length()).trim();
                     resume.setPhone(parsePhone(line));
                 }
                 // адрес
-                if (line.toLowerCase().startsWith("город проживания:")) {
+                if (startsWithIgnoreCase(line, "город проживания:")) {
                     line = line.substring("город проживания:".length()).trim();
                     resume.setAddress(line);
                 }
                 // должность
-                if (line.toLowerCase().startsWith("желаемая должность:")) {
+                if (startsWithIgnoreCase(line, "желаемая должность:")) {
                     line = line.substring("желаемая должность:".length()).trim();
                     resume.setPosition(line);
                 }
                 // зарплата
-                if (line.toLowerCase().startsWith("зарплата:")) {
+                if (startsWithIgnoreCase(line, "зарплата:")) {
                     line = line.substring("зарплата:".length()).trim();
-                    line = line.replaceAll("[^\\d]", "");
+                    line = digits(line);
                     if (line.length() > 0) {
                         resume.setSalary(Integer.valueOf(line));
                     }
@@ -114,7 +122,7 @@ public class ResumeSuperjobRUParseService extends ResumeHHParseService {
      * @return дата
      */
     private LocalDate parseBirthDate(String s) {
-        String[] tokens = s.replaceAll(" +", " ").toLowerCase().split(" ");
+        String[] tokens = collapseSpaces(s).toLowerCase().split(" ");
         if (tokens.length < 3) {
             return null;
         }
@@ -159,11 +167,7 @@ public class ResumeSuperjobRUParseService extends ResumeHHParseService {
      * @return email
      */
     private String parseEmail(String s) {
-        Matcher m = Pattern.compile("[a-zA-Z0-9_.+-]+@[a-zA-Z0-9-]+\\.[a-zA-Z0-9-.]+").matcher(s);
-        if (m.find()) {
-            return m.group().toLowerCase();
-        }
-        return null;
+        return findEmail(s);
     }
 
     /**
@@ -175,10 +179,9 @@ public class ResumeSuperjobRUParseService extends ResumeHHParseService {
     private String parsePhone(String s) {
         int idx = findFirstLetterPosition(s);
         if (idx == -1) {
-            s = s.replaceAll("[^\\d]", "");
+            s = digits(s);
         } else {
-            s = s.substring(0, idx);
-            s = s.replaceAll("[^\\d]", "");
+            s = digits(s.substring(0, idx));
         }
         if (s.length() == 11) {
             if (s.startsWith("8")) {
@@ -3,24 +3,29 @@ package ru.airlabs.ego.survey.service.resume.parse.rtf;
 import org.apache.poi.hwpf.HWPFDocument;
 import org.apache.poi.hwpf.extractor.WordExtractor;
 import ru.airlabs.ego.survey.service.resume.Resume;
+import ru.airlabs.ego.survey.service.resume.parse.IResumeParseService;
 import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static ru.airlabs.ego.core.entity.ResumeData.Source;
 import static ru.airlabs.ego.core.entity.ResumeData.Type;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.*;
 
 /**
  * Сервис парсинга резюме из сайта work.ua на основе формата RTF
  *
  * @author Aleksey Gorbachev
  */
-public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
+public class ResumeWorkUAParseService extends ResumeRabotaUAParseService implements IResumeParseService {
+
+    /**
+     * Поток данных
+     */
+    private final InputStream inputStream;
 
     /**
      * Конструктор
@@ -28,7 +33,7 @@ public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
      * @param inputStream поток данных
      */
     public ResumeWorkUAParseService(InputStream inputStream) {
-        super(inputStream);
+        this.inputStream = inputStream;
     }
 
     /**
@@ -40,7 +45,7 @@ public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
      */
     @Override
     public Resume parse() throws IOException, InvalidFormatException {
-        try (InputStream stream = getInputStream()) {
+        try (InputStream stream = inputStream) {
             HWPFDocument doc = new HWPFDocument(stream);
             WordExtractor we = new WordExtractor(doc);
             String text = we.getText();
@@ -60,12 +65,11 @@ public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
      * @return модель резюме
      */
     @Override
-    protected Resume buildResumeFromLines(String[] lines) {
+    public Resume buildResumeFromLines(String[] lines) {
         Resume resume = new Resume(Source.WU, Type.R);
         try {
             for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                line = line.replaceAll("\\t", "").trim();
+                String line = clean(lines[i]);
                 if (i == 2) {  // ФИО
                     if (isNotBlank(line)) {
                         fillClientName(line, resume);
@@ -146,7 +150,7 @@ public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
      */
     private String parsePhone(String line) {
         if (isNotBlank(line) && line.startsWith("Телефон:")) {
-            String phone = line.replaceAll("[^\\d]", "");
+            String phone = digits(line);
             if (phone.startsWith("0")) {
                 return phone.replaceFirst("0", "380");
             } else {
@@ -164,10 +168,7 @@ public class ResumeWorkUAParseService extends ResumeRabotaUAParseService {
      */
     private String parseEmail(String line) {
         if (isNotBlank(line) && line.startsWith("Эл. почта:")) {
-            Matcher m = Pattern.compile("[a-zA-Z0-9_.+-]+@[a-zA-Z0-9-]+\\.[a-zA-Z0-9-.]+").matcher(line);
-            if (m.find()) {
-                return m.group().toLowerCase();
-            }
+            return findEmail(line);
         }
         return null;
     }
@@ -1,26 +1,45 @@
 package ru.airlabs.ego.survey.service.resume.parse.xls;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.POIXMLDocument;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 import ru.airlabs.ego.core.entity.ResumeData;
 import ru.airlabs.ego.survey.service.resume.Resume;
 import ru.airlabs.ego.survey.service.resume.parse.IResumeListParseService;
 import ru.airlabs.ego.survey.service.resume.parse.InvalidFormatException;
 
+import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static ru.airlabs.ego.core.entity.ResumeData.Source;
 
 /**
- * Сервис для парсинга данных для резюме в формате XLS
+ * Сервис для парсинга данных для резюме в формате XLS (XLSX)
+ * <p>
+ * Книга Excel не загружается в память целиком: строки листа читаются потоково
+ * (событийная модель HSSF для XLS, SAX-разбор листа для XLSX) и передаются получателю по одной.
  *
  * @author Aleksey Gorbachev
  */
@@ -41,6 +60,16 @@ public class ResumeXLSParseService implements IResumeListParseService {
      */
     private static final Integer dataRowStartNumber = 0;
 
+    /**
+     * Кол-во разбираемых столбцов строки
+     */
+    private static final int COLUMN_COUNT = 7;
+
+    /**
+     * Формат числовых значений ячеек
+     */
+    private final NumberFormat numberFormat;
+
     /**
      * Конструктор
      *
@@ -48,10 +77,12 @@ public class ResumeXLSParseService implements IResumeListParseService {
      */
     public ResumeXLSParseService(InputStream inputStream) {
         this.inputStream = inputStream;
+        this.numberFormat = DecimalFormat.getInstance();
+        this.numberFormat.setGroupingUsed(Boolean.FALSE);
     }
 
     /**
-     * Распарсить данные для резюме в формате XLS
+     * Распарсить данные для резюме в формате XLS (XLSX)
      *
      * @return резюме
      * @throws IOException            ошибка ввода-вывода
@@ -59,19 +90,33 @@ public class ResumeXLSParseService implements IResumeListParseService {
      */
     @Override
     public List<Resume> parse() throws IOException, InvalidFormatException {
-        try (InputStream stream = getInputStream()) {
-            List<Resume> resumeList = new LinkedList<>();
-            HSSFWorkbook workbook = new HSSFWorkbook(stream);
-            Sheet sheet = workbook.getSheetAt(workSheetNumber);
-            for (int rowIndex = dataRowStartNumber; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-                final Row row = sheet.getRow(rowIndex);
-                if (!isRowEmpty(row)) {
-                    resumeList.add(getResumeFromRow(row));
-                }
+        List<Resume> resumeList = new LinkedList<>();
+        parse(resumeList::add);
+        return resumeList;
+    }
+
+    /**
+     * Распарсить данные для резюме в формате XLS (XLSX), передавая резюме получателю по мере чтения строк
+     * <p>
+     * Ошибки получателя пробрасываются без изменений, строки после ошибки не читаются.
+     *
+     * @param consumer получатель резюме
+     * @throws IOException            ошибка ввода-вывода
+     * @throws InvalidFormatException ошибка неверного формата данных
+     */
+    public void parse(Consumer<Resume> consumer) throws IOException, InvalidFormatException {
+        try (InputStream stream = new BufferedInputStream(getInputStream())) {
+            if (POIFSFileSystem.hasPOIFSHeader(stream)) {   // формат XLS
+                parseXLS(stream, consumer);
+            } else if (POIXMLDocument.hasOOXMLHeader(stream)) {   // формат XLSX
+                parseXLSX(stream, consumer);
+            } else {
+                throw new InvalidFormatException("Неверный формат данных");
             }
-            return resumeList;
-        } catch (IOException io) {
-            throw io;
+        } catch (ConsumerException e) {
+            throw e.getCause();
+        } catch (IOException | InvalidFormatException e) {
+            throw e;
         } catch (Exception e) {
             throw new InvalidFormatException("Неверный формат данных", e);
         }
@@ -82,10 +127,59 @@ public class ResumeXLSParseService implements IResumeListParseService {
         throw new UnsupportedOperationException("Не поддерживается для Excel парсера");
     }
 
-    private Resume getResumeFromRow(Row row) {
-        Resume resume = new Resume(Source.UN,  ResumeData.Type.E);
-        String userFullName = getStringCellValue(row, 0);
-        String[] name = userFullName.replaceAll(" +", " ").split(" ");
+    /**
+     * Разбор книги в формате XLS через событийную модель HSSF
+     *
+     * @param stream   поток данных
+     * @param consumer получатель резюме
+     * @throws IOException ошибка ввода-вывода
+     */
+    private void parseXLS(InputStream stream, Consumer<Resume> consumer) throws IOException {
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(new XLSSheetListener(new RowCollector(ResumeData.Type.E, consumer)));
+        new HSSFEventFactory().processWorkbookEvents(request, new POIFSFileSystem(stream));
+    }
+
+    /**
+     * Разбор книги в формате XLSX через SAX-разбор листа
+     *
+     * @param stream   поток данных
+     * @param consumer получатель резюме
+     * @throws Exception ошибка разбора
+     */
+    private void parseXLSX(InputStream stream, Consumer<Resume> consumer) throws Exception {
+        OPCPackage pkg = OPCPackage.open(stream);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            for (int i = 0; i < workSheetNumber && sheets.hasNext(); i++) {
+                sheets.next().close();
+            }
+            if (!sheets.hasNext()) {
+                return;
+            }
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            XMLReader parser = factory.newSAXParser().getXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(),
+                    new ReadOnlySharedStringsTable(pkg),
+                    new XLSXSheetHandler(new RowCollector(ResumeData.Type.L, consumer)),
+                    new NumberCellFormatter(),
+                    false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } finally {
+            pkg.revert();   // пакет открыт только на чтение
+        }
+    }
+
+    private Resume getResumeFromRow(String[] cells, ResumeData.Type type) {
+        Resume resume = new Resume(Source.UN, type);
+        String userFullName = cells[0];
+        String[] name = isNotBlank(userFullName) ? userFullName.trim().replaceAll(" +", " ").split(" ") : new String[0];
         if (name.length == 1) {
             resume.setFirstName(name[0]);
         } else if (name.length == 2) {
@@ -97,55 +191,17 @@ public class ResumeXLSParseService implements IResumeListParseService {
             resume.setMiddleName(name[2]);
         }
 
-        resume.setEmail(replaceAllSpaces(getStringCellValue(row, 1)));
-        resume.setPhone(formatPhoneNumber(getStringCellValue(row, 2)));
-        String address = getStringCellValue(row, 3);
+        resume.setEmail(replaceAllSpaces(cells[1]));
+        resume.setPhone(formatPhoneNumber(cells[2]));
+        String address = cells[3];
         resume.setAddress(isNotBlank(address) ? address.trim() : null);
-        resume.setPosition(getPositionFromRow(row));
+        resume.setPosition(getPositionFromRow(cells));
 
-        String salary = getStringCellValue(row, 5);
+        String salary = cells[5];
         resume.setSalary(isNotBlank(salary) ? Integer.valueOf(salary) : null);
         return resume;
     }
 
-    private String getStringCellValue(Row row, int cellNumber) {
-        final Cell cell = row.getCell(cellNumber);
-        String result;
-        if (cell != null) {
-            int cellType = cell.getCellType();
-            switch (cellType) {
-                case Cell.CELL_TYPE_BLANK:
-                    result = "";
-                    break;
-                case Cell.CELL_TYPE_STRING:
-                    result = cell.getRichStringCellValue().getString();
-                    break;
-                case Cell.CELL_TYPE_NUMERIC:
-                    NumberFormat numberFormat = DecimalFormat.getInstance();
-                    numberFormat.setGroupingUsed(Boolean.FALSE);
-                    result = (numberFormat.format(cell.getNumericCellValue()));
-                    break;
-                default:
-                    result = null;
-            }
-        } else {
-            result = null;
-        }
-        return result;
-    }
-
-    private boolean isRowEmpty(Row r) {
-        int lastColumn = Math.max(r.getLastCellNum(), 0);
-
-        for (int cn = 0; cn < lastColumn; cn++) {
-            Cell c = r.getCell(cn, Row.RETURN_BLANK_AS_NULL);
-            if (c != null) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private String formatPhoneNumber(String line) {
         if (isNotBlank(line)) {
            return line.replaceAll("[^\\d]", "").trim();
@@ -156,12 +212,12 @@ public class ResumeXLSParseService implements IResumeListParseService {
     /**
      * Получение должности для резюме
      *
-     * @param row строка в Excel
+     * @param cells значения ячеек строки в Excel
      * @return должность для резюме
      */
-    private String getPositionFromRow(Row row) {
-        String positionName = getStringCellValue(row, 4);
-        String positionPlace = getStringCellValue(row, 6);
+    private String getPositionFromRow(String[] cells) {
+        String positionName = cells[4];
+        String positionPlace = cells[6];
         if (isNotBlank(positionName)) {
             String position = positionName + (isNotBlank(positionPlace) ? " " + positionPlace : "");
             return position;
@@ -186,4 +242,221 @@ public class ResumeXLSParseService implements IResumeListParseService {
     public InputStream getInputStream() {
         return inputStream;
     }
+
+    /**
+     * Накопитель значений ячеек текущей строки
+     * (значения переиспользуемого массива сбрасываются после передачи строки получателю)
+     */
+    private class RowCollector {
+
+        /**
+         * Тип данных резюме
+         */
+        private final ResumeData.Type type;
+
+        /**
+         * Получатель резюме
+         */
+        private final Consumer<Resume> consumer;
+
+        /**
+         * Значения ячеек текущей строки (null - ячейки нет или ее значение не поддерживается)
+         */
+        private final String[] cells = new String[COLUMN_COUNT];
+
+        /**
+         * Номер текущей строки (-1 - строки нет)
+         */
+        private int rowNumber = -1;
+
+        /**
+         * Признак наличия в текущей строке непустых ячеек
+         */
+        private boolean filled;
+
+        RowCollector(ResumeData.Type type, Consumer<Resume> consumer) {
+            this.type = type;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Значение ячейки
+         *
+         * @param row    номер строки
+         * @param column номер столбца
+         * @param value  значение ("" - пустая ячейка, null - значение не поддерживается)
+         */
+        void cell(int row, int column, String value) {
+            if (row != rowNumber) {
+                endRow();
+                rowNumber = row;
+            }
+            if (value == null || !value.isEmpty()) {
+                filled = true;
+            }
+            if (column < COLUMN_COUNT) {
+                cells[column] = value;
+            }
+        }
+
+        /**
+         * Окончание строки: непустая строка с данными передается получателю
+         */
+        void endRow() {
+            if (filled && rowNumber >= dataRowStartNumber) {
+                Resume resume = getResumeFromRow(cells, type);
+                try {
+                    consumer.accept(resume);
+                } catch (RuntimeException e) {
+                    throw new ConsumerException(e);
+                }
+            }
+            Arrays.fill(cells, null);
+            rowNumber = -1;
+            filled = false;
+        }
+    }
+
+    /**
+     * Обработчик записей книги XLS (читается только лист с данными)
+     */
+    private class XLSSheetListener implements HSSFListener {
+
+        private final RowCollector collector;
+
+        /**
+         * Таблица строк книги
+         */
+        private SSTRecord sst;
+
+        /**
+         * Номер текущего листа
+         */
+        private int sheetIndex = -1;
+
+        /**
+         * Признак чтения листа с данными
+         */
+        private boolean dataSheet;
+
+        XLSSheetListener(RowCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        dataSheet = ++sheetIndex == workSheetNumber;
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (dataSheet) {
+                        collector.endRow();
+                        dataSheet = false;
+                    }
+                    break;
+                case SSTRecord.sid:
+                    sst = (SSTRecord) record;
+                    break;
+                case LabelSSTRecord.sid:
+                    if (dataSheet) {
+                        LabelSSTRecord label = (LabelSSTRecord) record;
+                        collector.cell(label.getRow(), label.getColumn(), sst.getString(label.getSSTIndex()).getString());
+                    }
+                    break;
+                case LabelRecord.sid:
+                    if (dataSheet) {
+                        LabelRecord label = (LabelRecord) record;
+                        collector.cell(label.getRow(), label.getColumn(), label.getValue());
+                    }
+                    break;
+                case NumberRecord.sid:
+                    if (dataSheet) {
+                        NumberRecord number = (NumberRecord) record;
+                        collector.cell(number.getRow(), number.getColumn(), numberFormat.format(number.getValue()));
+                    }
+                    break;
+                case BlankRecord.sid:
+                    if (dataSheet) {
+                        BlankRecord blank = (BlankRecord) record;
+                        collector.cell(blank.getRow(), blank.getColumn(), "");
+                    }
+                    break;
+                case FormulaRecord.sid:
+                case BoolErrRecord.sid:
+                    if (dataSheet) {
+                        CellValueRecordInterface cell = (CellValueRecordInterface) record;
+                        collector.cell(cell.getRow(), cell.getColumn(), null);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Обработчик строк листа XLSX
+     */
+    private static class XLSXSheetHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowCollector collector;
+
+        /**
+         * Номер текущей строки
+         */
+        private int rowNumber;
+
+        XLSXSheetHandler(RowCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            rowNumber = rowNum;
+        }
+
+        @Override
+        public void endRow() {
+            collector.endRow();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            collector.cell(rowNumber, new CellReference(cellReference).getCol(), formattedValue != null ? formattedValue : "");
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    /**
+     * Форматирование значений числовых ячеек XLSX так же, как в XLS: исходное значение без учета формата ячейки
+     * (без экспоненциальной записи длинных номеров телефонов и без разделителей разрядов в зарплате)
+     */
+    private class NumberCellFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+            return numberFormat.format(value);
+        }
+    }
+
+    /**
+     * Ошибка получателя резюме (пробрасывается из разбора без преобразования в ошибку формата)
+     */
+    private static class ConsumerException extends RuntimeException {
+
+        ConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized RuntimeException getCause() {
+            return (RuntimeException) super.getCause();
+        }
+    }
 }
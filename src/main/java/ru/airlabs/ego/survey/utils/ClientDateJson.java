@@ -0,0 +1,51 @@
+package ru.airlabs.ego.survey.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static ru.airlabs.ego.survey.utils.DateUtils.formatClientDate;
+import static ru.airlabs.ego.survey.utils.DateUtils.parseClientDate;
+
+/**
+ * Сериализация дат в формате клиента ({@link DateUtils#CLIENT_DATE_PATTERN}) для Jackson
+ * (в UTC - как при сериализации через @JsonFormat без указания часового пояса)
+ *
+ * @author Aleksey Gorbachev
+ */
+public class ClientDateJson {
+
+    /**
+     * Запись даты в формате клиента
+     */
+    public static class Serializer extends JsonSerializer<Date> {
+
+        @Override
+        public void serialize(Date value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeString(formatClientDate(value, ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * Чтение даты в формате клиента
+     */
+    public static class Deserializer extends JsonDeserializer<Date> {
+
+        @Override
+        public Date deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            final String value = p.getValueAsString();
+            try {
+                return parseClientDate(value, ZoneOffset.UTC);
+            } catch (IllegalArgumentException e) {
+                return (Date) ctxt.handleWeirdStringValue(Date.class, value, e.getMessage());
+            }
+        }
+    }
+}
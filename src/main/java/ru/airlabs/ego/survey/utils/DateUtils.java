@@ -1,10 +1,17 @@
 package ru.airlabs.ego.survey.utils;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.TimeZone;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Утилита для работы с датами
@@ -13,6 +20,21 @@ import java.util.Date;
  */
 public class DateUtils {
 
+    /**
+     * Формат дат, передаваемых клиентом при прохождении опроса
+     */
+    public static final String CLIENT_DATE_PATTERN = "dd.MM.yyyy'T'HH:mm:ss:SSS";
+
+    /**
+     * Форматтер дат клиента (потокобезопасен)
+     */
+    public static final DateTimeFormatter CLIENT_DATE_FORMATTER = DateTimeFormatter.ofPattern(CLIENT_DATE_PATTERN);
+
+    /**
+     * Длина даты в формате клиента
+     */
+    private static final int CLIENT_DATE_LENGTH = 23;
+
     public static Date asDate(LocalDate localDate) {
         return Date.from(localDate.atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
     }
@@ -28,4 +50,115 @@ public class DateUtils {
     public static LocalDateTime asLocalDateTime(Date date) {
         return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDateTime();
     }
+
+    /**
+     * Разбор даты в формате клиента
+     *
+     * @param value дата в формате {@link #CLIENT_DATE_PATTERN}
+     * @return дата или null, если строка пустая
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public static Date parseClientDate(String value) {
+        return parseClientDate(value, ZoneId.systemDefault());
+    }
+
+    /**
+     * Разбор даты в формате клиента в заданном часовом поясе
+     *
+     * @param value дата в формате {@link #CLIENT_DATE_PATTERN}
+     * @param zone  часовой пояс
+     * @return дата или null, если строка пустая
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public static Date parseClientDate(String value, ZoneId zone) {
+        return isBlank(value) ? null : new Date(parseClientDateMillis(value, zone));
+    }
+
+    /**
+     * Форматирование даты в формат клиента
+     *
+     * @param date дата
+     * @return дата в формате {@link #CLIENT_DATE_PATTERN} или null, если дата не задана
+     */
+    public static String formatClientDate(Date date) {
+        return formatClientDate(date, ZoneId.systemDefault());
+    }
+
+    /**
+     * Форматирование даты в формат клиента в заданном часовом поясе
+     *
+     * @param date дата
+     * @param zone часовой пояс
+     * @return дата в формате {@link #CLIENT_DATE_PATTERN} или null, если дата не задана
+     */
+    public static String formatClientDate(Date date, ZoneId zone) {
+        return date == null ? null : CLIENT_DATE_FORMATTER.format(date.toInstant().atZone(zone));
+    }
+
+    /**
+     * Разбор даты в формате клиента в кол-во миллисекунд с начала эпохи
+     *
+     * @param value дата в формате {@link #CLIENT_DATE_PATTERN}
+     * @return кол-во миллисекунд с начала эпохи
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public static long parseClientDateMillis(CharSequence value) {
+        return parseClientDateMillis(value, ZoneId.systemDefault());
+    }
+
+    /**
+     * Разбор даты в формате клиента в заданном часовом поясе в кол-во миллисекунд с начала эпохи
+     * (даты с полями полной длины и допустимыми значениями разбираются напрямую, без объектов форматирования;
+     * остальные - нестрогим SimpleDateFormat, как раньше: поля без ведущих нулей, значения вне диапазона
+     * с переносом в следующий разряд)
+     *
+     * @param value дата в формате {@link #CLIENT_DATE_PATTERN}
+     * @param zone  часовой пояс
+     * @return кол-во миллисекунд с начала эпохи
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public static long parseClientDateMillis(CharSequence value, ZoneId zone) {
+        if (value.length() == CLIENT_DATE_LENGTH
+                && value.charAt(2) == '.' && value.charAt(5) == '.' && value.charAt(10) == 'T'
+                && value.charAt(13) == ':' && value.charAt(16) == ':' && value.charAt(19) == ':') {
+            try {
+                return parseFixedClientDateMillis(value, zone);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                // разбираем нестрогим форматом
+            }
+        }
+        SimpleDateFormat format = new SimpleDateFormat(CLIENT_DATE_PATTERN);
+        format.setTimeZone(TimeZone.getTimeZone(zone));
+        try {
+            return format.parse(value.toString()).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid client date: " + value, e);
+        }
+    }
+
+    private static long parseFixedClientDateMillis(CharSequence value, ZoneId zone) {
+        final int day = parseDigits(value, 0, 2);
+        final int month = parseDigits(value, 3, 5);
+        final int year = parseDigits(value, 6, 10);
+        final int hour = parseDigits(value, 11, 13);
+        final int minute = parseDigits(value, 14, 16);
+        final int second = parseDigits(value, 17, 19);
+        final int millis = parseDigits(value, 20, 23);
+        return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000)
+                .atZone(zone)
+                .toInstant()
+                .toEpochMilli();
+    }
+
+    private static int parseDigits(CharSequence value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid client date: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
 }
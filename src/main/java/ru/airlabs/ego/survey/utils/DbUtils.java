@@ -1,10 +1,32 @@
 package ru.airlabs.ego.survey.utils;
 
+import com.google.common.collect.Lists;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 /**
  * Утилиты для работы с БД
  */
 public class DbUtils {
 
+    /**
+     * Максимальное кол-во значений в условии IN (ограничение Oracle)
+     */
+    public static final int MAX_IN_CLAUSE_SIZE = 1000;
+
     /**
      * Обертка для постраничной выборки
      */
@@ -48,4 +70,68 @@ public class DbUtils {
     public static String wrapWithCount(String sql) {
         return countWrapper.replace("%sql", sql);
     }
+
+    /**
+     * Разбить значения для условия IN на группы допустимого размера
+     * (повторяющиеся значения исключаются)
+     *
+     * @param values значения
+     * @return группы значений
+     */
+    public static <T> List<List<T>> partitionForInClause(Collection<T> values) {
+        return Lists.partition(new ArrayList<>(new LinkedHashSet<>(values)), MAX_IN_CLAUSE_SIZE);
+    }
+
+    /**
+     * Выполнить запрос с именованными параметрами
+     * (в отличие от {@link NamedParameterJdbcTemplate#query(String, SqlParameterSource, RowMapper)}
+     * кол-во строк, получаемых из БД за одно обращение, задается для каждого запроса)
+     *
+     * @param jdbcTemplate Jdbc template
+     * @param sql          запрос
+     * @param parameters   параметры запроса
+     * @param fetchSize    кол-во строк, получаемых из БД за одно обращение
+     * @param rowMapper    преобразование строки результата
+     * @return результат запроса
+     */
+    public static <T> List<T> query(NamedParameterJdbcTemplate jdbcTemplate,
+                                    String sql,
+                                    SqlParameterSource parameters,
+                                    int fetchSize,
+                                    RowMapper<T> rowMapper) {
+        final ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+        final PreparedStatementCreator statementCreator = new PreparedStatementCreatorFactory(
+                NamedParameterUtils.substituteNamedParameters(parsedSql, parameters),
+                NamedParameterUtils.buildSqlParameterList(parsedSql, parameters))
+                .newPreparedStatementCreator(NamedParameterUtils.buildValueArray(parsedSql, parameters, null));
+        return jdbcTemplate.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = statementCreator.createPreparedStatement(connection);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, rowMapper);
+    }
+
+    /**
+     * Получить значение колонки типа Integer
+     *
+     * @param rs     строка результата запроса
+     * @param column номер колонки
+     * @return значение или null, если значение колонки пустое
+     */
+    public static Integer getNullableInt(ResultSet rs, int column) throws SQLException {
+        final int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Получить значение колонки типа Double
+     *
+     * @param rs     строка результата запроса
+     * @param column номер колонки
+     * @return значение или null, если значение колонки пустое
+     */
+    public static Double getNullableDouble(ResultSet rs, int column) throws SQLException {
+        final double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
 }
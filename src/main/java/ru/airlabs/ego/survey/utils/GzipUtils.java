@@ -3,6 +3,7 @@ package ru.airlabs.ego.survey.utils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.util.Base64;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -16,6 +17,11 @@ import static java.util.Objects.isNull;
  */
 public class GzipUtils {
 
+    /**
+     * Первый байт заголовка формата gzip
+     */
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+
     /**
      * Сжать в gzip
      *
@@ -55,4 +61,73 @@ public class GzipUtils {
         }
     }
 
+    /**
+     * Получить поток для чтения распакованных данных
+     * (данные могут передаваться как в бинарном виде, так и в кодировке Base64 - формат определяется по первому байту,
+     * распаковка производится по мере чтения без загрузки всех данных в память)
+     *
+     * @param compressed поток сжатых данных
+     * @param maxSize    максимальный размер распакованных данных (в байтах)
+     * @return поток распакованных данных
+     * @throws IOException если данные не в формате gzip
+     */
+    public static InputStream decompressingStream(final InputStream compressed, final long maxSize) throws IOException {
+        final PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(compressed), 1);
+        final int first = input.read();
+        if (first == -1) {
+            throw new EOFException("Empty gzip data");
+        }
+        input.unread(first);
+        final InputStream gzipData = first == GZIP_MAGIC_FIRST_BYTE ? input : Base64.getMimeDecoder().wrap(input);
+        return new SizeLimitedInputStream(new GZIPInputStream(gzipData), maxSize);
+    }
+
+    /**
+     * Поток с ограничением на кол-во прочитанных байт
+     * (при превышении ограничения выбрасывается исключение)
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                checkSize(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                checkSize(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            checkSize(skipped);
+            return skipped;
+        }
+
+        private void checkSize(long read) throws IOException {
+            count += read;
+            if (count > maxSize) {
+                throw new IOException("Decompressed data exceeds maximum size of " + maxSize + " bytes");
+            }
+        }
+    }
+
 }
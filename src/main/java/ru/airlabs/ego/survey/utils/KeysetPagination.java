@@ -0,0 +1,364 @@
+package ru.airlabs.ego.survey.utils;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Постраничная выборка по ключу (keyset pagination)
+ * <p>
+ * Следующая страница выбирается условием "после последней строки предыдущей страницы"
+ * по значениям колонок сортировки, поэтому БД не перебирает все строки предшествующих страниц.
+ * Значения колонок сортировки последней строки страницы передаются клиенту в виде непрозрачной строки (курсора),
+ * клиент передает ее в запросе следующей страницы.
+ * Для однозначного порядка строк сортировка всегда дополняется уникальной колонкой (идентификатором),
+ * пустые значения колонок сортировки располагаются в конце.
+ * Без курсора выборка выполняется по номеру страницы (как и раньше), но курсор для следующей страницы формируется всегда.
+ * Запрос страницы должен выбирать номер строки по сортировке в колонке rn и упорядочивать по ней результат
+ * ({@code order by s.rn}): курсор формируется по строке с последним номером страницы.
+ *
+ * @author Aleksey Gorbachev
+ */
+public class KeysetPagination {
+
+    /**
+     * Префикс псевдонимов колонок сортировки в запросе
+     */
+    private static final String KEY_ALIAS = "keyset_k";
+
+    /**
+     * Псевдоним уникальной колонки в запросе
+     */
+    private static final String ID_ALIAS = "keyset_id";
+
+    /**
+     * Псевдоним колонки с номером строки (row_number() по сортировке) в запросе
+     */
+    private static final String ROW_NUMBER_ALIAS = "rn";
+
+    /**
+     * Псевдоним колонки с общим кол-вом строк в запросе
+     */
+    private static final String TOTAL_ALIAS = "keyset_total";
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte NUMBER_VALUE = 2;
+    private static final byte DATE_VALUE = 3;
+
+    /**
+     * Колонки сортировки
+     */
+    private final List<String> columns;
+
+    /**
+     * Признаки сортировки колонок по убыванию
+     */
+    private final List<Boolean> descending;
+
+    /**
+     * Уникальная колонка, дополняющая сортировку
+     */
+    private final String idColumn;
+
+    /**
+     * Значения колонок сортировки последней строки предыдущей страницы (null - выборка по номеру страницы)
+     */
+    private final List<Object> cursorValues;
+
+    /**
+     * Значение уникальной колонки последней строки предыдущей страницы
+     */
+    private final BigDecimal cursorId;
+
+    /**
+     * Признак выборки общего кол-ва строк вместе со страницей
+     */
+    private boolean totalCount;
+
+    /**
+     * Общее кол-во строк, выбранное вместе со страницей
+     */
+    private Long pageTotal;
+
+    /**
+     * Значения колонок сортировки последней строки полной страницы (null - страница неполная или пустая)
+     */
+    private Object[] lastKeys;
+
+    /**
+     * Значение уникальной колонки последней строки полной страницы
+     */
+    private Object lastId;
+
+    /**
+     * Создать постраничную выборку по ключу
+     *
+     * @param columns    колонки сортировки
+     * @param descending признаки сортировки колонок по убыванию
+     * @param idColumn   уникальная колонка, дополняющая сортировку
+     * @param cursor     курсор последней строки предыдущей страницы (если не задан - выборка по номеру страницы)
+     */
+    public KeysetPagination(List<String> columns, List<Boolean> descending, String idColumn, String cursor) {
+        this.columns = columns;
+        this.descending = descending;
+        this.idColumn = idColumn;
+        if (isNotBlank(cursor)) {
+            this.cursorValues = new ArrayList<>(columns.size());
+            this.cursorId = decodeCursor(cursor, this.cursorValues);
+        } else {
+            this.cursorValues = null;
+            this.cursorId = null;
+        }
+    }
+
+    /**
+     * Признак выборки по курсору
+     *
+     * @return true - если следующая страница выбирается по курсору, иначе - по номеру страницы
+     */
+    public boolean isCursorMode() {
+        return cursorValues != null;
+    }
+
+    /**
+     * Установить признак выборки общего кол-ва строк вместе со страницей (через count(*) over ())
+     * (при выборке по курсору общее кол-во строк таким образом не определяется, т.к. строки до курсора отсекаются)
+     *
+     * @param totalCount признак выборки общего кол-ва строк
+     */
+    public void setTotalCount(boolean totalCount) {
+        this.totalCount = totalCount && !isCursorMode();
+    }
+
+    /**
+     * Получение подстроки SQL-запроса сортировки
+     *
+     * @return подстрока запроса сортировки
+     */
+    public String getOrderBy() {
+        StringBuilder query = new StringBuilder("order by ");
+        for (int i = 0; i < columns.size(); i++) {
+            query.append(columns.get(i)).append(descending.get(i) ? " desc" : " asc").append(" nulls last, ");
+        }
+        return query.append(idColumn).append(" asc").toString();
+    }
+
+    /**
+     * Получение подстроки SQL-запроса для выборки значений колонок сортировки
+     * (добавляется в конец списка выбираемых колонок)
+     *
+     * @return подстрока запроса
+     */
+    public String getKeyColumns() {
+        StringBuilder query = new StringBuilder(totalCount ? ", count(*) over () " + TOTAL_ALIAS : "");
+        for (int i = 0; i < columns.size(); i++) {
+            query.append(", ").append(columns.get(i)).append(' ').append(KEY_ALIAS).append(i);
+        }
+        return query.append(", ").append(idColumn).append(' ').append(ID_ALIAS).toString();
+    }
+
+    /**
+     * Получение подстроки SQL-запроса с условием выборки строк после курсора
+     *
+     * @return подстрока запроса (пустая строка при выборке по номеру страницы)
+     */
+    public String getCondition() {
+        if (!isCursorMode()) {
+            return "";
+        }
+        List<String> alternatives = new ArrayList<>();
+        StringBuilder equalPrefix = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            final String column = columns.get(i);
+            final String parameter = ":" + KEY_ALIAS + i;
+            if (cursorValues.get(i) == null) {
+                // после пустого значения (в конце сортировки) идут только строки с таким же пустым значением
+                equalPrefix.append(column).append(" is null and ");
+            } else {
+                alternatives.add("(" + equalPrefix + "(" + column + (descending.get(i) ? " < " : " > ") + parameter +
+                        " or " + column + " is null))");
+                equalPrefix.append(column).append(" = ").append(parameter).append(" and ");
+            }
+        }
+        alternatives.add("(" + equalPrefix + idColumn + " > :" + ID_ALIAS + ")");
+        return "and (" + String.join(" or ", alternatives) + ") ";
+    }
+
+    /**
+     * Установить параметры условия выборки строк после курсора
+     *
+     * @param parameters параметры запроса
+     */
+    public void setParameters(MapSqlParameterSource parameters) {
+        if (!isCursorMode()) {
+            return;
+        }
+        for (int i = 0; i < cursorValues.size(); i++) {
+            if (cursorValues.get(i) != null) {
+                parameters.addValue(KEY_ALIAS + i, cursorValues.get(i));
+            }
+        }
+        parameters.addValue(ID_ALIAS, cursorId);
+    }
+
+    /**
+     * Дополнить преобразование строк страницы чтением общего кол-ва строк (из первой строки)
+     * и значений колонок сортировки для курсора (из строки полной страницы с последним номером rn)
+     *
+     * @param rowMapper преобразование строки страницы
+     * @param pageable  настройки пагинации
+     * @return преобразование строки страницы
+     */
+    public <T> RowMapper<T> rowMapper(RowMapper<T> rowMapper, Pageable pageable) {
+        final long lastRow = getToRow(pageable);
+        return (rs, rowNum) -> {
+            if (rowNum == 0 && totalCount) {
+                pageTotal = rs.getLong(TOTAL_ALIAS);
+            }
+            if (rs.getLong(ROW_NUMBER_ALIAS) == lastRow) {
+                readLastKeys(rs);
+            }
+            return rowMapper.mapRow(rs, rowNum);
+        };
+    }
+
+    /**
+     * Получение номера строки, после которой начинается страница
+     *
+     * @param pageable настройки пагинации
+     * @return номер строки
+     */
+    public long getFromRow(Pageable pageable) {
+        return isCursorMode() ? 0 : pageable.getOffset();
+    }
+
+    /**
+     * Получение номера последней строки страницы
+     *
+     * @param pageable настройки пагинации
+     * @return номер строки
+     */
+    public long getToRow(Pageable pageable) {
+        return getFromRow(pageable) + pageable.getPageSize();
+    }
+
+    /**
+     * Получение настроек пагинации для результата
+     * (при выборке по курсору номер страницы не используется)
+     *
+     * @param pageable настройки пагинации из запроса
+     * @return настройки пагинации
+     */
+    public Pageable getPageable(Pageable pageable) {
+        return isCursorMode() ? PageRequest.of(0, pageable.getPageSize(), pageable.getSort()) : pageable;
+    }
+
+    /**
+     * Получение общего кол-ва строк, выбранного вместе со страницей
+     *
+     * @return общее кол-во строк или null, если оно не выбиралось или страница пустая
+     */
+    public Long getTotal() {
+        return pageTotal;
+    }
+
+    /**
+     * Сформировать курсор для следующей страницы
+     *
+     * @return курсор или null, если страница последняя
+     */
+    public String createNextCursor() {
+        if (lastKeys == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(getOrderBy().hashCode());
+            for (Object value : lastKeys) {
+                writeValue(out, value);
+            }
+            out.writeUTF(lastId.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    private void readLastKeys(ResultSet rs) throws SQLException {
+        Object[] keys = new Object[columns.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = readKeyValue(rs, KEY_ALIAS + i);
+        }
+        lastId = rs.getObject(ID_ALIAS);
+        lastKeys = keys;
+    }
+
+    private static Object readKeyValue(ResultSet rs, String column) throws SQLException {
+        // даты читаем как Timestamp (getObject может вернуть тип драйвера)
+        final int type = rs.getMetaData().getColumnType(rs.findColumn(column));
+        return type == Types.DATE || type == Types.TIMESTAMP ? rs.getTimestamp(column) : rs.getObject(column);
+    }
+
+    private BigDecimal decodeCursor(String cursor, List<Object> values) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (in.readInt() != getOrderBy().hashCode()) {
+                throw new IllegalArgumentException("Курсор не соответствует текущей сортировке");
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                values.add(readValue(in));
+            }
+            return new BigDecimal(in.readUTF());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + cursor, e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE_VALUE);
+            out.writeLong(((Date) value).getTime());
+            out.writeInt(value instanceof Timestamp ? ((Timestamp) value).getNanos() : 0);
+        } else if (value instanceof Number) {
+            out.writeByte(NUMBER_VALUE);
+            out.writeUTF(value.toString());
+        } else {
+            out.writeByte(STRING_VALUE);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case DATE_VALUE:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case NUMBER_VALUE:
+                return new BigDecimal(in.readUTF());
+            case STRING_VALUE:
+                return in.readUTF();
+            default:
+                throw new IOException("Unknown cursor value type: " + type);
+        }
+    }
+}
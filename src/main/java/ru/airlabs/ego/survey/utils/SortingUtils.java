@@ -2,7 +2,9 @@ package ru.airlabs.ego.survey.utils;
 
 import org.springframework.data.domain.Sort;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Вспомогательный класс для формирования запросов сортировки данных
@@ -13,90 +15,73 @@ public class SortingUtils {
 
 
     /**
-     * Получение подстроки SQL-запроса сортировки приглашений и фидбеков,
+     * Колонки сортировки приглашений и фидбеков (ключ - свойство модели)
+     * Используемая модель (ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail)
+     */
+    private static final Map<String, String> VACANCY_USER_DETAIL_COLUMNS = MapUtils.<String, String>builder()
+            .add("email", "u.email")
+            .add("name", "u.name")
+            .add("phone", "u.phone")
+            .add("surveyCreate", "vu.dt_create")
+            .add("surveyUpdate", "q.dt_update")
+            .add("progress", "q.progress")
+            .add("compareResult", "c.compared")
+            .build();
+
+    /**
+     * Колонки сортировки результатов для пользовательских опросов (ключ - свойство модели)
+     * Используемая модель (ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail)
+     */
+    private static final Map<String, String> CUSTOM_SURVEY_RESULT_COLUMNS = MapUtils.<String, String>builder()
+            .add("surveyUpdate", "q.dt_update")
+            .add("compareResult", "q.list_result_perc")
+            .build();
+
+    /**
+     * Уникальная колонка, дополняющая сортировку приглашений, фидбеков и результатов опросов
+     * (в рамках вакансии или исследования участник встречается один раз)
+     */
+    private static final String VACANCY_USER_ID_COLUMN = "q.id_user";
+
+    /**
+     * Получение постраничной выборки приглашений и фидбеков,
      * используя настройки сортировки из UI.
      * Используемая модель (ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail)
      *
-     * @param sort настройки сортировки
-     * @return подстрока запроса сортировки
+     * @param sort   настройки сортировки
+     * @param cursor курсор последней строки предыдущей страницы (может быть не задан)
+     * @return постраничная выборка
      */
-    public static String createOrderQueryForVacancyUserDetails(Sort sort) {
-        String query = "order by ";
-        Iterator<Sort.Order> iterator = sort.iterator();
-        if (!iterator.hasNext()) return "";
-        while (iterator.hasNext()) {
-            Sort.Order sortOrder = iterator.next();
-            String sortProperty = sortOrder.getProperty();
-            Sort.Direction direction = sortOrder.getDirection();
-
-            switch (sortProperty) { // формируем подстроку запроса сортировки
-                case "email":
-                    query = query + "u.email " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "name":
-                    query = query + "u.name " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "phone":
-                    query = query + "u.phone " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "surveyCreate":
-                    query = query + "vu.dt_create " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "surveyUpdate":
-                    query = query + "q.dt_update " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "progress":
-                    query = query + "q.progress " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "compareResult":
-                    query = query + "c.compared " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                default:
-                    throw new IllegalArgumentException("Not supported sorting property: " + sortProperty);
-            }
-        }
-        query = query.trim();
-        if (query.endsWith(",")) {
-            query = query.substring(0, query.length() - 1);
-        }
-        query += " nulls last";
-        return query;
+    public static KeysetPagination createKeysetForVacancyUserDetails(Sort sort, String cursor) {
+        return createKeyset(sort, VACANCY_USER_DETAIL_COLUMNS, cursor);
     }
 
     /**
-     * Получение подстроки SQL-запроса сортировки результатов для пользовательских опросов,
+     * Получение постраничной выборки результатов для пользовательских опросов,
      * используя настройки сортировки из UI.
      * Используемая модель (ru.airlabs.ego.survey.dto.vacancy.VacancyUserDetail)
      *
-     * @param sort настройки сортировки
-     * @return подстрока запроса сортировки
+     * @param sort   настройки сортировки
+     * @param cursor курсор последней строки предыдущей страницы (может быть не задан)
+     * @return постраничная выборка
      */
-    public static String createOrderQueryForCustomSurveyResults(Sort sort) {
-        String query = "order by ";
-        Iterator<Sort.Order> iterator = sort.iterator();
-        if (!iterator.hasNext()) return "";
-        while (iterator.hasNext()) {
-            Sort.Order sortOrder = iterator.next();
-            String sortProperty = sortOrder.getProperty();
-            Sort.Direction direction = sortOrder.getDirection();
+    public static KeysetPagination createKeysetForCustomSurveyResults(Sort sort, String cursor) {
+        return createKeyset(sort, CUSTOM_SURVEY_RESULT_COLUMNS, cursor);
+    }
 
-            switch (sortProperty) { // формируем подстроку запроса сортировки
-                case "surveyUpdate":
-                    query = query + "q.dt_update " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                case "compareResult":
-                    query = query + "q.list_result_perc " + (direction == Sort.Direction.DESC ? "desc, " : "asc, ");
-                    break;
-                default:
-                    throw new IllegalArgumentException("Not supported sorting property: " + sortProperty);
+    private static KeysetPagination createKeyset(Sort sort, Map<String, String> sortColumns, String cursor) {
+        List<String> columns = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (Sort.Order sortOrder : sort) {
+            final String sortProperty = sortOrder.getProperty();
+            final String column = sortColumns.get(sortProperty);
+            if (column == null) {
+                throw new IllegalArgumentException("Not supported sorting property: " + sortProperty);
             }
+            columns.add(column);
+            descending.add(sortOrder.getDirection() == Sort.Direction.DESC);
         }
-        query = query.trim();
-        if (query.endsWith(",")) {
-            query = query.substring(0, query.length() - 1);
-        }
-        query += " nulls last";
-        return query;
+        return new KeysetPagination(columns, descending, VACANCY_USER_ID_COLUMN, cursor);
     }
 
 }
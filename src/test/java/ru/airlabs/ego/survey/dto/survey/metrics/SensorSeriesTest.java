@@ -0,0 +1,75 @@
+package ru.airlabs.ego.survey.dto.survey.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+
+/**
+ * Тест компактного кодирования серий показаний датчиков
+ *
+ * @author Aleksey Gorbachev
+ */
+public class SensorSeriesTest {
+
+    @Test
+    public void testGyroRoundTrip() {
+        List<String> samples = Arrays.asList("0.123,-4.50,9.81", "0.124,-4.51,9.80", "1,-0.001,100");
+        SensorSeries series = SensorSeries.decode(SensorSeries.parse(samples).encode());
+        assertEquals(3, series.getDimension());
+        assertEquals(3, series.getSize());
+        assertEquals(samples, series.toStrings());
+    }
+
+    @Test
+    public void testSeparatorIsPreserved() {
+        List<String> samples = Arrays.asList("0.1; 0.2", "0.3; -0.4");
+        assertEquals(samples, SensorSeries.decode(SensorSeries.parse(samples).encode()).toStrings());
+    }
+
+    @Test
+    public void testSingleSampleAndSingleValue() {
+        List<String> samples = Collections.singletonList("42");
+        assertEquals(samples, SensorSeries.decode(SensorSeries.parse(samples).encode()).toStrings());
+    }
+
+    @Test
+    public void testExtremeValues() {
+        List<String> samples = Arrays.asList("9223372036854775807,-9223372036854775808", "-9223372036854775808,9223372036854775807");
+        assertEquals(samples, SensorSeries.decode(SensorSeries.parse(samples).encode()).toStrings());
+    }
+
+    @Test
+    public void testAccelRoundTrip() {
+        List<AccelItem> samples = Arrays.asList(
+                new AccelItem("0.1,0.2,0.3", "1,2,3"),
+                new AccelItem("0.1,0.2,0.35", "1,2,-3"));
+        assertEquals(samples, SensorSeries.decode(SensorSeries.parseAccel(samples).encode()).toAccelItems());
+    }
+
+    @Test
+    public void testNotRestorableSamplesAreNotParsed() {
+        assertNull(SensorSeries.parse(null));
+        assertNull(SensorSeries.parse(Collections.emptyList()));
+        assertNull(SensorSeries.parse(Collections.singletonList("")));
+        assertNull(SensorSeries.parse(Collections.singletonList("NaN,1")));
+        assertNull(SensorSeries.parse(Collections.singletonList("1e5,1")));
+        assertNull(SensorSeries.parse(Collections.singletonList("-0,1")));
+        assertNull(SensorSeries.parse(Collections.singletonList("+1,1")));
+        assertNull(SensorSeries.parse(Collections.singletonList(" 1,2")));
+        assertNull(SensorSeries.parse(Collections.singletonList("1, 2;3")));
+        assertNull(SensorSeries.parse(Arrays.asList("1,2", "1,2,3")));
+        assertNull(SensorSeries.parse(Collections.singletonList("92233720368547758070")));
+        assertNull(SensorSeries.parseAccel(Arrays.asList(new AccelItem("1,2", "3"), new AccelItem("1", "2,3"))));
+    }
+
+    @Test
+    public void testAccelWithoutRotrateIsNotParsed() {
+        assertNull(SensorSeries.parseAccel(Arrays.asList(new AccelItem("0.1,0.2,0.3", null), new AccelItem("0.1,0.2,0.35", null))));
+        assertNull(SensorSeries.parseAccel(Arrays.asList(new AccelItem("0.1,0.2,0.3", "1,2,3"), new AccelItem("0.1,0.2,0.35", null))));
+    }
+}
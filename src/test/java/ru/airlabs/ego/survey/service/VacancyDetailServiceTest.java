@@ -38,7 +38,7 @@ public class VacancyDetailServiceTest {
         final User user = new User();
         user.setId(userId);
 
-        Page<VacancyUserDetail> detailsPage = vacancyDetailService.getFeedbackForVacancy(vacancyId, user, PageRequest.of(0, 10));
+        Page<VacancyUserDetail> detailsPage = vacancyDetailService.getFeedbackForVacancy(vacancyId, user, PageRequest.of(0, 10), null);
         Optional<VacancyUserDetail> firstDetailOptional = detailsPage.getContent().stream().findFirst();
         if (firstDetailOptional.isPresent()) {
             VacancyUserDetail detail = firstDetailOptional.get();
@@ -0,0 +1,97 @@
+package ru.airlabs.ego.survey.service.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+
+/**
+ * Тест кэша общего кол-ва строк постраничных выборок
+ *
+ * @author Aleksey Gorbachev
+ */
+public class PageTotalCountCacheTest {
+
+    private static final String KEY = PageTotalCountCache.buildKey("vacancyUserDetails", 1L, 2L, true);
+
+    private PageTotalCountCache cache;
+
+    /**
+     * Кол-во выполненных отдельных запросов кол-ва строк
+     */
+    private final AtomicInteger counterCalls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        cache = new PageTotalCountCache();
+        ReflectionTestUtils.setField(cache, "cacheTtl", 60L);
+        ReflectionTestUtils.setField(cache, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(cache, "approximateThreshold", 1000L);
+        cache.init();
+        counterCalls.set(0);
+    }
+
+    @Test
+    public void test_Build_Key() {
+        assertEquals("vacancyUserDetails:1:2:true", KEY);
+        assertEquals("bufferDetails:1:null", PageTotalCountCache.buildKey("bufferDetails", 1L, null));
+    }
+
+    @Test
+    public void test_Resolve_Page_Total() {
+        assertEquals(15L, cache.resolve(KEY, null, 15L, counter(20L)));
+        assertEquals(0, counterCalls.get());
+        // кол-во строк страницы запомнено - отдельный запрос не выполняется (выборка по курсору)
+        assertEquals(15L, cache.resolve(KEY, null, null, counter(20L)));
+        assertEquals(0, counterCalls.get());
+    }
+
+    @Test
+    public void test_Resolve_Counter_Once() {
+        assertEquals(20L, cache.resolve(KEY, null, null, counter(20L)));
+        assertEquals(20L, cache.resolve(KEY, null, null, counter(30L)));
+        assertEquals(1, counterCalls.get());
+    }
+
+    @Test
+    public void test_Resolve_Page_Total_Replaces_Count() {
+        cache.resolve(KEY, null, null, counter(20L));
+        assertEquals(25L, cache.resolve(KEY, null, 25L, counter(30L)));
+        assertEquals(25L, cache.resolve(KEY, null, null, counter(30L)));
+        assertEquals(1, counterCalls.get());
+    }
+
+    @Test
+    public void test_Approximate_Threshold() {
+        cache.resolve(KEY, null, 999L, counter(0L));
+        assertNull(cache.getApproximate(KEY));
+
+        cache.resolve(KEY, null, 1000L, counter(0L));
+        final Long approximate = cache.getApproximate(KEY);
+        assertEquals(Long.valueOf(1000L), approximate);
+        // приблизительное значение используется вместо кол-ва строк страницы и запроса
+        assertEquals(1000L, cache.resolve(KEY, approximate, null, counter(5000L)));
+        assertEquals(0, counterCalls.get());
+    }
+
+    @Test
+    public void test_Keys_Are_Independent() {
+        cache.resolve(KEY, null, 15L, counter(0L));
+        assertNull(cache.getApproximate(PageTotalCountCache.buildKey("vacancyUserDetails", 1L, 2L, false)));
+        assertEquals(40L, cache.resolve(PageTotalCountCache.buildKey("vacancyUserDetails", 1L, 2L, false),
+                null, null, counter(40L)));
+        assertEquals(1, counterCalls.get());
+    }
+
+    private LongSupplier counter(long count) {
+        return () -> {
+            counterCalls.incrementAndGet();
+            return count;
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package ru.airlabs.ego.survey.service.resume;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import ru.airlabs.ego.core.entity.ResumeData;
+
+import static junit.framework.TestCase.*;
+import static ru.airlabs.ego.core.entity.ResumeData.Source;
+import static ru.airlabs.ego.core.entity.ResumeData.Type;
+
+/**
+ * Тест заполнения данных резюме при сохранении и импорте из Excel
+ *
+ * @author Aleksey Gorbachev
+ */
+public class ResumeDataImportTest {
+
+    @Test
+    public void test_Import_New_Resume_Without_File() {
+        ResumeData data = new ResumeData();
+        Resume resume = new Resume(Source.UN, Type.E);
+        resume.setPosition("Менеджер");
+
+        assertTrue(ResumeServiceImpl.prepareResumeData(data, resume, null));
+        assertEquals(Source.UN, data.getSource());
+        assertEquals("Менеджер", data.getDescription());
+        // файл импорта не сохраняется, поэтому ссылаться на него резюме не должно
+        assertNull(data.getType());
+        assertNull(data.getFileName());
+    }
+
+    @Test
+    public void test_Import_Existing_Resume_Unchanged() {
+        ResumeData data = existingResume();
+        Resume resume = new Resume(Source.UN, Type.E);
+        resume.setPosition("Менеджер");
+
+        assertFalse(ResumeServiceImpl.prepareResumeData(data, resume, null));
+        assertEquals(Source.HH, data.getSource());
+        assertEquals("Программист", data.getDescription());
+        assertEquals(Type.R, data.getType());
+        assertEquals("resume.rtf", data.getFileName());
+        assertEquals(100L, (long) data.getFileSize());
+    }
+
+    @Test
+    public void test_Save_Resume_With_File() {
+        ResumeData data = existingResume();
+        Resume resume = new Resume(Source.HH, Type.H);
+        resume.setPosition("Менеджер");
+        MockMultipartFile file = new MockMultipartFile("file", "resume.html", "text/html", new byte[50]);
+
+        assertTrue(ResumeServiceImpl.prepareResumeData(data, resume, file));
+        assertEquals("Менеджер", data.getDescription());
+        assertEquals(Type.H, data.getType());
+        assertEquals("resume.html", data.getFileName());
+        assertEquals(50L, (long) data.getFileSize());
+    }
+
+    /**
+     * Существующее резюме с ранее загруженным файлом RTF
+     */
+    private static ResumeData existingResume() {
+        ResumeData data = new ResumeData();
+        data.setId(1L);
+        data.setSource(Source.HH);
+        data.setType(Type.R);
+        data.setFileName("resume.rtf");
+        data.setFileSize(100L);
+        data.setDescription("Программист");
+        return data;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.airlabs.ego.survey.service.resume.parse.rtf;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+import static ru.airlabs.ego.survey.service.resume.parse.rtf.ResumeLineScanner.*;
+
+/**
+ * Тест утилит для построчного разбора текста резюме
+ *
+ * @author Aleksey Gorbachev
+ */
+public class ResumeLineScannerTest {
+
+    @Test
+    public void test_Split_Skips_Blank_Lines() {
+        final String text = "Иванов  Иван\n \t\r\nМужчина, 30 лет\n\n\tЖелаемая должность\r\n";
+        assertArrayEquals(new String[]{"Иванов  Иван", "Мужчина, 30 лет", "\tЖелаемая должность\r"}, split(text));
+        assertArrayEquals(new String[]{"text"}, split("text"));
+    }
+
+    @Test
+    public void test_Line_Normalization() {
+        assertEquals("Телефон: +7 900", clean("\tТелефон:\t +7 900 \r"));
+        assertEquals("желаемая должность и зарплата", normalize(" Желаемая   должность и  зарплата "));
+        assertTrue(startsWithIgnoreCase("Ф.И.О.: Иванов", "ф.и.о.:"));
+        assertFalse(startsWithIgnoreCase("Пол", "пол:"));
+    }
+
+    @Test
+    public void test_Digits_And_Email() {
+        assertEquals("79001234567", digits("+7 (900) 123-45-67"));
+        assertEquals("ivan.ivanov@mail.ru", findEmail("Email: Ivan.Ivanov@Mail.ru — предпочитаемый"));
+        assertNull(findEmail("нет почты"));
+    }
+}
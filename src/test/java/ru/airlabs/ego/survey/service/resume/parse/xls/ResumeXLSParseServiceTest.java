@@ -0,0 +1,48 @@
+package ru.airlabs.ego.survey.service.resume.parse.xls;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+import ru.airlabs.ego.survey.service.resume.Resume;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+
+/**
+ * Тест сервиса для парсинга данных для резюме в формате XLS (XLSX)
+ *
+ * @author Aleksey Gorbachev
+ */
+public class ResumeXLSParseServiceTest {
+
+    @Test
+    public void test_XLSX_Numeric_Cells_Are_Read_As_Raw_Values() throws Exception {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        CellStyle grouped = workbook.createCellStyle();
+        grouped.setDataFormat(workbook.createDataFormat().getFormat("# ##0"));
+        Sheet sheet = workbook.createSheet();
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("Иванов Иван");
+        row.createCell(1).setCellValue("ivanov@mail.ru");
+        row.createCell(2).setCellValue(380501234567d);  // формат "Общий"
+        row.createCell(4).setCellValue("Инженер");
+        row.createCell(5).setCellValue(50000d);
+        row.getCell(5).setCellStyle(grouped);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        byte[] data = out.toByteArray();
+
+        List<Resume> resumeList = new ResumeXLSParseService(new ByteArrayInputStream(data)).parse();
+        assertEquals(1, resumeList.size());
+        Resume resume = resumeList.get(0);
+        assertEquals("Иванов", resume.getLastName());
+        assertEquals("380501234567", resume.getPhone());
+        assertEquals(Integer.valueOf(50000), resume.getSalary());
+        assertEquals("Инженер", resume.getPosition());
+    }
+}
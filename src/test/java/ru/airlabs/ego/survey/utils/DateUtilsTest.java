@@ -0,0 +1,60 @@
+package ru.airlabs.ego.survey.utils;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static ru.airlabs.ego.survey.utils.DateUtils.*;
+
+/**
+ * Тест утилиты для работы с датами
+ *
+ * @author Aleksey Gorbachev
+ */
+public class DateUtilsTest {
+
+    @Test
+    public void test_Parse_Client_Date() throws Exception {
+        final String value = "05.03.2019T14:07:09:123";
+        Date expected = new SimpleDateFormat(CLIENT_DATE_PATTERN).parse(value);
+        assertEquals(expected.getTime(), parseClientDateMillis(value));
+        assertEquals(expected, parseClientDate(value));
+        assertEquals(value, formatClientDate(expected));
+    }
+
+    @Test
+    public void test_Parse_Empty_Client_Date() {
+        assertNull(parseClientDate(null));
+        assertNull(parseClientDate(" "));
+        assertNull(formatClientDate(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Parse_Invalid_Client_Date_Format() {
+        parseClientDate("05.03.2019 14:07:09:123");
+    }
+
+    @Test
+    public void test_Parse_Lenient_Client_Date() throws Exception {
+        // поля без ведущих нулей и значения вне диапазона разбираются так же, как нестрогим SimpleDateFormat
+        for (String value : new String[]{"5.3.2019T4:7:9:5", "32.03.2019T14:07:09:123", "05.03.2019T14:07:09:1234"}) {
+            assertEquals(new SimpleDateFormat(CLIENT_DATE_PATTERN).parse(value), parseClientDate(value));
+        }
+    }
+
+    @Test
+    public void test_Parse_Client_Date_In_Zone() throws Exception {
+        final String value = "05.03.2019T14:07:09:123";
+        SimpleDateFormat format = new SimpleDateFormat(CLIENT_DATE_PATTERN);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date expected = format.parse(value);
+        assertEquals(expected, parseClientDate(value, ZoneOffset.UTC));
+        assertEquals(value, formatClientDate(expected, ZoneOffset.UTC));
+        assertEquals(expected, parseClientDate("5.3.2019T14:7:9:123", ZoneOffset.UTC));
+    }
+}
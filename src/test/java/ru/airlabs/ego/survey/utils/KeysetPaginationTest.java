@@ -0,0 +1,186 @@
+package ru.airlabs.ego.survey.utils;
+
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.TestCase.*;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForCustomSurveyResults;
+import static ru.airlabs.ego.survey.utils.SortingUtils.createKeysetForVacancyUserDetails;
+
+/**
+ * Тест постраничной выборки по ключу
+ *
+ * @author Aleksey Gorbachev
+ */
+public class KeysetPaginationTest {
+
+    private static final Sort PROGRESS_EMAIL_SORT = Sort.by(Sort.Order.desc("progress"), Sort.Order.asc("email"));
+
+    private static final Pageable PAGE = PageRequest.of(0, 2, PROGRESS_EMAIL_SORT);
+
+    @Test
+    public void test_Order_By_Nulls_Last_With_Id() {
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null);
+        assertEquals("order by q.progress desc nulls last, u.email asc nulls last, q.id_user asc", keyset.getOrderBy());
+        assertEquals("order by q.id_user asc", createKeysetForVacancyUserDetails(Sort.unsorted(), null).getOrderBy());
+    }
+
+    @Test
+    public void test_Page_Number_Mode() {
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null);
+        assertFalse(keyset.isCursorMode());
+        assertEquals("", keyset.getCondition());
+        assertEquals(4, keyset.getFromRow(PageRequest.of(2, 2)));
+        assertEquals(6, keyset.getToRow(PageRequest.of(2, 2)));
+    }
+
+    @Test
+    public void test_Cursor_Round_Trip() throws Exception {
+        String cursor = readPage(createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null),
+                new BigDecimal(50), "user@mail.ru", new BigDecimal(7));
+        assertNotNull(cursor);
+
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, cursor);
+        assertTrue(keyset.isCursorMode());
+        assertEquals(0, keyset.getFromRow(PageRequest.of(3, 2)));
+        assertEquals(0, keyset.getPageable(PageRequest.of(3, 2)).getPageNumber());
+        assertEquals("and (((q.progress < :keyset_k0 or q.progress is null))" +
+                        " or (q.progress = :keyset_k0 and (u.email > :keyset_k1 or u.email is null))" +
+                        " or (q.progress = :keyset_k0 and u.email = :keyset_k1 and q.id_user > :keyset_id)) ",
+                keyset.getCondition());
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        keyset.setParameters(parameters);
+        assertEquals(new BigDecimal(50), parameters.getValue("keyset_k0"));
+        assertEquals("user@mail.ru", parameters.getValue("keyset_k1"));
+        assertEquals(new BigDecimal(7), parameters.getValue("keyset_id"));
+    }
+
+    @Test
+    public void test_Cursor_Round_Trip_Date() throws Exception {
+        Timestamp updated = Timestamp.valueOf("2019-03-05 14:07:09.123456789");
+        Sort sort = Sort.by(Sort.Order.desc("surveyUpdate"));
+        String cursor = readPage(createKeysetForCustomSurveyResults(sort, null), updated, new BigDecimal(7));
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        createKeysetForCustomSurveyResults(sort, cursor).setParameters(parameters);
+        assertEquals(updated, parameters.getValue("keyset_k0"));
+    }
+
+    @Test
+    public void test_Cursor_Null_Ordering() throws Exception {
+        String cursor = readPage(createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null),
+                null, "user@mail.ru", new BigDecimal(7));
+
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, cursor);
+        // после пустого прогресса (в конце сортировки) идут только строки с пустым прогрессом
+        assertEquals("and ((q.progress is null and (u.email > :keyset_k1 or u.email is null))" +
+                        " or (q.progress is null and u.email = :keyset_k1 and q.id_user > :keyset_id)) ",
+                keyset.getCondition());
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        keyset.setParameters(parameters);
+        assertFalse(parameters.hasValue("keyset_k0"));
+        assertEquals("user@mail.ru", parameters.getValue("keyset_k1"));
+    }
+
+    @Test
+    public void test_Incomplete_Page_Has_No_Cursor() throws Exception {
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null);
+        RowMapper<Integer> rowMapper = keyset.rowMapper((rs, rowNum) -> rowNum, PAGE);
+        rowMapper.mapRow(resultSet(1, new BigDecimal(50), "user@mail.ru", new BigDecimal(7)), 0);
+        assertNull(keyset.createNextCursor());
+    }
+
+    @Test
+    public void test_Cursor_From_Last_Row_Number() throws Exception {
+        String expected = readPage(createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null),
+                new BigDecimal(50), "user@mail.ru", new BigDecimal(7));
+
+        // строки страницы получены не в порядке номеров - курсор формируется по строке с последним номером
+        KeysetPagination keyset = createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null);
+        RowMapper<Integer> rowMapper = keyset.rowMapper((rs, rowNum) -> rowNum, PAGE);
+        rowMapper.mapRow(resultSet(2, new BigDecimal(50), "user@mail.ru", new BigDecimal(7)), 0);
+        rowMapper.mapRow(resultSet(1, new BigDecimal(90), "first@mail.ru", BigDecimal.ONE), 1);
+        assertEquals(expected, keyset.createNextCursor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Cursor_Order_By_Mismatch() throws Exception {
+        String cursor = readPage(createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, null),
+                new BigDecimal(50), "user@mail.ru", new BigDecimal(7));
+        createKeysetForVacancyUserDetails(Sort.by(Sort.Order.asc("progress"), Sort.Order.asc("email")), cursor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_Invalid_Cursor() {
+        createKeysetForVacancyUserDetails(PROGRESS_EMAIL_SORT, "not-a-cursor");
+    }
+
+    /**
+     * Прочитать полную страницу из двух строк и сформировать курсор по последней строке
+     *
+     * @param keyset   постраничная выборка
+     * @param lastKeys значения колонок сортировки и уникальной колонки последней строки
+     * @return курсор следующей страницы
+     */
+    private static String readPage(KeysetPagination keyset, Object... lastKeys) throws Exception {
+        RowMapper<Integer> rowMapper = keyset.rowMapper((rs, rowNum) -> rowNum, PAGE);
+        Object[] firstKeys = new Object[lastKeys.length];
+        firstKeys[lastKeys.length - 1] = BigDecimal.ONE;
+        rowMapper.mapRow(resultSet(1, firstKeys), 0);
+        rowMapper.mapRow(resultSet(2, lastKeys), 1);
+        return keyset.createNextCursor();
+    }
+
+    /**
+     * Строка результата запроса с номером строки (rn), значениями колонок сортировки (keyset_k*)
+     * и уникальной колонки (keyset_id)
+     */
+    private static ResultSet resultSet(long rowNumber, Object... keys) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length - 1; i++) {
+            values.put("keyset_k" + i, keys[i]);
+        }
+        values.put("keyset_id", keys[keys.length - 1]);
+        List<String> columns = new ArrayList<>(values.keySet());
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(KeysetPaginationTest.class.getClassLoader(),
+                new Class[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getColumnType")) {
+                        throw new IllegalStateException("Unexpected call: " + method.getName());
+                    }
+                    return values.get(columns.get((Integer) args[0] - 1)) instanceof Timestamp ? Types.TIMESTAMP : Types.OTHER;
+                });
+        return (ResultSet) Proxy.newProxyInstance(KeysetPaginationTest.class.getClassLoader(),
+                new Class[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "getLong":
+                            return "rn".equals(args[0]) ? rowNumber : 0L;
+                        case "findColumn":
+                            return columns.indexOf(args[0]) + 1;
+                        case "getObject":
+                        case "getTimestamp":
+                            return values.get(args[0]);
+                        default:
+                            throw new IllegalStateException("Unexpected call: " + method.getName());
+                    }
+                });
+    }
+}